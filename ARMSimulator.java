@@ -0,0 +1,384 @@
+/**
+ * This is the ARMSimulator class, a small interpreter for the assembly
+ * GenerateAssembly writes, used to count how many instructions and memory
+ * accesses a program executes without an ARM board or qemu.
+ *
+ * Only the instructions the code generator emits are understood: push,
+ * pop, mov, mvn, add, sub, ldr, str, cmp, cmn, b, b<cond>, bl and bx.
+ * Directives other than .ltorg are skipped. An immediate a real assembler
+ * could not encode, an ldr/str offset past 4095 or an ldr =N out of reach
+ * of its literal pool is rejected when the file is read. main is entered
+ * with lr set to a return address that is not in the program, and the run
+ * ends when pc gets there. A call to printint prints its argument like
+ * printer.c does and clobbers the caller saved registers.
+ *
+ * Usage: java ARMSimulator file.s
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class ARMSimulator {
+
+    private static final int SP = 13;
+    private static final int LR = 14;
+    private static final int PC = 15;
+    private static final int FP = 11;
+    private static final int IP = 12;
+
+    private static final int STACK_TOP = 0x100000;
+    private static final int RETURN_ADDRESS = -1;
+    private static final long STEP_LIMIT = 100_000_000L;
+
+    /* the program, one instruction per entry, split into opcode and operands */
+    private final ArrayList<String> opcodes = new ArrayList<>();
+    private final ArrayList<String[]> operands = new ArrayList<>();
+    private final HashMap<String, Integer> labels = new HashMap<>();
+
+    private final int[] regs = new int[16];
+    private final HashMap<Integer, Integer> memory = new HashMap<>();
+    private boolean n, z, c, v;
+
+    private long executed;
+    private long loads;
+    private long stores;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param List<String> lines of the assembly file
+    **/
+    public ARMSimulator(List<String> lines) {
+        ArrayList<Integer> pool_loads = new ArrayList<>();
+        for (String line : lines) {
+            int comment = line.indexOf('@');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            line = line.trim();
+            if (line.equals(".ltorg"))
+                checkPool(pool_loads);
+            if (line.isEmpty() || line.startsWith("."))
+                continue;
+
+            if (line.endsWith(":")) {
+                labels.put(line.substring(0, line.length() - 1), opcodes.size());
+                continue;
+            }
+
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                opcodes.add(line);
+                operands.add(new String[0]);
+            } else {
+                opcodes.add(line.substring(0, space));
+                operands.add(splitOperands(line.substring(space + 1)));
+                checkEncodable(line, operands.get(operands.size() - 1));
+                if (line.contains("=") && line.startsWith("ldr "))
+                    pool_loads.add(opcodes.size() - 1);
+            }
+        }
+        checkPool(pool_loads);
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int getResult() { return regs[0]; }
+    public long getExecuted() { return executed; }
+    public long getLoads() { return loads; }
+    public long getStores() { return stores; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to run the program from main until main returns.
+    **/
+    public void run() {
+        Integer main = labels.get("main");
+        if (main == null)
+            throw new IllegalStateException("no main label");
+
+        regs[SP] = STACK_TOP;
+        regs[LR] = RETURN_ADDRESS;
+        regs[PC] = main;
+
+        while (regs[PC] != RETURN_ADDRESS) {
+            if (regs[PC] < 0 || regs[PC] >= opcodes.size())
+                throw new IllegalStateException("pc out of the program: " + regs[PC]);
+            if (executed == STEP_LIMIT)
+                throw new IllegalStateException("gave up after " + STEP_LIMIT + " instructions");
+
+            int pc = regs[PC];
+            regs[PC] = pc + 1;
+            executed++;
+            step(opcodes.get(pc), operands.get(pc));
+        }
+    }
+
+    private void step(String op, String[] args) {
+        switch (op) {
+            case "push":
+                push(registerList(args));
+                break;
+            case "pop":
+                pop(registerList(args));
+                break;
+            case "mov":
+                regs[register(args[0])] = operand(args[1]);
+                break;
+            case "mvn":
+                regs[register(args[0])] = ~operand(args[1]);
+                break;
+            case "add":
+                regs[register(args[0])] = regs[register(args[1])] + operand(args[2]);
+                break;
+            case "sub":
+                regs[register(args[0])] = regs[register(args[1])] - operand(args[2]);
+                break;
+            case "ldr":
+                if (args[1].startsWith("=")) {
+                    regs[register(args[0])] = parseInt(args[1].substring(1));
+                } else {
+                    regs[register(args[0])] = load(address(args[1]));
+                }
+                break;
+            case "str":
+                store(address(args[1]), regs[register(args[0])]);
+                break;
+            case "cmp":
+                compare(regs[register(args[0])], operand(args[1]), false);
+                break;
+            case "cmn":
+                compare(regs[register(args[0])], operand(args[1]), true);
+                break;
+            case "bl":
+                call(args[0]);
+                break;
+            case "bx":
+                regs[PC] = regs[register(args[0])];
+                break;
+            default:
+                if (op.startsWith("b") && condition(op.substring(1))) {
+                    regs[PC] = label(args[0]);
+                } else if (!op.startsWith("b")) {
+                    throw new IllegalStateException("unsupported instruction: " + op);
+                }
+                break;
+        }
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private void push(int[] list) {
+        int address = regs[SP] - list.length * 4;
+        regs[SP] = address;
+        for (int reg : list) {
+            store(address, regs[reg]);
+            address += 4;
+        }
+    }
+
+    private void pop(int[] list) {
+        int address = regs[SP];
+        for (int reg : list) {
+            regs[reg] = load(address);
+            address += 4;
+        }
+        regs[SP] = address;
+    }
+
+    private int load(int address) {
+        loads++;
+        Integer value = memory.get(address);
+        return value == null ? 0 : value;
+    }
+
+    private void store(int address, int value) {
+        stores++;
+        memory.put(address, value);
+    }
+
+    private void call(String function) {
+        if (labels.containsKey(function)) {
+            regs[LR] = regs[PC];
+            regs[PC] = labels.get(function);
+            return;
+        }
+
+        if (!function.equals("printint"))
+            throw new IllegalStateException("call to unknown function " + function);
+
+        System.out.println("printint: " + regs[0]);
+        regs[1] = regs[2] = regs[3] = regs[IP] = 0xdead;
+    }
+
+    private void compare(int a, int b, boolean negate) {
+        long wide = negate ? (a & 0xffffffffL) + (b & 0xffffffffL)
+                           : (a & 0xffffffffL) - (b & 0xffffffffL);
+        int result = (int) wide;
+        n = result < 0;
+        z = result == 0;
+        if (negate) {
+            c = (wide >>> 32) != 0;
+            v = ((a ^ result) & (b ^ result)) < 0;
+        } else {
+            c = Integer.compareUnsigned(a, b) >= 0;
+            v = ((a ^ b) & (a ^ result)) < 0;
+        }
+    }
+
+    private boolean condition(String cond) {
+        switch (cond) {
+            case "":   return true;
+            case "eq": return z;
+            case "ne": return !z;
+            case "lt": return n != v;
+            case "ge": return n == v;
+            case "gt": return !z && n == v;
+            case "le": return z || n != v;
+            case "hi": return c && !z;
+            case "ls": return !c || z;
+            case "hs": case "cs": return c;
+            case "lo": case "cc": return !c;
+            case "mi": return n;
+            case "pl": return !n;
+            default:
+                throw new IllegalStateException("unsupported condition: " + cond);
+        }
+    }
+
+    private int label(String name) {
+        Integer target = labels.get(name);
+        if (target == null)
+            throw new IllegalStateException("unknown label " + name);
+        return target;
+    }
+
+    private int operand(String arg) {
+        return arg.startsWith("#") ? parseInt(arg.substring(1)) : regs[register(arg)];
+    }
+
+   /**
+    * @param String arg of the form [rn] or [rn, #offset]
+    * @return int address
+    **/
+    private int address(String arg) {
+        String[] parts = arg.substring(1, arg.length() - 1).split(",");
+        int address = regs[register(parts[0].trim())];
+        if (parts.length > 1)
+            address += operand(parts[1].trim());
+        return address;
+    }
+
+    private static int register(String name) {
+        switch (name) {
+            case "fp": return FP;
+            case "ip": return IP;
+            case "sp": return SP;
+            case "lr": return LR;
+            case "pc": return PC;
+            default:
+                if (name.startsWith("r"))
+                    return Integer.parseInt(name.substring(1));
+                throw new IllegalStateException("not a register: " + name);
+        }
+    }
+
+    private static int[] registerList(String[] args) {
+        String list = String.join(",", args);
+        String[] names = list.substring(list.indexOf('{') + 1, list.indexOf('}')).split(",");
+        int[] out = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            out[i] = register(names[i].trim());
+        }
+        return out;
+    }
+
+    private static int parseInt(String value) {
+        return Long.decode(value).intValue();
+    }
+
+   /**
+    * Method to split operands on the commas that are not inside [].
+    **/
+   /**
+    * Method to reject an operand the assembler would refuse: a data
+    * processing immediate that is not 8 bits rotated by an even amount,
+    * or a memory offset outside +-4095.
+    *
+    * @param String line for the message
+    * @param String[] args
+    **/
+    private static void checkEncodable(String line, String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("#") && !InstructionSelector.isImmediate(parseInt(arg.substring(1))))
+                throw new IllegalStateException("immediate cannot be encoded: " + line);
+            if (arg.startsWith("[") && arg.contains("#")) {
+                int offset = parseInt(arg.substring(arg.indexOf('#') + 1, arg.length() - 1).trim());
+                if (Math.abs(offset) > InstructionSelector.MAX_OFFSET)
+                    throw new IllegalStateException("offset out of range: " + line);
+            }
+        }
+    }
+
+   /**
+    * Method to reject an ldr =N too far from the pool its constant goes
+    * in, the next .ltorg or else the end of the file. Counting every load
+    * before it as a literal of its own, the literal must be within the
+    * 4095 bytes ldr reaches.
+    *
+    * @param ArrayList<Integer> loads instructions loading from this pool,
+    *        emptied once they are checked
+    **/
+    private void checkPool(ArrayList<Integer> loads) {
+        int pool = opcodes.size();
+        for (int i = 0; i < loads.size(); i++) {
+            if ((pool - loads.get(i) + i) * 4 > InstructionSelector.MAX_OFFSET)
+                throw new IllegalStateException("literal pool out of reach of instruction "
+                                                + loads.get(i));
+        }
+        loads.clear();
+    }
+
+    private static String[] splitOperands(String text) {
+        ArrayList<String> out = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '[' || ch == '{') {
+                depth++;
+            } else if (ch == ']' || ch == '}') {
+                depth--;
+            } else if (ch == ',' && depth == 0) {
+                out.add(text.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        out.add(text.substring(start).trim());
+        return out.toArray(new String[0]);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java ARMSimulator <asm file>");
+            return;
+        }
+
+        ARMSimulator sim = new ARMSimulator(Files.readAllLines(Paths.get(args[0])));
+        sim.run();
+        System.out.println("result: " + sim.getResult());
+        System.out.println("instructions: " + sim.getExecuted()
+                           + " loads: " + sim.getLoads() + " stores: " + sim.getStores());
+    }
+}
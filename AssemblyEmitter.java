@@ -0,0 +1,270 @@
+/**
+ * This is the AssemblyEmitter class that formats ARM instructions, labels
+ * and directives into the ASM file.
+ *
+ * Callers hand over an instruction as its mnemonic and operands, e.g.
+ * op("add", "r4", "r5", 1), and the text "\tadd r4, r5, #1\n" is written
+ * straight into a 64K byte buffer, immediates included, without building
+ * a String for the line. The buffer goes to the stream only when it is
+ * full and on flush, so a whole function is usually a single write.
+ *
+ * Assembly is ASCII, so every char is stored as one byte. Write errors
+ * surface as UncheckedIOException from the call that flushed.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+public class AssemblyEmitter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream sink;
+    private final byte[] buffer;
+    private int count;
+    private long written;
+    private int num_instructions;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param OutputStream sink, closed by close
+    **/
+    public AssemblyEmitter(OutputStream sink) {
+        this.sink = sink;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    public AssemblyEmitter(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+   /**
+    * For an emitter that passes the instructions on somewhere else and
+    * overrides every method that writes.
+    **/
+    protected AssemblyEmitter() {
+        this.sink = null;
+        this.buffer = null;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+   /**
+    * @return long bytes emitted so far, flushed or not
+    **/
+    public long getBytesWritten() { return written + count; }
+
+   /**
+    * @return int instructions written with op so far
+    **/
+    public int getNumInstructions() { return num_instructions; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * @param String directive such as .text, written as "\t.text\n"
+    **/
+    public void directive(String directive) {
+        put('\t');
+        put(directive);
+        put('\n');
+    }
+
+    public void directive(String directive, String arg) {
+        put('\t');
+        put(directive);
+        put(' ');
+        put(arg);
+        put('\n');
+    }
+
+    public void label(String name) {
+        put(name);
+        put(':');
+        put('\n');
+    }
+
+   /**
+    * Method to write a numbered label, label("BB_", 4) is BB_4:
+    *
+    * @param String prefix
+    * @param int number
+    **/
+    public void label(String prefix, int number) {
+        put(prefix);
+        put(number);
+        put(':');
+        put('\n');
+    }
+
+    public void comment(String text) {
+        put('\t');
+        put('@');
+        put(' ');
+        put(text);
+        put('\n');
+    }
+
+    public void op(String mnemonic, String a) {
+        start(mnemonic);
+        put(a);
+        put('\n');
+    }
+
+    public void op(String mnemonic, String a, String b) {
+        start(mnemonic);
+        put(a);
+        separate();
+        put(b);
+        put('\n');
+    }
+
+    public void op(String mnemonic, String a, int imm) {
+        start(mnemonic);
+        put(a);
+        separate();
+        putImmediate(imm);
+        put('\n');
+    }
+
+    public void op(String mnemonic, String a, String b, String c) {
+        start(mnemonic);
+        put(a);
+        separate();
+        put(b);
+        separate();
+        put(c);
+        put('\n');
+    }
+
+    public void op(String mnemonic, String a, String b, int imm) {
+        start(mnemonic);
+        put(a);
+        separate();
+        put(b);
+        separate();
+        putImmediate(imm);
+        put('\n');
+    }
+
+   /**
+    * Method to write text that is already formatted, one or more whole
+    * lines.
+    *
+    * @param String text
+    **/
+    public void raw(String text) {
+        put(text);
+    }
+
+   /**
+    * Method to write code another emitter already put together, such as
+    * a function compiled on another thread.
+    *
+    * @param byte[] bytes
+    **/
+    public void raw(byte[] bytes) {
+        flush();
+        try {
+            sink.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written += bytes.length;
+    }
+
+    public void flush() {
+        try {
+            sink.write(buffer, 0, count);
+            sink.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written += count;
+        count = 0;
+    }
+
+    public void close() {
+        flush();
+        try {
+            sink.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private void start(String mnemonic) {
+        num_instructions++;
+        put('\t');
+        put(mnemonic);
+        put(' ');
+    }
+
+    private void separate() {
+        put(',');
+        put(' ');
+    }
+
+    private void putImmediate(int value) {
+        put('#');
+        put(value);
+    }
+
+    private void put(char ch) {
+        if (count == BUFFER_SIZE)
+            flush();
+        buffer[count++] = (byte) ch;
+    }
+
+    private void put(String text) {
+        int length = text.length();
+        if (length > BUFFER_SIZE - count) {
+            for (int i = 0; i < length; i++)
+                put(text.charAt(i));
+            return;
+        }
+        for (int i = 0; i < length; i++)
+            buffer[count + i] = (byte) text.charAt(i);
+        count += length;
+    }
+
+   /**
+    * Method to write the decimal digits of value without going through
+    * Integer.toString.
+    **/
+    private void put(int value) {
+        if (value < 0) {
+            put('-');
+            if (value == Integer.MIN_VALUE) {
+                put("2147483648");
+                return;
+            }
+            value = -value;
+        }
+        if (count + 10 > BUFFER_SIZE)
+            flush();
+
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10)
+            digits++;
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+}
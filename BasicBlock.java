@@ -1,48 +1,69 @@
-import java.util.HashSet;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.ArrayList;
 
 public class BasicBlock {
 
     private int block_num;
     private LinkedList<Instruction> block;
-    private HashSet<String> successors;
+    private int[] successors;
 
 /*******************
  * Accessor Methods
  *******************/
     public LinkedList<Instruction> getInstructions() { return this.block; }
     public int getBlockNum() { return this.block_num; }
-    public HashSet<String> getSuccessors() { return this.successors; }
+
+   /**
+    * Method to get the basic block numbers this block can branch or fall
+    * through to. Leaving the function is ControlFlowGraph.EXIT.
+    *
+    * @return int[] successor block numbers
+    **/
+    public int[] getSuccessors() { return this.successors; }
    
 /*******************
  * Constructor
  *******************/
+   /**
+    * @param LinkedList<Instruction> block
+    * @param int block_num
+    * @param HashMap<Integer, Integer> bb_map insn id -> basic block number
+    * @param HashMap<Integer, Integer> skip_map insn id -> next id of the
+    *        insns outside any block, -1 for a barrier
+    **/
     public BasicBlock (LinkedList<Instruction> block, int block_num, 
-                       HashMap<String, String> bb_map)  {
+                       HashMap<Integer, Integer> bb_map,
+                       HashMap<Integer, Integer> skip_map)  {
 
         this.block = block;
         this.block_num = block_num;
-        this.successors = new HashSet<>();
+
+        int jump_block = -1;
+        int next_block = -1;
 
         /* This adds to successor list if jump label */
         Instruction last_insn = block.get(block.size() - 1);
-        System.out.println(last_insn.getInsn());
+        if (Log.on(Log.TRACE))
+            Log.trace(last_insn.getInsn());
         if (last_insn.getType() == InstructionType.JUMP_INSN) {
-            String jump_label = getJumpLabel(last_insn);
+            int jump_label = last_insn.getJumpLabel();
             if(bb_map.containsKey(jump_label)) {
-                this.successors.add(bb_map.get(jump_label));
+                jump_block = bb_map.get(jump_label);
             }
         }
         
-        /* This adds to successor list if there is a next ID that exists */
-        if (Integer.parseInt(last_insn.getNextID()) > 0) {
-            if (Integer.parseInt(bb_map.get(last_insn.getNextID())) > 0) {
-                this.successors.add(bb_map.get(last_insn.getNextID()));
-            }
+        /* This adds to successor list the block the next ID falls through
+           to, which an unconditional jump never does */
+        if (!isUnconditionalJump(last_insn)) {
+            next_block = fallthrough(last_insn.getNextID(), bb_map, skip_map);
+        }
+
+        if (jump_block < 0 || jump_block == next_block) {
+            this.successors = next_block < 0 ? new int[0] : new int[] { next_block };
+        } else if (next_block < 0) {
+            this.successors = new int[] { jump_block };
         } else {
-            this.successors.add("EXIT");
+            this.successors = new int[] { jump_block, next_block };
         }
 
     }
@@ -51,15 +72,52 @@ public class BasicBlock {
 /******************* 
  * Helper Methods
  *******************/
-    private static String getJumpLabel(Instruction insn) {
-        ArrayList<Object> attributes = insn.getAttributes();
-        String str = (String)attributes.get(attributes.size() - 1);
-        return str;
+   /**
+    * Method to find the block control reaches by falling through to the
+    * insn next_id, skipping the notes outside any block.
+    *
+    * @param int next_id
+    * @param HashMap<Integer, Integer> bb_map insn id -> basic block number
+    * @param HashMap<Integer, Integer> skip_map insn id -> next id of the
+    *        insns outside any block, -1 for a barrier
+    * @return int block number, ControlFlowGraph.EXIT past the last insn,
+    *         -1 if a barrier comes first
+    * @throws IllegalArgumentException if an insn on the way is in neither
+    *         map
+    **/
+    public static int fallthrough(int next_id, HashMap<Integer, Integer> bb_map,
+                                  HashMap<Integer, Integer> skip_map) {
+        int id = next_id;
+        while (id > 0) {
+            int bb_num = bb_map.getOrDefault(id, -1);
+            if (bb_num >= 0)
+                return bb_num;
+
+            Integer next = skip_map.get(id);
+            if (next == null)
+                throw new IllegalArgumentException("insn " + next_id + " falls through to no block");
+            id = next;
+        }
+        return id < 0 ? -1 : ControlFlowGraph.EXIT;
+    }
+
+    private static boolean isUnconditionalJump(Instruction insn) {
+        RtlNode pattern = insn.getSExp();
+        return insn.getType() == InstructionType.JUMP_INSN && pattern != null
+            && pattern.getType() == InstructionType.SET
+            && pattern.getChild(1).getType() == InstructionType.LABEL_REF;
     }
 
     public void printAll() {
+        StringBuilder succs = new StringBuilder("[");
+        for (int i = 0; i < successors.length; i++) {
+            if (i > 0) succs.append(", ");
+            succs.append(successors[i] == ControlFlowGraph.EXIT ? "EXIT" : Integer.toString(successors[i]));
+        }
+        succs.append("]");
+
         System.out.println("Block Num: " + this.getBlockNum());
-        System.out.println("\tSuccessors: " + this.getSuccessors().toString());
+        System.out.println("\tSuccessors: " + succs.toString());
     } 
 
 }
@@ -5,42 +5,25 @@ import java.util.HashMap;
 
 public class BasicBlockGraph {
 
-    private static ArrayList<BasicBlock> bb_graph;
-    private static ArrayList<HashSet<String>> prev_live_in_set;
-    private static ArrayList<HashSet<String>> live_in_set;
-    private static ArrayList<HashSet<String>> live_out_set;
+    private final ControlFlowGraph cfg;
+    private Liveness liveness;
 
-    private ArrayList<LinkedList<String>> interference_graph;
+    private InterferenceGraph interference_graph;
 
 /**************************
  * Constructor
  **************************/
     public BasicBlockGraph (ArrayList<LinkedList<Instruction>> graph,
-                            HashMap<String, String> bb_map) {
-        this.bb_graph = new ArrayList<>();
-        this.prev_live_in_set = new ArrayList<>();
-        this.live_in_set = new ArrayList<>();
-        this.live_out_set = new ArrayList<>();
-        HashSet<String> dummy = new HashSet<>();
-        dummy.add("dummy");
-
-        /* This initializes the array of basic block objects */
-        for (int i = 0; i < graph.size(); i++) {
-
-            System.out.println("i" + i );
-            LinkedList<Instruction> block = graph.get(i);
-
-            if (block.isEmpty()) {
-                this.bb_graph.add(null);
-            } else {
-                this.bb_graph.add(new BasicBlock(block, i, bb_map)); 
-            }
-
-            this.prev_live_in_set.add(dummy);
-            this.live_in_set.add(new HashSet<>());
-            this.live_out_set.add(new HashSet<>());
-        }
+                            HashMap<Integer, Integer> bb_map) {
+        this(graph, bb_map, new HashMap<Integer, Integer>());
+    }
 
+    public BasicBlockGraph (ArrayList<LinkedList<Instruction>> graph,
+                            HashMap<Integer, Integer> bb_map,
+                            HashMap<Integer, Integer> skip_map) {
+        this.cfg = new ControlFlowGraph(graph, bb_map, skip_map);
+        this.liveness = null;
+        this.interference_graph = null;
     }
 
 /*********************************
@@ -52,18 +35,29 @@ public class BasicBlockGraph {
     * @param int basic_block_num
     * @return BasicBlock object
     **/
-    private static BasicBlock getBasicBlock(int block_num) {
-        return bb_graph.get(block_num);
+    private BasicBlock getBasicBlock(int block_num) {
+        return cfg.getBlock(block_num);
     } 
 
+   /**
+    * Method to get the control flow graph the basic blocks live in.
+    *
+    * @return ControlFlowGraph
+    **/
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
    /**
     * Method to get the live in set for a given basic block.
     *
     * @param int basic_block_num
     * @return HashSet<String> 
     **/
-    private static HashSet<String> getLiveInAtBlock(int block_num) {
-        return live_in_set.get(block_num);
+    private HashSet<String> getLiveInAtBlock(int block_num) {
+        if (liveness == null)
+            return new HashSet<>();
+        return liveness.toSet(liveness.getLiveIn(block_num));
     } 
 
    /**
@@ -72,74 +66,61 @@ public class BasicBlockGraph {
     * @param int basic_block_num
     * @return HashSet<String> 
     **/
-    private static HashSet<String> getLiveOutAtBlock(int block_num) {
-        return live_out_set.get(block_num);
+    private HashSet<String> getLiveOutAtBlock(int block_num) {
+        if (liveness == null)
+            return new HashSet<>();
+        return liveness.toSet(liveness.getLiveOut(block_num));
     } 
 
+   /**
+    * Method to get the bit vector liveness of the graph, null until
+    * calculateLiveInSet has run.
+    *
+    * @return Liveness
+    **/
+    public Liveness getLiveness() {
+        return liveness;
+    }
+
 
 
 /**************************
  * Main Logic Methods 
  **************************/
-    public ArrayList<LinkedList<String>> getInterferenceGraph() {
+   /**
+    * Method to get the interference graph of the basic blocks, working out
+    * liveness first if it has not been done yet.
+    *
+    * @return InterferenceGraph
+    **/
+    public InterferenceGraph getInterferenceGraph() {
 
         if (this.interference_graph != null)
             return this.interference_graph;
 
-        calculateLiveInSet();
-
-        this.interference_graph = new ArrayList<>();
-
-        for (int bb_num = 0; bb_num < bb_graph.size(); bb_num++) {
+        if (liveness == null)
+            calculateLiveInSet();
 
-            /* for each basic block, we want to get the live in set */
-            HashSet<String> live_ins = getLiveInAtBlock(bb_num); 
-
-            /* For every element */
-
-        }
+        this.interference_graph = new InterferenceGraph(liveness);
 
         return this.interference_graph;
-    
     }
 
    /**
     * Method to calculate the set of Live Ins used to build the interference graph
-    * This method uses the algorithm discussed in class
+    * The sets are solved as bit vectors by Liveness on the Dataflow worklist
     **/
-    public static void calculateLiveInSet() {
-        
-        int i = 0;
-        boolean flag = true; 
-
-        System.out.println("Calculating LIVE IN SET");
-
-        while (flag || isChangedSet(prev_live_in_set, live_in_set)) {
-
-            flag = false;
-            System.out.println("Iteration: " + i);
-            i++;
-
-            for (int bb_num = 0; bb_num < bb_graph.size(); bb_num++) {
-
-                if (getBasicBlock(bb_num) != null) { 
-
-                    HashSet<String> new_live_out = calculateLiveOut(bb_num);
+    public void calculateLiveInSet() {
 
-                    HashSet<String> new_live_in = calculateLiveIn(bb_num, new_live_out);
+        Log.debug("Calculating LIVE IN SET");
 
-                    // Update Prev Live_in, cur_live_in, and live out sets
-                    live_out_set.set(bb_num, new_live_out);
-                    prev_live_in_set.set(bb_num, getLiveInAtBlock(bb_num));
-                    live_in_set.set(bb_num, new_live_in);
-                }
-
-            }
-            
-            //printInsOuts();
+        liveness = new Liveness(cfg);
+        liveness.solve();
 
+        if (Log.on(Log.DEBUG)) {
+            Log.debug("Iterations: " + liveness.getIterations()
+                      + " Block visits: " + liveness.getVisits());
         }
-
     }
 
 
@@ -147,52 +128,6 @@ public class BasicBlockGraph {
  * Additional Helper Methods 
  **************************/
 
-   /**
-    * Method to calculate the live_out of a basic block.
-    *
-    * @param int basic_block_num
-    * @return HashSet<String> a basic block's live out
-    **/
-    private static HashSet<String> calculateLiveOut(int block_num) {
-
-        HashSet<String> block_live_out = new HashSet<>();
-
-        /* Get successors of curent basic block */
-        BasicBlock block = getBasicBlock(block_num);
-
-        if (block != null) {
-            HashSet<String> succs = block.getSuccessors();
-
-            /* Add the sets of live ins from each successor into the created set */
-            for (String succ : succs) {
-                /* If a successor is of label EXIT, nothing (null) should be 
-                 * added to the live out */
-                if (!succ.equals("EXIT")) {
-                    block_live_out.addAll(getLiveInAtBlock(Integer.parseInt(succ)));
-                }
-            }
-        }
-
-        return block_live_out;
-    }
-
-   /**
-    * Method to calculate the live_in of a basic block
-    * We pass the live out set to the block which then performs the arithmetic
-    *
-    * @param int block_num
-    * @param HashSet<String> Live_out of the basic block
-    **/
-    private static HashSet<String> calculateLiveIn(int block_num, 
-                                                   HashSet<String> live_out) {
-        BasicBlock block = getBasicBlock(block_num);
-
-        if (block == null)
-            return new HashSet<>();
-
-        return adjustLiveSet(block, live_out);
-    }
-
    /**
     * Method that iterates through the blocks in reverse order and for each insn
     *   1) remove defs in RTL insn from live_out set
@@ -215,23 +150,11 @@ public class BasicBlockGraph {
 
                 /* Retrieve the instruction object */
                 Instruction insn = instructions.get(insn_num);
-                insn.parseSExpressions();
-                insn.setTypes();
-                insn.setBasicBlock();
-
 
-                /* If we've reached a NOTE, we are done */
+                /* NOTEs neither define nor use anything. A USE is not the
+                 * end of the block either, getUses reports what it keeps live */
                 if (insn.getType() == InstructionType.NOTE) 
-                    break;
-               
-                /* If we reached a USE, we are done */ 
-                Instruction sexp = (Instruction) insn.getAttributes().get(5);
-                sexp.parseSExpressions();
-                sexp.setTypes();
-                sexp.setBasicBlock();
-
-                if (sexp.getType() == InstructionType.USE)
-                    break; 
+                    continue;
     
                 //System.out.print("BasicBlockGraph.java - Live Set Calc - ");
                 //System.out.print("Instruction ID: " + insn.getCurrID() + "\n");
@@ -253,50 +176,12 @@ public class BasicBlockGraph {
     }
 
 
-   /**
-    * Method checks to see if there is a change in the live in set 
-    * Returns true if there is a difference in set, false otherwise
-    *
-    * @param ArrayList<HashSet<String>> prev_set
-    * @param ArrayList<HashSet<String>> cur_set
-    * @return 
-    **/
-    private static boolean isChangedSet(ArrayList<HashSet<String>> prev_set, 
-                                        ArrayList<HashSet<String>> cur_set) {
-
-        if (prev_set.size() != cur_set.size()) {
-            System.out.println("Fatal Error: Uneven set size. Extra or lacking indices?");
-            System.exit(0);
-        }
-
-        System.out.println("Comparing the sets");
-        for (int i = 0; i < prev_set.size(); i++) {
-
-            if (cur_set.get(i).isEmpty()) 
-                continue;
-
-            //printPrevBlockLiveIn(i);
-            //printBlockLiveIn(i);
-
-            /* I think theres something wrong wit hthis part */
-
-            if (!prev_set.get(i).containsAll(cur_set.get(i)) || 
-                  !cur_set.get(i).containsAll(prev_set.get(i))) {
-                return true;
-            }
-        }
-
-        return false;
-
-    }
-    
-
 /**************************
  * Methods for Testing
  **************************/
     public void printAll() {
         System.out.println("Printing Basic Block Graph:");
-        for (int bb_num = 0; bb_num < bb_graph.size(); bb_num++) {
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
             BasicBlock block = getBasicBlock(bb_num);
             if (block != null) {
                 block.printAll();
@@ -306,30 +191,16 @@ public class BasicBlockGraph {
         } 
     }
 
-    public static void printInsOuts() {
+    public void printInsOuts() {
         System.out.println("Printing Live INS and Live OUTS:");
-        for (int bb_num = 0; bb_num < bb_graph.size(); bb_num++) {
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
             System.out.println("Basic Block " + bb_num + ":");
-            printPrevBlockLiveIn(bb_num);
             printBlockLiveIn(bb_num);
             printBlockLiveOut(bb_num);
         }
     }
     
-    public static void printPrevBlockLiveIn(int block_num) {
-        BasicBlock block = getBasicBlock(block_num);
-    
-        if (block == null) {
-            System.out.println("\tTrying to print PREV LIVE IN for null block " + block_num);
-            return;
-        }
-
-        System.out.println("\tPREV LIVE IN for block " + 
-                            block_num + ": " + 
-                            getLiveInAtBlock(block_num).toString());
-    }
-    
-    public static void printBlockLiveIn(int block_num) {
+    public void printBlockLiveIn(int block_num) {
         BasicBlock block = getBasicBlock(block_num);
     
         if (block == null) {
@@ -342,7 +213,7 @@ public class BasicBlockGraph {
                             getLiveInAtBlock(block_num).toString());
     }
 
-    public static void printBlockLiveOut(int block_num) {
+    public void printBlockLiveOut(int block_num) {
         BasicBlock block = getBasicBlock(block_num);
         
         if (block == null) {
@@ -0,0 +1,193 @@
+/**
+ * Benchmark driver for the compiler phases. Each suite runs a few warm up
+ * rounds so the JIT settles and then reports the average over the measured
+ * rounds. The suites are in PhaseBenchmark and PassBenchmark, this class
+ * picks one and has what they share. The suites that time the code
+ * against what it replaced, with the old versions they need, are in
+ * bench/ so they are not part of the compiler, see bench/LegacyBenchmark.
+ *
+ * usage: java Benchmark liveness <expand file> [passes]
+ *        java Benchmark interference <expand file | synthetic:pseudos> [iterations]
+ *        java Benchmark regalloc <expand file | synthetic:pseudos> [iterations]
+ *        java Benchmark phases <expand file | synthetic:pseudos>... [--iterations=N] [--json=FILE]
+ *        java Benchmark compare <old json> <new json>
+ *        java Benchmark scaling [--from=N] [--to=N] [--loops=N] [--insns=N] [--regalloc=X] [--json=FILE]
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+public class Benchmark {
+
+    static final int WARMUP = 5;
+    static final int DEFAULT_ITERATIONS = 20;
+
+    /* Keeps the JIT from throwing away the work being timed */
+    static long sink;
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length >= 1 && args[0].equals("scaling")) {
+            PhaseBenchmark.scaling(args);
+            return;
+        }
+        if (args.length < 2) {
+            System.out.println("usage: java Benchmark <liveness|interference|regalloc|phases|compare|scaling> <expand file> [iterations]");
+            return;
+        }
+        if (args[0].equals("phases")) {
+            PhaseBenchmark.phases(args);
+            return;
+        }
+        if (args[0].equals("compare")) {
+            PhaseBenchmark.compare(new File(args[1]), new File(args[2]));
+            return;
+        }
+
+        File file = inputFile(args[1]);
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+
+        switch (args[0]) {
+            case "liveness":
+                PassBenchmark.liveness(file, iterations);
+                break;
+            case "interference":
+                PassBenchmark.interference(file, iterations);
+                break;
+            case "regalloc":
+                PassBenchmark.regalloc(file, iterations);
+                break;
+            default:
+                System.out.println("Unknown suite " + args[0]);
+        }
+    }
+
+/**************************
+ * Helper Methods
+ **************************/
+   /**
+    * @param String arg an expand file or synthetic:pseudos
+    * @return File the file, written first if it is synthetic
+    **/
+    static File inputFile(String arg) throws Exception {
+        return arg.startsWith("synthetic:")
+                ? syntheticFile(Integer.parseInt(arg.substring("synthetic:".length())))
+                : new File(arg);
+    }
+
+    static long mappedScan(File file) throws Exception {
+        long count = 0;
+        RTLReader reader = new RTLReader(file);
+        CharSequence sexp;
+
+        while ((sexp = reader.next()) != null) {
+            count += sexp.length();
+        }
+        return count;
+    }
+
+    static int linearParse(String insn) {
+        Instruction obj = new Instruction(insn);
+        return obj.getNumOperands();
+    }
+
+   /**
+    * Method to write a synthetic expand file with the given number of
+    * pseudos, in blocks of sixteen insns with loops nested two deep.
+    *
+    * @param int pseudos
+    * @return File temporary expand file
+    **/
+    static File syntheticFile(int pseudos) throws Exception {
+        RTLGenerator generator = new RTLGenerator();
+        generator.setNumPseudos(pseudos);
+        generator.setNumBlocks(Math.max(2, pseudos / 16));
+        generator.setInsnsPerBlock(16);
+        generator.setLoopDepth(2);
+
+        File file = File.createTempFile("synthetic", ".expand");
+        file.deleteOnExit();
+        generator.write(file);
+        return file;
+    }
+
+   /**
+    * Method to parse an expand file into per basic block instruction lists
+    * the same way GenerateAssembly does.
+    *
+    * @param File file
+    * @param HashMap<Integer, Integer> bb_map filled with insn id -> block
+    * @return ArrayList<LinkedList<Instruction>> graph
+    **/
+    static ArrayList<LinkedList<Instruction>> loadGraph(File file,
+            HashMap<Integer, Integer> bb_map) throws Exception {
+        ArrayList<LinkedList<Instruction>> graph = new ArrayList<>();
+        RTLReader reader = new RTLReader(file);
+        CharSequence sexp;
+
+        while ((sexp = reader.next()) != null) {
+            Instruction obj = new Instruction(sexp);
+            int block = obj.getBasicBlock();
+
+            bb_map.put(obj.getCurrID(), block);
+            if (block < 0) continue;
+
+            for (int i = graph.size(); i <= block; i++) {
+                graph.add(new LinkedList<Instruction>());
+            }
+            graph.get(block).add(obj);
+        }
+        return graph;
+    }
+
+    static boolean isSelected(Instruction insn) {
+        InstructionType type = insn.getType();
+        return (type == InstructionType.INSN || type == InstructionType.JUMP_INSN)
+            && insn.getSExp() != null && insn.getSExp().getType() != InstructionType.USE;
+    }
+
+    static void quietly(Body body) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            body.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    interface Body {
+        void run() throws Exception;
+    }
+
+   /**
+    * Method to time a benchmark body.
+    *
+    * @param int iterations
+    * @param Body body
+    * @return double average nanoseconds per iteration
+    **/
+    static double measure(int iterations, Body body) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            body.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            body.run();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    static void report(String name, long bytes, double ns) {
+        double mb_per_sec = (bytes / (1024.0 * 1024.0)) / (ns / 1e9);
+        System.out.printf("%-24s %10.3f ms/op %10.2f MB/s%n", name, ns / 1e6, mb_per_sec);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * This is the BitVector class, a fixed size set of small integers stored as
+ * a long[] so that set operations run a word (64 members) at a time.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.Arrays;
+
+public final class BitVector {
+
+    private final long[] words;
+    private final int size;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+    public BitVector(int size) {
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int size() { return size; }
+
+    public boolean get(int i) {
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public void set(int i) {
+        words[i >>> 6] |= 1L << i;
+    }
+
+    public void clear(int i) {
+        words[i >>> 6] &= ~(1L << i);
+    }
+
+    public void clearAll() {
+        Arrays.fill(words, 0L);
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+   /**
+    * Method to find the first member at or after from.
+    *
+    * @param int from
+    * @return int member, -1 if there is none
+    **/
+    public int nextSetBit(int from) {
+        int w = from >>> 6;
+        if (w >= words.length) return -1;
+
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+/****************************
+ * SET OPERATIONS
+ ***************************/
+   /**
+    * this = this | other
+    *
+    * @param BitVector other
+    * @return boolean true if this changed
+    **/
+    public boolean or(BitVector other) {
+        long changed = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i] | other.words[i];
+            changed |= word ^ words[i];
+            words[i] = word;
+        }
+        return changed != 0;
+    }
+
+   /**
+    * this = this & ~other
+    *
+    * @param BitVector other
+    **/
+    public void andNot(BitVector other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    public void copy(BitVector other) {
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+
+   /**
+    * this = gen | (out & ~kill), the transfer function of a backward
+    * dataflow problem such as liveness.
+    *
+    * @param BitVector gen
+    * @param BitVector out
+    * @param BitVector kill
+    * @return boolean true if this changed
+    **/
+    public boolean transfer(BitVector gen, BitVector out, BitVector kill) {
+        long changed = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = gen.words[i] | (out.words[i] & ~kill.words[i]);
+            changed |= word ^ words[i];
+            words[i] = word;
+        }
+        return changed != 0;
+    }
+
+    public boolean equals(Object other) {
+        return other instanceof BitVector && Arrays.equals(words, ((BitVector) other).words);
+    }
+
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    public String toString() {
+        StringBuilder out = new StringBuilder("{");
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            if (out.length() > 1) out.append(", ");
+            out.append(i);
+        }
+        return out.append("}").toString();
+    }
+}
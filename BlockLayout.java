@@ -0,0 +1,186 @@
+/**
+ * This is the BlockLayout class, which decides the order the basic blocks
+ * of a function are written in so that as many edges as possible become
+ * fall throughs instead of branches.
+ *
+ * Blocks are joined into chains greedily, Pettis and Hansen style. Edges
+ * are visited from the most to the least likely taken and an edge a -> b
+ * joins the chain ending in a to the chain starting with b. An edge is as
+ * likely as the loop depth of the shallower of its ends, and among edges
+ * of the same depth loop back edges come first, so a loop is laid out with
+ * its test at the bottom: the body falls into the test and the test
+ * branches back to the body, one taken branch per iteration.
+ *
+ * The chain holding the first block comes first and the rest follow by
+ * the reverse postorder of their first block, except that the chain of
+ * the block falling off the end of the function goes last, where the
+ * epilogue is. Blocks ENTRY does not reach are left out.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.Arrays;
+
+public class BlockLayout {
+
+    private static final int MAX_DEPTH = 1 << 20;
+
+    private final ControlFlowGraph cfg;
+    private final int first;
+
+    /* the block after and before each block in its chain, -1 at the ends */
+    private final int[] chain_next;
+    private final int[] chain_prev;
+
+    /* blocks in layout order, and the block after each one, EXIT after
+     * the last */
+    private final int[] order;
+    private final int[] next;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param ControlFlowGraph cfg
+    **/
+    public BlockLayout(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        int[] entry = cfg.getSuccessors(ControlFlowGraph.ENTRY);
+        this.first = entry.length > 0 ? entry[0] : -1;
+        this.next = new int[cfg.size()];
+        this.chain_next = new int[cfg.size()];
+        this.chain_prev = new int[cfg.size()];
+        Arrays.fill(next, -1);
+        Arrays.fill(chain_next, -1);
+        Arrays.fill(chain_prev, -1);
+
+        buildChains();
+        this.order = placeChains();
+        for (int i = 0; i < order.length; i++) {
+            next[order[i]] = i + 1 < order.length ? order[i + 1] : ControlFlowGraph.EXIT;
+        }
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int[] getOrder() { return order; }
+
+   /**
+    * @param int bb_num
+    * @return int block written right after bb_num, EXIT if it is the last
+    *         one, -1 if bb_num is not laid out
+    **/
+    public int getNext(int bb_num) { return next[bb_num]; }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to join the blocks into chains along the most likely edges,
+    * filling in chain_next and chain_prev.
+    **/
+    private void buildChains() {
+        int[] rpo = cfg.getReversePostorder();
+        int[] edge_from = new int[16];
+        int[] edge_to = new int[16];
+        long[] keys = new long[16];
+        int count = 0;
+
+        /* Sort keys: deeper edges and then back edges rank higher, ties
+         * are broken by the reverse postorder of the source, which is the
+         * order the edges are found in. Nothing may be chained in front of
+         * the first block, the function starts with it */
+        for (int from : rpo) {
+            if (cfg.getBlock(from) == null)
+                continue;
+
+            for (int to : cfg.getSuccessors(from)) {
+                if (to == from || to == first || cfg.getBlock(to) == null)
+                    continue;
+
+                int depth = Math.min(cfg.getLoopDepth(from), cfg.getLoopDepth(to));
+                long rank = ((long) (MAX_DEPTH - Math.min(depth, MAX_DEPTH)) << 1)
+                            | (cfg.isBackEdge(from, to) ? 0 : 1);
+                if (count == keys.length) {
+                    edge_from = Arrays.copyOf(edge_from, count * 2);
+                    edge_to = Arrays.copyOf(edge_to, count * 2);
+                    keys = Arrays.copyOf(keys, count * 2);
+                }
+                edge_from[count] = from;
+                edge_to[count] = to;
+                keys[count] = (rank << 32) | count;
+                count++;
+            }
+        }
+        keys = Arrays.copyOf(keys, count);
+        Arrays.sort(keys);
+
+        int[] chain_of = new int[cfg.size()];
+        for (int bb_num = 0; bb_num < chain_of.length; bb_num++) {
+            chain_of[bb_num] = bb_num;
+        }
+        for (long key : keys) {
+            int edge = (int) key;
+            int from = edge_from[edge];
+            int to = edge_to[edge];
+            if (chain_next[from] >= 0 || chain_prev[to] >= 0
+                    || find(chain_of, from) == find(chain_of, to))
+                continue;
+
+            chain_next[from] = to;
+            chain_prev[to] = from;
+            chain_of[find(chain_of, to)] = find(chain_of, from);
+        }
+    }
+
+   /**
+    * Method to put the chains in order and flatten them into the layout.
+    *
+    * @return int[] blocks in layout order
+    **/
+    private int[] placeChains() {
+        int[] rpo = cfg.getReversePostorder();
+
+        /* The chain that falls into the epilogue, if there is one */
+        int last_head = -1;
+        for (int bb_num : rpo) {
+            if (cfg.getBlock(bb_num) != null && chain_next[bb_num] < 0 && fallsToExit(bb_num)) {
+                last_head = bb_num;
+                while (chain_prev[last_head] >= 0)
+                    last_head = chain_prev[last_head];
+            }
+        }
+        if (last_head == first)
+            last_head = -1;
+
+        int[] out = new int[rpo.length];
+        int count = 0;
+        for (int bb_num : rpo) {
+            if (cfg.getBlock(bb_num) == null || chain_prev[bb_num] >= 0 || bb_num == last_head)
+                continue;
+            for (int block = bb_num; block >= 0; block = chain_next[block])
+                out[count++] = block;
+        }
+        for (int block = last_head; block >= 0; block = chain_next[block])
+            out[count++] = block;
+        return Arrays.copyOf(out, count);
+    }
+
+    private boolean fallsToExit(int bb_num) {
+        for (int succ : cfg.getSuccessors(bb_num)) {
+            if (succ == ControlFlowGraph.EXIT)
+                return true;
+        }
+        return false;
+    }
+
+    private static int find(int[] chain_of, int bb_num) {
+        while (chain_of[bb_num] != bb_num) {
+            chain_of[bb_num] = chain_of[chain_of[bb_num]];
+            bb_num = chain_of[bb_num];
+        }
+        return bb_num;
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * This is the ColoringAllocator class, a Chaitin-Briggs graph colouring
+ * register allocator. It gives the best code but needs the interference
+ * graph, which can have a number of edges quadratic in the number of
+ * registers; see LinearScanAllocator for the fast alternative.
+ *
+ * Simplify removes nodes with fewer neighbours than colours. When every
+ * node left has too many, the one with the lowest spill cost per neighbour
+ * is removed anyway (Briggs) and may still find a colour in select.
+ * Select prefers the colour of a move partner, or failing that a colour
+ * the partner could still take, so most moves end up as moves from a
+ * register to itself and are not emitted.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.Arrays;
+
+public class ColoringAllocator extends RegisterAllocator {
+
+    private final InterferenceGraph graph;
+    private int[][] partners;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param InterferenceGraph graph built from liveness
+    * @param Liveness liveness
+    **/
+    public ColoringAllocator(InterferenceGraph graph, Liveness liveness) {
+        super(liveness);
+        this.graph = graph;
+    }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+    protected void assign() {
+        findPartners();
+        select(simplify());
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private void findPartners() {
+        int num_nodes = graph.getNumNodes();
+        int[] count = new int[num_nodes];
+        for (int move = 0; move < graph.getNumMoves(); move++) {
+            count[graph.getMoveDst(move)]++;
+            count[graph.getMoveSrc(move)]++;
+        }
+
+        partners = new int[num_nodes][];
+        for (int node = 0; node < num_nodes; node++) {
+            partners[node] = new int[count[node]];
+            count[node] = 0;
+        }
+        for (int move = 0; move < graph.getNumMoves(); move++) {
+            int dst = graph.getMoveDst(move);
+            int src = graph.getMoveSrc(move);
+            partners[dst][count[dst]++] = src;
+            partners[src][count[src]++] = dst;
+        }
+    }
+
+    private int numColors(int node) {
+        return graph.crossesCall(node) ? CALLEE_SAVED.length : ANY_REGISTER.length;
+    }
+
+   /**
+    * Method to take the candidates apart one node at a time.
+    *
+    * @return int[] candidates in the order they were removed
+    **/
+    private int[] simplify() {
+        int num_nodes = graph.getNumNodes();
+        int[] degree = new int[num_nodes];
+        boolean[] removed = new boolean[num_nodes];
+        int[] stack = new int[num_candidates];
+        int top = 0;
+
+        /* Only candidates and hard registers hold on to a colour */
+        int[] low = new int[num_nodes];
+        int num_low = 0;
+        for (int node = 0; node < num_nodes; node++) {
+            if (!candidate[node])
+                continue;
+            for (int i = 0; i < graph.getDegree(node); i++) {
+                int other = graph.getNeighbour(node, i);
+                if (candidate[other] || kind[other] == HARD)
+                    degree[node]++;
+            }
+            if (degree[node] < numColors(node))
+                low[num_low++] = node;
+        }
+
+        /* Spill candidates, cheapest per neighbour first */
+        Integer[] by_cost = new Integer[num_candidates];
+        int count = 0;
+        for (int node = 0; node < num_nodes; node++) {
+            if (candidate[node])
+                by_cost[count++] = node;
+        }
+        double[] metric = new double[num_nodes];
+        for (int node : by_cost)
+            metric[node] = spill_cost[node] / (degree[node] + 1);
+        Arrays.sort(by_cost, (a, b) -> Double.compare(metric[a], metric[b]));
+        int next_spill = 0;
+
+        while (top < num_candidates) {
+            int node;
+            if (num_low > 0) {
+                node = low[--num_low];
+                if (removed[node])
+                    continue;
+            } else {
+                while (removed[by_cost[next_spill]])
+                    next_spill++;
+                node = by_cost[next_spill];
+            }
+
+            removed[node] = true;
+            stack[top++] = node;
+            for (int i = 0; i < graph.getDegree(node); i++) {
+                int other = graph.getNeighbour(node, i);
+                if (!candidate[other] || removed[other])
+                    continue;
+                if (--degree[other] == numColors(other) - 1)
+                    low[num_low++] = other;
+            }
+        }
+        return stack;
+    }
+
+   /**
+    * Method to give colours in the reverse of the order simplify removed
+    * the nodes. A node whose neighbours already use every colour it may
+    * have is spilled.
+    *
+    * @param int[] stack
+    **/
+    private void select(int[] stack) {
+        for (int top = stack.length - 1; top >= 0; top--) {
+            int node = stack[top];
+
+            int taken = 0;
+            for (int i = 0; i < graph.getDegree(node); i++) {
+                int other = graph.getNeighbour(node, i);
+                if (color[other] >= 0)
+                    taken |= 1 << color[other];
+            }
+
+            int[] allowed = graph.crossesCall(node) ? CALLEE_SAVED : ANY_REGISTER;
+            int choice = -1;
+
+            /* A free colour of a move partner saves the move */
+            for (int partner : partners[node]) {
+                int c = color[partner];
+                if (c >= 0 && (taken & (1 << c)) == 0 && contains(allowed, c)) {
+                    choice = c;
+                    break;
+                }
+            }
+            /* Otherwise one the partners yet to be coloured could take too */
+            int avoid = taken;
+            for (int partner : partners[node]) {
+                if (color[partner] >= 0 || !candidate[partner])
+                    continue;
+                avoid |= ~colorMask(partner);
+                for (int i = 0; i < graph.getDegree(partner); i++) {
+                    int other = graph.getNeighbour(partner, i);
+                    if (color[other] >= 0)
+                        avoid |= 1 << color[other];
+                }
+            }
+            for (int i = 0; choice < 0 && i < allowed.length; i++) {
+                if ((avoid & (1 << allowed[i])) == 0)
+                    choice = allowed[i];
+            }
+            for (int i = 0; choice < 0 && i < allowed.length; i++) {
+                if ((taken & (1 << allowed[i])) == 0)
+                    choice = allowed[i];
+            }
+
+            color[node] = choice;
+            if (choice >= 0) {
+                num_colored++;
+            } else {
+                num_spilled++;
+            }
+        }
+    }
+
+    private int colorMask(int node) {
+        int mask = 0;
+        for (int reg : graph.crossesCall(node) ? CALLEE_SAVED : ANY_REGISTER)
+            mask |= 1 << reg;
+        return mask;
+    }
+
+    private static boolean contains(int[] list, int value) {
+        for (int item : list) {
+            if (item == value)
+                return true;
+        }
+        return false;
+    }
+}
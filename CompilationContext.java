@@ -0,0 +1,288 @@
+/**
+ * This is the CompilationContext class, which holds everything one
+ * compile of an RTL file works with: the options, the FunctionCompiler of
+ * each function and what they report. Nothing of it is static, so the
+ * compiler can be used as a library and contexts can compile different
+ * files on different threads at the same time.
+ *
+ *     CompilationContext context = new CompilationContext();
+ *     context.setRegalloc("linear");
+ *     context.compile(new File("fib.c.234r.expand"), new File("fib.s"));
+ *
+ * A context can be used for any number of compiles, one at a time. The
+ * log level is the one thing shared, it belongs to Log.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class CompilationContext {
+
+    /* color: graph colouring, linear: linear scan, for big functions that
+     * have to compile fast, none: every register on the stack */
+    private String regalloc = "color";
+    private boolean sccp = true;
+    private boolean lvn = true;
+    private boolean dce = true;
+    private boolean peephole = true;
+    /* functions compiled at once, and the pool to compile them on, one of
+     * the context's own for each compile if none is given */
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private ForkJoinPool pool;
+    /* code of functions compiled before, null for none */
+    private CompileCache cache;
+
+    /* of the last compile */
+    private ArrayList<FunctionCompiler> compilers = new ArrayList<>();
+    private ArrayList<String> summary = new ArrayList<>();
+    private PhaseTimer report = new PhaseTimer();
+    private long wall_ns;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+    public CompilationContext() {
+    }
+
+   /**
+    * @param CompilationContext options context to take the options of,
+    *        nothing of its compiles is shared
+    **/
+    public CompilationContext(CompilationContext options) {
+        this.regalloc = options.regalloc;
+        this.sccp = options.sccp;
+        this.lvn = options.lvn;
+        this.dce = options.dce;
+        this.peephole = options.peephole;
+        this.threads = options.threads;
+        this.pool = options.pool;
+        this.cache = options.cache;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public String getRegalloc() { return regalloc; }
+    public boolean getSccp() { return sccp; }
+    public boolean getLvn() { return lvn; }
+    public boolean getDce() { return dce; }
+    public boolean getPeephole() { return peephole; }
+    public int getThreads() { return threads; }
+
+   /**
+    * @param String regalloc color, linear or none
+    * @throws IllegalArgumentException if it is not one
+    **/
+    public void setRegalloc(String regalloc) {
+        if (!(regalloc.equals("color") || regalloc.equals("linear") || regalloc.equals("none")))
+            throw new IllegalArgumentException("unknown register allocator " + regalloc);
+        this.regalloc = regalloc;
+    }
+
+    public void setSccp(boolean sccp) { this.sccp = sccp; }
+    public void setLvn(boolean lvn) { this.lvn = lvn; }
+    public void setDce(boolean dce) { this.dce = dce; }
+    public void setPeephole(boolean peephole) { this.peephole = peephole; }
+
+   /**
+    * @param int threads at least 1
+    * @throws IllegalArgumentException if it is not
+    **/
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, not " + threads);
+        this.threads = threads;
+    }
+
+   /**
+    * @param ForkJoinPool pool to compile the functions on, shared with
+    *        whoever else uses it and never shut down by the context; null
+    *        for a pool of threads workers per compile
+    **/
+    public void setPool(ForkJoinPool pool) { this.pool = pool; }
+
+   /**
+    * @param CompileCache cache to take the code of unchanged functions
+    *        from, which may be shared by any number of contexts; null for
+    *        none
+    **/
+    public void setCache(CompileCache cache) { this.cache = cache; }
+    public CompileCache getCache() { return cache; }
+
+   /**
+    * @return int number of functions in the last file compiled
+    **/
+    public int getNumFunctions() { return compilers.size(); }
+
+   /**
+    * @return ArrayList<String> register allocation and peephole summary of
+    *         each function of the last compile, in the order of the file
+    **/
+    public ArrayList<String> getSummary() { return summary; }
+
+   /**
+    * @return PhaseTimer the phases and counters of every function of the
+    *         last compile added together, with the split and the final
+    *         write of the file
+    **/
+    public PhaseTimer getTimeReport() { return report; }
+
+   /**
+    * @return long wall time of the last compile
+    **/
+    public long getWallNanos() { return wall_ns; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to compile an RTL file into an ASM file. The code is written
+    * to a temporary file next to output and moved over it once the compile
+    * succeeds, so a failed compile leaves the last good output in place.
+    *
+    * @param File input expand file
+    * @param File output asm file
+    * @throws IOException if either cannot be opened
+    **/
+    public void compile(File input, File output) throws IOException {
+        File temp = File.createTempFile(output.getName(), ".tmp",
+                                        output.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                compile(input, out);
+            }
+            Files.move(temp.toPath(), output.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+   /**
+    * Method to compile an RTL file, writing the ARM code to out. out is
+    * flushed but left open.
+    *
+    * @param File input expand file
+    * @param OutputStream out
+    * @throws IOException if input cannot be read
+    **/
+    public void compile(File input, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        PhaseTimer timer = new PhaseTimer();
+        timer.begin(PhaseTimer.SPLIT);
+
+        /* Map the RTL file and split it into its functions, a file with
+         * one function keeps the plain BB_n labels */
+        ArrayList<RTLReader> functions = new RTLReader(input).splitFunctions();
+        compilers = new ArrayList<>();
+        summary = new ArrayList<>();
+        for (RTLReader function : functions) {
+            String label_prefix = functions.size() == 1
+                                  ? "BB_" : function.getFunctionName() + "_BB_";
+            compilers.add(new FunctionCompiler(this, function, label_prefix));
+        }
+
+        /* Functions in the cache skip the back end */
+        byte[][] code = new byte[compilers.size()][];
+        String[] keys = new String[compilers.size()];
+        if (cache != null) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = CompileCache.key(functions.get(i), compilers.get(i).getLabelPrefix(), this);
+                code[i] = cache.get(keys[i]);
+            }
+        }
+        timer.end();
+        compileAll(functions, code);
+        timer.begin(PhaseTimer.WRITE);
+        if (cache != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (compilers.get(i).isCompiled())
+                    cache.put(keys[i], code[i]);
+            }
+        }
+
+        /* Write initialize lines to ASM file, then the functions */
+        AssemblyEmitter writer = new AssemblyEmitter(out);
+        writer.directive(".arch", "armv6");
+        writer.directive(".text");
+        for (int i = 0; i < code.length; i++) {
+            writer.raw(code[i]);
+            if (compilers.get(i).isCompiled()) {
+                summary.addAll(compilers.get(i).getSummary());
+                timer.add(compilers.get(i).getTimer());
+            } else {
+                summary.add("Cache hit: " + compilers.get(i).getName());
+                timer.count("cache hits", 1);
+            }
+        }
+        writer.flush();
+        timer.end();
+
+        report = timer;
+        wall_ns = System.nanoTime() - start;
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to compile every function that has no code yet, on the fork
+    * join pool when there is more than one. The biggest functions are
+    * started first so a big one does not finish last on its own.
+    *
+    * @param ArrayList<RTLReader> functions the reader of each compiler
+    * @param byte[][] code the code of each function, in the order of the
+    *        file, null where it still has to be compiled
+    **/
+    private void compileAll(ArrayList<RTLReader> functions, byte[][] code) {
+        ArrayList<Integer> todo = new ArrayList<>();
+        for (int i = 0; i < code.length; i++) {
+            if (code[i] == null)
+                todo.add(i);
+        }
+        if ((pool == null && threads == 1) || todo.size() <= 1) {
+            for (int i : todo) {
+                code[i] = compilers.get(i).compile();
+            }
+            return;
+        }
+
+        Integer[] by_size = todo.toArray(new Integer[0]);
+        Arrays.sort(by_size, (a, b) -> Integer.compare(size(functions.get(b)),
+                                                       size(functions.get(a))));
+
+        ForkJoinPool workers = pool != null ? pool
+                               : new ForkJoinPool(Math.min(threads, by_size.length));
+        try {
+            ArrayList<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+            for (int i = 0; i < code.length; i++) {
+                tasks.add(null);
+            }
+            for (int i : by_size) {
+                FunctionCompiler compiler = compilers.get(i);
+                tasks.set(i, workers.submit(compiler::compile));
+            }
+            for (int i : todo) {
+                code[i] = tasks.get(i).join();
+            }
+        } finally {
+            if (workers != pool)
+                workers.shutdown();
+        }
+    }
+
+    private static int size(RTLReader function) {
+        return function.getLength() - function.getPosition();
+    }
+}
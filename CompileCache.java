@@ -0,0 +1,206 @@
+/**
+ * This is the CompileCache class, an on disk cache of the ARM code of
+ * single functions, so a rebuild only runs the back end for the functions
+ * that changed.
+ *
+ * An entry is keyed by the SHA-256 of the function's RTL with its white
+ * space collapsed, its name and label prefix, the options that change the
+ * code and VERSION, and is stored as <key>.s in the cache directory. The
+ * numbers in the ";; Function" header are left out, they move when other
+ * functions of the file are added or removed.
+ *
+ * The cache is kept under max_bytes by evicting the least recently used
+ * entries. A hit touches the file, so the order survives from one run to
+ * the next. Entries are written to a temporary file and moved into place,
+ * so other processes sharing the directory never see half an entry.
+ *
+ * VERSION has to be bumped whenever a change to the back end changes the
+ * code it writes.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CompileCache {
+
+    private static final String VERSION = "m3-cache-7";
+    private static final String SUFFIX = ".s";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final long max_bytes;
+
+    /* key -> size of the entry, least recently used first */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long num_bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * Opens the cache in directory, making it if it is not there, and
+    * trims it to max_bytes.
+    *
+    * @param File directory
+    * @param long max_bytes
+    * @throws IOException if the directory cannot be made
+    **/
+    public CompileCache(File directory, long max_bytes) throws IOException {
+        this.directory = directory;
+        this.max_bytes = max_bytes;
+        Files.createDirectories(directory.toPath());
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null)
+            files = new File[0];
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String key = file.getName().substring(0, file.getName().length() - SUFFIX.length());
+            entries.put(key, file.length());
+            num_bytes += file.length();
+        }
+        evict();
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getNumBytes() { return num_bytes; }
+    public synchronized int getNumEntries() { return entries.size(); }
+
+   /**
+    * @return String hits, misses, evictions and size of the cache
+    **/
+    public synchronized String getStats() {
+        return String.format("Cache: %d hits, %d misses, %d evicted, %d entries, %d of %d KB in %s",
+                             hits, misses, evictions, entries.size(),
+                             num_bytes / 1024, max_bytes / 1024, directory);
+    }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to work out the key of a function.
+    *
+    * @param RTLReader function reader over the function, not moved
+    * @param String label_prefix
+    * @param CompilationContext context the options it is compiled with
+    * @return String the key, hex
+    **/
+    public static String key(RTLReader function, String label_prefix, CompilationContext context) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        String options = VERSION
+                         + " " + context.getRegalloc()
+                         + " " + context.getSccp()
+                         + " " + context.getLvn()
+                         + " " + context.getDce()
+                         + " " + context.getPeephole()
+                         + " " + function.getFunctionName()
+                         + " " + label_prefix + "\n";
+        digest.update(options.getBytes());
+        function.digest(digest);
+
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+   /**
+    * Method to look up the code of a function.
+    *
+    * @param String key
+    * @return byte[] the code, null on a miss
+    **/
+    public synchronized byte[] get(String key) {
+        if (entries.get(key) == null) {
+            misses++;
+            return null;
+        }
+
+        File file = entry(key);
+        try {
+            byte[] code = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            hits++;
+            return code;
+        } catch (IOException e) {
+            /* removed under us, by another process trimming it */
+            num_bytes -= entries.remove(key);
+            misses++;
+            return null;
+        }
+    }
+
+   /**
+    * Method to store the code of a function, evicting the least recently
+    * used entries if the cache grows past its size. An entry bigger than
+    * the whole cache is not stored.
+    *
+    * @param String key
+    * @param byte[] code
+    **/
+    public synchronized void put(String key, byte[] code) {
+        if (code.length > max_bytes || entries.containsKey(key))
+            return;
+
+        try {
+            File temp = File.createTempFile(key, ".tmp", directory);
+            Files.write(temp.toPath(), code);
+            Files.move(temp.toPath(), entry(key).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.warn("CompileCache: " + e.getMessage());
+            return;
+        }
+        entries.put(key, (long) code.length);
+        num_bytes += code.length;
+        evict();
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (num_bytes > max_bytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            entry(entry.getKey()).delete();
+            num_bytes -= entry.getValue();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private File entry(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * This is the CompileServer class, which compiles many RTL files in one
+ * JVM so that startup and JIT warmup are paid once instead of per file.
+ *
+ * Files are compiled on one fork join pool. Each file gets a
+ * CompilationContext of its own made from the options the server was
+ * started with, and the functions of a file go on the same pool, so a
+ * batch of small files and one big file both keep every worker busy.
+ *
+ * It is driven three ways from GenerateAssembly:
+ *
+ *   --batch      the files on the command line, in/out pairs
+ *   --serve      requests read from stdin, answers written to stdout
+ *   --socket=P   requests over a Unix domain socket at path P, from any
+ *                number of clients
+ *
+ * A request is one line, "<expand file> <asm file>", answered with
+ * "ok <expand file> <ms>" or "error <expand file> <message>" once it is
+ * done, so answers may come back in a different order than the requests.
+ * "stats" waits for the requests sent before it on the same stream and
+ * is then answered with the totals so far, which still leave out files
+ * other clients have in flight. "shutdown" stops a socket server.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class CompileServer {
+
+    private final CompilationContext options;
+    private final ForkJoinPool pool;
+
+    /* totals since the server started */
+    private final long start_ns = System.nanoTime();
+    private final AtomicInteger num_files = new AtomicInteger();
+    private final AtomicInteger num_failed = new AtomicInteger();
+    private final AtomicLong compile_ns = new AtomicLong();
+
+    private volatile boolean running = true;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param CompilationContext options the options every file is compiled
+    *        with, its threads are the workers of the pool
+    **/
+    public CompileServer(CompilationContext options) {
+        this.options = options;
+        this.pool = new ForkJoinPool(options.getThreads());
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int getNumFiles() { return num_files.get(); }
+    public int getNumFailed() { return num_failed.get(); }
+
+   /**
+    * @return String files compiled, failed, the mean compile time of a
+    *         file and files per second since the server started
+    **/
+    public String getStats() {
+        int files = num_files.get();
+        double seconds = (System.nanoTime() - start_ns) / 1e9;
+        String stats = String.format("%d files, %d failed, %.3f ms per file, %.1f files/s",
+                                     files, num_failed.get(),
+                                     files == 0 ? 0.0 : compile_ns.get() / 1e6 / files,
+                                     files / seconds);
+        CompileCache cache = options.getCache();
+        return cache == null ? stats : stats + "; " + cache.getStats();
+    }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to compile one file on the pool.
+    *
+    * @param File input expand file
+    * @param File output asm file
+    * @return CompletableFuture<Result> done when the file is
+    **/
+    public CompletableFuture<Result> submit(File input, File output) {
+        return CompletableFuture.supplyAsync(() -> compile(input, output), pool);
+    }
+
+   /**
+    * Method to compile every pair of files, logging the time of each in the
+    * order given and the totals at the end.
+    *
+    * @param ArrayList<File[]> jobs input and output file of each compile
+    * @return boolean true if every file compiled
+    **/
+    public boolean batch(ArrayList<File[]> jobs) {
+        ArrayList<CompletableFuture<Result>> results = new ArrayList<>();
+        for (File[] job : jobs) {
+            results.add(submit(job[0], job[1]));
+        }
+
+        boolean ok = true;
+        for (CompletableFuture<Result> future : results) {
+            Result result = future.join();
+            ok &= result.error == null;
+            if (result.error != null)
+                Log.error(result.toString());
+            else
+                Log.info(result.toString());
+        }
+        Log.info("Batch: " + getStats());
+        return ok;
+    }
+
+   /**
+    * Method to answer requests read from in until it ends, waiting for the
+    * last of them to finish.
+    *
+    * @param BufferedReader in
+    * @param PrintStream out
+    **/
+    public void serve(BufferedReader in, PrintStream out) throws IOException {
+        serve(in, (line) -> {
+            synchronized (out) {
+                out.println(line);
+                out.flush();
+            }
+        });
+        Log.info("Served: " + getStats());
+    }
+
+   /**
+    * Method to take requests over a Unix domain socket at path until one of
+    * them is shutdown. Each connection is read on a thread of its own.
+    *
+    * @param Path path of the socket, removed first if it is left over
+    **/
+    public void listen(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(path));
+            Log.info("Listening on " + path);
+
+            while (running) {
+                SocketChannel client = server.accept();
+                Thread thread = new Thread(() -> connection(client, server));
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (AsynchronousCloseException e) {
+            /* shutdown closed the server while it waited */
+        } finally {
+            Files.deleteIfExists(path);
+        }
+        Log.info("Served: " + getStats());
+    }
+
+    public void close() {
+        pool.shutdown();
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private Result compile(File input, File output) {
+        CompilationContext context = new CompilationContext(options);
+        context.setPool(pool);
+
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            if (!input.isFile() || !input.canRead())
+                throw new IOException("cannot read " + input);
+            context.compile(input, output);
+        } catch (IOException | RuntimeException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        long ns = System.nanoTime() - start;
+
+        num_files.incrementAndGet();
+        compile_ns.addAndGet(ns);
+        if (error != null) {
+            num_failed.incrementAndGet();
+        } else if (Log.on(Log.DEBUG)) {
+            for (String line : context.getSummary())
+                Log.debug(line);
+        }
+        return new Result(input, ns, error);
+    }
+
+   /**
+    * Method to read requests until in ends or asks for shutdown, answering
+    * each through answer. stats is answered once the requests read before
+    * it are done, so its totals count them.
+    *
+    * @return boolean true if the requests ended with shutdown
+    **/
+    private boolean serve(BufferedReader in, Consumer<String> answer) throws IOException {
+        ArrayList<CompletableFuture<Void>> pending = new ArrayList<>();
+        String line;
+        boolean shutdown = false;
+
+        while (!shutdown && (line = in.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty())
+                continue;
+
+            if (words[0].equals("stats")) {
+                for (CompletableFuture<Void> future : pending) {
+                    future.join();
+                }
+                pending.clear();
+                answer.accept("stats " + getStats());
+            } else if (words[0].equals("shutdown")) {
+                shutdown = true;
+            } else if (words.length == 2) {
+                pending.add(submit(new File(words[0]), new File(words[1]))
+                            .thenAccept((result) -> answer.accept(result.answer())));
+            } else {
+                answer.accept("error " + line.trim() + " expected <expand file> <asm file>");
+            }
+        }
+
+        for (CompletableFuture<Void> future : pending) {
+            future.join();
+        }
+        return shutdown;
+    }
+
+   /**
+    * Method to serve one client of the socket. Answers are written to the
+    * channel itself, a stream over it would wait for the read of the next
+    * request to finish.
+    **/
+    private void connection(SocketChannel client, ServerSocketChannel server) {
+        try (SocketChannel channel = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                 Channels.newInputStream(channel), StandardCharsets.UTF_8))) {
+            Consumer<String> answer = (line) -> write(channel, line);
+            if (serve(in, answer)) {
+                running = false;
+                answer.accept("bye");
+                server.close();
+            }
+        } catch (IOException e) {
+            Log.warn("CompileServer: " + e.getMessage());
+        }
+    }
+
+    private static void write(SocketChannel channel, String line) {
+        ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (channel) {
+            try {
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+            } catch (IOException e) {
+                Log.warn("CompileServer: " + e.getMessage());
+            }
+        }
+    }
+
+   /**
+    * How one compile went.
+    **/
+    public static final class Result {
+        final File input;
+        final long ns;
+        final String error;
+
+        Result(File input, long ns, String error) {
+            this.input = input;
+            this.ns = ns;
+            this.error = error;
+        }
+
+        public boolean ok() { return error == null; }
+        public double getMillis() { return ns / 1e6; }
+
+        String answer() {
+            return error == null ? String.format("ok %s %.3f", input, getMillis())
+                                 : "error " + input + " " + error;
+        }
+
+        public String toString() {
+            return error == null ? String.format("%s: %.3f ms", input, getMillis())
+                                 : input + ": " + error;
+        }
+    }
+}
@@ -0,0 +1,549 @@
+/**
+ * This is the ConstantPropagation class, sparse conditional constant
+ * propagation (Wegman and Zadeck) over the insns of a function before its
+ * registers are allocated.
+ *
+ * The RTL is not in SSA form, so every pseudo and memory home gets one
+ * lattice value for the whole function, the meet of what all its defs in
+ * blocks that can run give it: TOP while none of them has been seen, a
+ * constant while they all give the same one, BOTTOM otherwise. Inside a
+ * block a register has the value of its last def above the insn, which is
+ * exact. A block is visited when it is first found to be reachable and
+ * again whenever a register it reads drops, and a conditional jump only
+ * makes the edges it can take reachable, so the code under a test that
+ * always goes one way is never looked at. Values only drop, at most twice
+ * each, so the solve ends.
+ *
+ * Then every SET whose source is known becomes a SET of the constant, known
+ * registers inside a plus or compare become constants, a jump whose
+ * condition is known becomes a plain jump or is deleted with its compare,
+ * and the blocks nothing reaches are emptied. A changed insn is made anew
+ * from its text, a deleted one becomes a NOTE_INSN_DELETED note the way GCC
+ * deletes insns, so the ids and the chain of next ids stay whole.
+ *
+ * Memory homes of locals are only followed when no insn takes the address
+ * of one, as for the register allocator.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+public class ConstantPropagation {
+
+    /* lattice values other than the constants, which are ints */
+    private static final long TOP = Long.MAX_VALUE;
+    private static final long BOTTOM = Long.MIN_VALUE;
+
+    /* what a conditional jump at the end of a block does */
+    private static final int NOT_TAKEN = 0;
+    private static final int TAKEN = 1;
+    private static final int EITHER = 2;
+    private static final int UNKNOWN = 3;
+
+    private static final int EQ = OpcodeTable.findCode("eq");
+    private static final int NE = OpcodeTable.findCode("ne");
+    private static final int GT = OpcodeTable.findCode("gt");
+    private static final int GE = OpcodeTable.findCode("ge");
+    private static final int LT = OpcodeTable.findCode("lt");
+    private static final int LE = OpcodeTable.findCode("le");
+    private static final int GTU = OpcodeTable.findCode("gtu");
+    private static final int GEU = OpcodeTable.findCode("geu");
+    private static final int LTU = OpcodeTable.findCode("ltu");
+    private static final int LEU = OpcodeTable.findCode("leu");
+
+    private final ArrayList<LinkedList<Instruction>> graph;
+    private final HashMap<Integer, Integer> bb_map;
+    private final ControlFlowGraph cfg;
+
+    /* dense ids of the pseudos and followed memory homes */
+    private RegisterNumbering numbering;
+
+    /* lattice value of each register, and the blocks reading it in a SET */
+    private long[] values;
+    private int[][] readers;
+    private int[] num_readers;
+
+    /* values of the defs above the insn in the block being visited, valid
+     * where stamp is visit, and the operands of its last compare */
+    private long[] local;
+    private int[] stamp;
+    private int visit;
+    private long cc_first;
+    private long cc_second;
+
+    private boolean[] executable;
+    private boolean[] undecided;
+    private boolean[] on_list;
+    private int[] worklist;
+    private int num_work;
+
+    private int num_folded;
+    private int num_resolved;
+    private int num_removed;
+    private int num_visits;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param ArrayList<LinkedList<Instruction>> graph insns by basic block
+    *        number, changed in place by run
+    * @param HashMap<Integer, Integer> bb_map insn id -> basic block number
+    * @param ControlFlowGraph cfg built from graph
+    **/
+    public ConstantPropagation(ArrayList<LinkedList<Instruction>> graph,
+                               HashMap<Integer, Integer> bb_map, ControlFlowGraph cfg) {
+        this.graph = graph;
+        this.bb_map = bb_map;
+        this.cfg = cfg;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int getNumFolded() { return num_folded; }
+    public int getNumResolved() { return num_resolved; }
+    public int getNumRemoved() { return num_removed; }
+    public int getNumVisits() { return num_visits; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to solve the values and rewrite the graph with them.
+    **/
+    public void run() {
+        numbering = new RegisterNumbering(graph);
+        numberRegisters();
+
+        int size = cfg.size();
+        executable = new boolean[size];
+        undecided = new boolean[size];
+        on_list = new boolean[size];
+        worklist = new int[size];
+        local = new long[numbering.size()];
+        stamp = new int[numbering.size()];
+
+        for (int succ : cfg.getSuccessors(ControlFlowGraph.ENTRY))
+            reach(succ);
+
+        /* A test still waiting on a register no def reaches could go
+         * either way */
+        boolean again = true;
+        while (again) {
+            while (num_work > 0) {
+                int bb_num = worklist[--num_work];
+                on_list[bb_num] = false;
+                visitBlock(bb_num);
+            }
+            again = false;
+            for (int bb_num = 0; bb_num < size; bb_num++) {
+                if (executable[bb_num] && undecided[bb_num]) {
+                    undecided[bb_num] = false;
+                    for (int succ : cfg.getSuccessors(bb_num))
+                        reach(succ);
+                    again = true;
+                }
+            }
+        }
+
+        rewrite();
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to give every pseudo and followed memory home a dense id, note
+    * the blocks reading each one in a SET and start every register at TOP,
+    * or at BOTTOM when it has no def this pass understands.
+    **/
+    private void numberRegisters() {
+        ArrayList<Integer> unknown = new ArrayList<>();
+        int[] num_defs = new int[256];
+        readers = new int[256][];
+        num_readers = new int[256];
+
+        for (int bb_num = 0; bb_num < graph.size(); bb_num++) {
+            for (Instruction insn : graph.get(bb_num)) {
+                RtlNode pattern = insn.getSExp();
+                if (pattern == null || insn.getType() == InstructionType.NOTE)
+                    continue;
+
+                if (pattern.getType() != InstructionType.SET || insn.getType() == InstructionType.CALL) {
+                    /* a USE only reads, anything else may write what it mentions */
+                    if (pattern.getType() != InstructionType.USE)
+                        collect(pattern, unknown);
+                    continue;
+                }
+
+                RtlNode dst = pattern.getChild(0);
+                int id = numbering.number(dst);
+                if (id >= 0) {
+                    if (id >= num_defs.length)
+                        num_defs = Arrays.copyOf(num_defs, id * 2);
+                    num_defs[id]++;
+                } else if (!isPlainDestination(dst)) {
+                    collect(dst, unknown);
+                }
+                addReaders(pattern.getChild(1), bb_num);
+            }
+        }
+
+        values = new long[numbering.size()];
+        for (int id = 0; id < numbering.size(); id++) {
+            values[id] = id < num_defs.length && num_defs[id] > 0 ? TOP : BOTTOM;
+        }
+        for (int id : unknown) {
+            values[id] = BOTTOM;
+        }
+    }
+
+    private void addReaders(RtlNode node, int bb_num) {
+        int id = numbering.number(node);
+        if (id >= 0) {
+            if (id >= readers.length) {
+                readers = Arrays.copyOf(readers, id * 2);
+                num_readers = Arrays.copyOf(num_readers, id * 2);
+            }
+            int n = num_readers[id];
+            if (n > 0 && readers[id][n - 1] == bb_num)
+                return;
+            if (readers[id] == null)
+                readers[id] = new int[2];
+            else if (n == readers[id].length)
+                readers[id] = Arrays.copyOf(readers[id], n * 2);
+            readers[id][num_readers[id]++] = bb_num;
+            return;
+        }
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            addReaders(node.getChild(i), bb_num);
+        }
+    }
+
+    private void collect(RtlNode node, ArrayList<Integer> ids) {
+        int id = numbering.number(node);
+        if (id >= 0) {
+            ids.add(id);
+            return;
+        }
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            collect(node.getChild(i), ids);
+        }
+    }
+
+   /**
+    * Method to run the insns of a block over the values, lowering the
+    * registers its SETs define, and make the edges it can take reachable.
+    *
+    * @param int bb_num
+    **/
+    private void visitBlock(int bb_num) {
+        num_visits++;
+        visit++;
+        cc_first = cc_second = BOTTOM;
+
+        LinkedList<Instruction> block = graph.get(bb_num);
+        for (Instruction insn : block) {
+            step(insn);
+        }
+
+        int[] succs = cfg.getSuccessors(bb_num);
+        Instruction last = block.peekLast();
+        int decision = isConditionalJump(last) ? condition(last) : EITHER;
+        undecided[bb_num] = decision == UNKNOWN;
+        if (decision == UNKNOWN)
+            return;
+
+        int target = decision == EITHER ? -1 : bb_map.get(last.getJumpLabel());
+        for (int succ : succs) {
+            if (decision == EITHER || succs.length == 1 || (succ == target) == (decision == TAKEN))
+                reach(succ);
+        }
+    }
+
+   /**
+    * Method to run one insn, a SET lowers the register it defines and a
+    * compare sets the operands of the condition codes.
+    *
+    * @param Instruction insn
+    * @return long value the SET stores, BOTTOM for any other insn
+    **/
+    private long step(Instruction insn) {
+        RtlNode pattern = insn.getSExp();
+        if (insn.getType() == InstructionType.CALL) {
+            cc_first = cc_second = BOTTOM;
+            return BOTTOM;
+        }
+        if (pattern == null || pattern.getType() != InstructionType.SET
+                || insn.getType() == InstructionType.NOTE)
+            return BOTTOM;
+
+        RtlNode dst = pattern.getChild(0);
+        RtlNode src = pattern.getChild(1);
+        if (dst.getType() == InstructionType.REG_CC) {
+            if (src.getType() == InstructionType.COMPARE_CC) {
+                cc_first = eval(src.getChild(0));
+                cc_second = eval(src.getChild(1));
+            } else {
+                cc_first = cc_second = BOTTOM;
+            }
+            return BOTTOM;
+        }
+        if (dst.getType() == InstructionType.PC)
+            return BOTTOM;
+
+        long value = eval(src);
+        int id = numbering.idOf(dst);
+        if (id >= 0) {
+            local[id] = value;
+            stamp[id] = visit;
+            lower(id, value);
+        }
+        return value;
+    }
+
+    private long eval(RtlNode node) {
+        switch (node.getType()) {
+            case CONST_INT:
+                return node.getValue();
+            case REG:
+            case REG_I:
+            case REG_F:
+            case MEM_C:
+                int id = numbering.idOf(node);
+                if (id < 0 || !node.isWord())
+                    return BOTTOM;
+                return stamp[id] == visit ? local[id] : values[id];
+            case PLUS:
+                if (!node.isWord())
+                    return BOTTOM;
+                long first = eval(node.getChild(0));
+                long second = eval(node.getChild(1));
+                if (first == BOTTOM || second == BOTTOM)
+                    return BOTTOM;
+                if (first == TOP || second == TOP)
+                    return TOP;
+                return (int) first + (int) second;
+            default:
+                return BOTTOM;
+        }
+    }
+
+    private void lower(int id, long value) {
+        long old = values[id];
+        long met = old == TOP ? value : (value == TOP || value == old ? old : BOTTOM);
+        if (met == old)
+            return;
+
+        values[id] = met;
+        for (int i = 0; i < num_readers[id]; i++) {
+            int reader = readers[id][i];
+            if (executable[reader])
+                push(reader);
+        }
+    }
+
+    private void reach(int bb_num) {
+        if (bb_num <= ControlFlowGraph.EXIT || executable[bb_num])
+            return;
+        executable[bb_num] = true;
+        push(bb_num);
+    }
+
+    private void push(int bb_num) {
+        if (on_list[bb_num])
+            return;
+        on_list[bb_num] = true;
+        worklist[num_work++] = bb_num;
+    }
+
+   /**
+    * Method to work out which way the conditional jump ending the block
+    * just run goes, from the operands of its last compare.
+    *
+    * @param Instruction jump (set (pc) (if_then_else (le (reg:CC) (const_int 0)) ...))
+    * @return int TAKEN, NOT_TAKEN, EITHER, or UNKNOWN while an operand is TOP
+    **/
+    private int condition(Instruction jump) {
+        RtlNode test = jump.getSExp().getChild(1).getChild(0);
+        if (test.getNumChildren() != 2
+                || test.getChild(0).getType() != InstructionType.REG_CC
+                || test.getChild(1).getType() != InstructionType.CONST_INT
+                || test.getChild(1).getValue() != 0)
+            return EITHER;
+        if (cc_first == BOTTOM || cc_second == BOTTOM)
+            return EITHER;
+        if (cc_first == TOP || cc_second == TOP)
+            return UNKNOWN;
+
+        int a = (int) cc_first;
+        int b = (int) cc_second;
+        int code = test.getCode();
+        boolean taken;
+        if (code == EQ) taken = a == b;
+        else if (code == NE) taken = a != b;
+        else if (code == GT) taken = a > b;
+        else if (code == GE) taken = a >= b;
+        else if (code == LT) taken = a < b;
+        else if (code == LE) taken = a <= b;
+        else if (code == GTU) taken = Integer.compareUnsigned(a, b) > 0;
+        else if (code == GEU) taken = Integer.compareUnsigned(a, b) >= 0;
+        else if (code == LTU) taken = Integer.compareUnsigned(a, b) < 0;
+        else if (code == LEU) taken = Integer.compareUnsigned(a, b) <= 0;
+        else return EITHER;
+        return taken ? TAKEN : NOT_TAKEN;
+    }
+
+   /**
+    * Method to rewrite the reachable blocks with the solved values and
+    * empty the others.
+    **/
+    private void rewrite() {
+        for (int bb_num = ControlFlowGraph.EXIT + 1; bb_num < graph.size(); bb_num++) {
+            LinkedList<Instruction> block = graph.get(bb_num);
+            if (block.isEmpty())
+                continue;
+            if (bb_num >= executable.length || !executable[bb_num]) {
+                graph.set(bb_num, new LinkedList<Instruction>());
+                num_removed++;
+                continue;
+            }
+
+            visit++;
+            cc_first = cc_second = BOTTOM;
+            int compare = -1;
+            ListIterator<Instruction> insns = block.listIterator();
+            while (insns.hasNext()) {
+                Instruction insn = insns.next();
+                String pattern = fold(insn);
+                if (step(insn) != BOTTOM || pattern != null) {
+                    if (pattern != null)
+                        insns.set(insn.withPattern(pattern));
+                }
+                if (isCompare(insn))
+                    compare = insns.previousIndex();
+            }
+
+            Instruction last = block.peekLast();
+            if (!isConditionalJump(last))
+                continue;
+            int decision = condition(last);
+            if (decision != TAKEN && decision != NOT_TAKEN)
+                continue;
+
+            block.set(block.size() - 1, decision == TAKEN
+                      ? last.withPattern("(set (pc) (label_ref " + last.getJumpLabel() + "))")
+                      : last.deleted());
+            if (compare >= 0)
+                block.set(compare, block.get(compare).deleted());
+            num_resolved++;
+        }
+    }
+
+   /**
+    * Method to work out the new pattern of a SET, with its source folded
+    * to a constant if it is known, or the known registers in it replaced.
+    * Must run before step moves past the insn.
+    *
+    * @param Instruction insn
+    * @return String the new pattern, null if it does not change
+    **/
+    private String fold(Instruction insn) {
+        RtlNode pattern = insn.getSExp();
+        if (pattern == null || pattern.getType() != InstructionType.SET
+                || insn.getType() != InstructionType.INSN)
+            return null;
+        RtlNode dst = pattern.getChild(0);
+        RtlNode src = pattern.getChild(1);
+        if (dst.getType() == InstructionType.PC)
+            return null;
+
+        String folded = dst.getType() == InstructionType.REG_CC ? substitute(src) : fold(src);
+        if (folded == null)
+            return null;
+        num_folded++;
+        return "(set " + dst + " " + folded + ")";
+    }
+
+    private String fold(RtlNode node) {
+        if (node.getType() == InstructionType.CONST_INT)
+            return null;
+        long value = eval(node);
+        if (value != TOP && value != BOTTOM)
+            return "(const_int " + value + ")";
+        return substitute(node);
+    }
+
+   /**
+    * Method to replace the known registers under a plus or compare with
+    * their constants. A constant ends up second in a plus, (plus REG IMM)
+    * is one instruction, and only the second operand of a compare is
+    * replaced, the first one is in a register anyway.
+    *
+    * @param RtlNode node
+    * @return String node with the constants in, null if there are none
+    **/
+    private String substitute(RtlNode node) {
+        if (node.getType() != InstructionType.PLUS && node.getType() != InstructionType.COMPARE_CC)
+            return null;
+
+        String first = node.getType() == InstructionType.PLUS ? fold(node.getChild(0)) : null;
+        String second = fold(node.getChild(1));
+        if (first == null && second == null)
+            return null;
+        if (first == null)
+            first = node.getChild(0).toString();
+        if (second == null)
+            second = node.getChild(1).toString();
+
+        if (node.getType() == InstructionType.PLUS && first.startsWith("(const_int")
+                && !second.startsWith("(const_int")) {
+            String swap = first;
+            first = second;
+            second = swap;
+        }
+        return "(" + OpcodeTable.getHead(node.getHead()) + " " + first + " " + second + ")";
+    }
+
+    private static boolean isCompare(Instruction insn) {
+        RtlNode pattern = insn.getSExp();
+        return insn.getType() == InstructionType.INSN && pattern != null
+            && pattern.getType() == InstructionType.SET
+            && pattern.getChild(0).getType() == InstructionType.REG_CC;
+    }
+
+    private static boolean isConditionalJump(Instruction insn) {
+        RtlNode pattern = insn.getSExp();
+        return insn.getType() == InstructionType.JUMP_INSN && pattern != null
+            && pattern.getType() == InstructionType.SET
+            && pattern.getChild(0).getType() == InstructionType.PC
+            && pattern.getChild(1).getType() == InstructionType.IF_THEN_ELSE
+            && pattern.getChild(1).getChild(1).getType() == InstructionType.LABEL_REF
+            && pattern.getChild(1).getChild(2).getType() == InstructionType.PC;
+    }
+
+   /**
+    * @return boolean true if a SET to node is a def this pass follows or
+    *         writes nothing it follows
+    **/
+    private static boolean isPlainDestination(RtlNode node) {
+        switch (node.getType()) {
+            case REG:
+            case REG_I:
+            case REG_F:
+            case REG_CC:
+            case MEM_C:
+            case PC:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * This is the ControlFlowGraph class, the basic blocks of a function with
+ * their edges as int arrays.
+ *
+ * Nodes are numbered by basic block number. Like GCC, node 0 is the ENTRY
+ * node and node 1 the EXIT node; neither holds instructions. ENTRY has an
+ * edge to the first block and every block that falls off the end of the
+ * function has an edge to EXIT. Numbers with no instructions are empty
+ * nodes with no edges.
+ *
+ * Postorder, reverse postorder and the depth first spanning tree are all
+ * worked out by one depth first walk from ENTRY when the graph is built,
+ * so building the graph is O(V + E). Loop nesting depth is only worked
+ * out the first time it is asked for.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+public class ControlFlowGraph {
+
+    public static final int ENTRY = 0;
+    public static final int EXIT = 1;
+
+    private static final int[] NO_EDGES = new int[0];
+
+    private final ArrayList<LinkedList<Instruction>> graph;
+    private final BasicBlock[] blocks;
+    private final int[][] succs;
+    private final int[][] preds;
+
+    /* nodes reached from ENTRY, in depth first postorder and its reverse */
+    private final int[] postorder;
+    private final int[] reverse_postorder;
+
+    /* depth first spanning tree, -1 for ENTRY and unreached nodes */
+    private final int[] dfs_parent;
+    private final int[] preorder_num;
+    private final int[] postorder_num;
+
+    /* number of natural loops each node is in, null until asked for */
+    private int[] loop_depth;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param ArrayList<LinkedList<Instruction>> graph insns by basic block number
+    * @param HashMap<Integer, Integer> bb_map insn id -> basic block number,
+    *        for a graph with nothing but barriers after jumps outside blocks
+    **/
+    public ControlFlowGraph(ArrayList<LinkedList<Instruction>> graph,
+                            HashMap<Integer, Integer> bb_map) {
+        this(graph, bb_map, new HashMap<Integer, Integer>());
+    }
+
+   /**
+    * @param ArrayList<LinkedList<Instruction>> graph insns by basic block number
+    * @param HashMap<Integer, Integer> bb_map insn id -> basic block number
+    * @param HashMap<Integer, Integer> skip_map insn id -> next id of the
+    *        insns outside any block, -1 for a barrier
+    **/
+    public ControlFlowGraph(ArrayList<LinkedList<Instruction>> graph,
+                            HashMap<Integer, Integer> bb_map,
+                            HashMap<Integer, Integer> skip_map) {
+        this.graph = graph;
+        int size = Math.max(graph.size(), EXIT + 1);
+        this.blocks = new BasicBlock[size];
+        this.succs = new int[size][];
+        this.preds = new int[size][];
+
+        /* Successors come straight from the last insn of each block */
+        int first = -1;
+        int[] num_preds = new int[size];
+        for (int bb_num = 0; bb_num < size; bb_num++) {
+            succs[bb_num] = NO_EDGES;
+            if (bb_num <= EXIT || bb_num >= graph.size() || graph.get(bb_num).isEmpty())
+                continue;
+
+            blocks[bb_num] = new BasicBlock(graph.get(bb_num), bb_num, bb_map, skip_map);
+            if (first < 0)
+                first = bb_num;
+        }
+        if (first >= 0)
+            succs[ENTRY] = new int[] { first };
+
+        for (int bb_num = 0; bb_num < size; bb_num++) {
+            if (blocks[bb_num] != null)
+                succs[bb_num] = realEdges(blocks[bb_num].getSuccessors());
+            for (int succ : succs[bb_num])
+                num_preds[succ]++;
+        }
+
+        /* Predecessors are the successor lists turned around */
+        for (int bb_num = 0; bb_num < size; bb_num++) {
+            preds[bb_num] = num_preds[bb_num] == 0 ? NO_EDGES : new int[num_preds[bb_num]];
+            num_preds[bb_num] = 0;
+        }
+        for (int bb_num = 0; bb_num < size; bb_num++) {
+            for (int succ : succs[bb_num])
+                preds[succ][num_preds[succ]++] = bb_num;
+        }
+
+        this.dfs_parent = new int[size];
+        this.preorder_num = new int[size];
+        this.postorder_num = new int[size];
+        this.postorder = depthFirstWalk();
+        this.reverse_postorder = new int[postorder.length];
+        Arrays.fill(postorder_num, -1);
+        for (int i = 0; i < postorder.length; i++) {
+            reverse_postorder[i] = postorder[postorder.length - 1 - i];
+            postorder_num[postorder[i]] = i;
+        }
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int size() { return blocks.length; }
+
+   /**
+    * @param int block_num
+    * @return BasicBlock, null for ENTRY, EXIT and empty numbers
+    **/
+    public BasicBlock getBlock(int block_num) { return blocks[block_num]; }
+
+   /**
+    * @return ArrayList<LinkedList<Instruction>> the insns by basic block
+    *         number the graph was built from
+    **/
+    public ArrayList<LinkedList<Instruction>> getGraph() { return graph; }
+
+    public int[] getSuccessors(int block_num) { return succs[block_num]; }
+    public int[] getPredecessors(int block_num) { return preds[block_num]; }
+
+   /**
+    * @return int[] nodes reached from ENTRY in depth first postorder
+    **/
+    public int[] getPostorder() { return postorder; }
+
+   /**
+    * @return int[] nodes reached from ENTRY in reverse postorder, ENTRY first
+    **/
+    public int[] getReversePostorder() { return reverse_postorder; }
+
+   /**
+    * @param int block_num
+    * @return int parent in the depth first spanning tree, -1 for ENTRY and
+    *         nodes ENTRY does not reach
+    **/
+    public int getDfsParent(int block_num) { return dfs_parent[block_num]; }
+
+   /**
+    * @param int block_num
+    * @return int position in depth first preorder, -1 if ENTRY does not reach it
+    **/
+    public int getPreorderNum(int block_num) { return preorder_num[block_num]; }
+
+    public boolean isReachable(int block_num) { return preorder_num[block_num] >= 0; }
+
+   /**
+    * Method to tell if from -> to is a back edge, an edge to an ancestor
+    * in the depth first spanning tree.
+    *
+    * @param int from
+    * @param int to
+    * @return boolean
+    **/
+    public boolean isBackEdge(int from, int to) {
+        return isReachable(from) && isAncestor(to, from);
+    }
+
+   /**
+    * Method to get how many loops a block is nested in, 0 outside of loops.
+    *
+    * @param int block_num
+    * @return int loop depth
+    **/
+    public int getLoopDepth(int block_num) {
+        if (loop_depth == null)
+            findLoops();
+        return loop_depth[block_num];
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to drop edges that lead to numbers without instructions.
+    *
+    * @param int[] edges
+    * @return int[] edges to EXIT or to non empty blocks
+    **/
+    private int[] realEdges(int[] edges) {
+        int count = 0;
+        for (int succ : edges) {
+            if (succ == EXIT || (succ < blocks.length && blocks[succ] != null))
+                count++;
+        }
+        if (count == edges.length)
+            return edges;
+
+        int[] out = new int[count];
+        count = 0;
+        for (int succ : edges) {
+            if (succ == EXIT || (succ < blocks.length && blocks[succ] != null))
+                out[count++] = succ;
+        }
+        return out;
+    }
+
+   /**
+    * Method to tell if a is an ancestor of b (or b itself) in the depth
+    * first spanning tree.
+    **/
+    private boolean isAncestor(int a, int b) {
+        return preorder_num[a] <= preorder_num[b] && postorder_num[a] >= postorder_num[b];
+    }
+
+   /**
+    * Method to find the natural loops of the graph. An edge to an ancestor
+    * in the depth first tree is a back edge and its target the loop header;
+    * the body of the loop is every node that reaches one of the header's
+    * back edges without going through the header. Each node's depth is the
+    * number of loop bodies it is in.
+    **/
+    private void findLoops() {
+        int size = blocks.length;
+        loop_depth = new int[size];
+
+        boolean[] in_loop = new boolean[size];
+        int[] stack = new int[size];
+        int[] body = new int[size];
+
+        for (int header : reverse_postorder) {
+            boolean has_back_edge = false;
+            for (int pred : preds[header]) {
+                if (isReachable(pred) && isAncestor(header, pred))
+                    has_back_edge = true;
+            }
+            if (!has_back_edge)
+                continue;
+
+            int top = 0;
+            int count = 0;
+            in_loop[header] = true;
+            body[count++] = header;
+
+            for (int pred : preds[header]) {
+                if (!in_loop[pred] && isReachable(pred) && isAncestor(header, pred)) {
+                    in_loop[pred] = true;
+                    body[count++] = pred;
+                    stack[top++] = pred;
+                }
+            }
+            while (top > 0) {
+                int node = stack[--top];
+                for (int pred : preds[node]) {
+                    if (!in_loop[pred] && isReachable(pred)) {
+                        in_loop[pred] = true;
+                        body[count++] = pred;
+                        stack[top++] = pred;
+                    }
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                loop_depth[body[i]]++;
+                in_loop[body[i]] = false;
+            }
+        }
+    }
+
+   /**
+    * Method to walk the graph depth first from ENTRY, filling in dfs_parent
+    * and preorder_num on the way.
+    *
+    * @return int[] nodes in postorder
+    **/
+    private int[] depthFirstWalk() {
+        int size = blocks.length;
+        int[] out = new int[size];
+        int count = 0;
+        int preorder = 0;
+
+        Arrays.fill(dfs_parent, -1);
+        Arrays.fill(preorder_num, -1);
+
+        /* explicit stack of (node, next successor to look at) */
+        int[] stack = new int[size];
+        int[] next = new int[size];
+        int depth = 0;
+        stack[0] = ENTRY;
+        next[0] = 0;
+        preorder_num[ENTRY] = preorder++;
+
+        while (depth >= 0) {
+            int node = stack[depth];
+            if (next[depth] < succs[node].length) {
+                int succ = succs[node][next[depth]++];
+                if (preorder_num[succ] < 0) {
+                    preorder_num[succ] = preorder++;
+                    dfs_parent[succ] = node;
+                    stack[++depth] = succ;
+                    next[depth] = 0;
+                }
+            } else {
+                out[count++] = node;
+                depth--;
+            }
+        }
+
+        int[] trimmed = new int[count];
+        System.arraycopy(out, 0, trimmed, 0, count);
+        return trimmed;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * This is the Dataflow class, a worklist solver for dataflow problems over
+ * a ControlFlowGraph.
+ *
+ * A problem extends this class and says how to recompute one block from
+ * its neighbours in transfer. The solver starts with every block on the
+ * worklist and only puts a block back when a block it reads from has
+ * changed: the predecessors of a changed block for a backward problem, the
+ * successors for a forward one.
+ *
+ * The worklist is kept in a fixed block order, reverse postorder for a
+ * forward problem and postorder (reverse postorder of the reversed graph)
+ * for a backward one, so a block is normally visited after the blocks it
+ * reads from. One sweep over the worklist in that order is an iteration.
+ * A block queued behind the sweep is picked up by the same sweep, one
+ * queued in front of it waits for the next. Blocks ENTRY does not reach
+ * are visited after the rest. ENTRY and EXIT hold no instructions and are
+ * never visited; a problem that reads from them sees whatever value it
+ * gave them.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.Arrays;
+
+public abstract class Dataflow {
+
+    protected final ControlFlowGraph cfg;
+
+    private final boolean backward;
+
+    /* the order blocks are visited in and each block's place in it,
+     * -1 for nodes that are never visited */
+    private final int[] order;
+    private final int[] rank;
+
+    private int iterations;
+    private int visits;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param ControlFlowGraph cfg
+    * @param boolean backward true if blocks are computed from their successors
+    **/
+    protected Dataflow(ControlFlowGraph cfg, boolean backward) {
+        this.cfg = cfg;
+        this.backward = backward;
+        this.rank = new int[cfg.size()];
+        Arrays.fill(rank, -1);
+
+        int count = 0;
+        int[] visit = new int[cfg.size()];
+        for (int bb_num : backward ? cfg.getPostorder() : cfg.getReversePostorder()) {
+            if (cfg.getBlock(bb_num) != null) {
+                rank[bb_num] = count;
+                visit[count++] = bb_num;
+            }
+        }
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+            if (cfg.getBlock(bb_num) != null && rank[bb_num] < 0) {
+                rank[bb_num] = count;
+                visit[count++] = bb_num;
+            }
+        }
+
+        this.order = new int[count];
+        System.arraycopy(visit, 0, order, 0, count);
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public ControlFlowGraph getControlFlowGraph() { return cfg; }
+
+   /**
+    * @return int number of sweeps over the worklist the last solve took
+    **/
+    public int getIterations() { return iterations; }
+
+   /**
+    * @return int number of times transfer ran in the last solve
+    **/
+    public int getVisits() { return visits; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to recompute the value of one block from its neighbours.
+    *
+    * @param int block_num
+    * @return boolean true if the value of the block changed
+    **/
+    protected abstract boolean transfer(int block_num);
+
+   /**
+    * Method to run transfer over the worklist until no block changes.
+    **/
+    public void solve() {
+        BitVector pending = new BitVector(order.length);
+        for (int i = 0; i < order.length; i++) {
+            pending.set(i);
+        }
+
+        iterations = 0;
+        visits = 0;
+
+        while (!pending.isEmpty()) {
+            iterations++;
+
+            for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+                pending.clear(i);
+                visits++;
+
+                int bb_num = order[i];
+                if (transfer(bb_num)) {
+                    for (int next : backward ? cfg.getPredecessors(bb_num)
+                                             : cfg.getSuccessors(bb_num)) {
+                        if (rank[next] >= 0)
+                            pending.set(rank[next]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * This is the DeadCodeElimination class, which deletes the insns of a
+ * function whose results nothing reads, using the live sets Liveness
+ * solves for the register allocator.
+ *
+ * Each block is walked last insn first from its live out set. A SET of a
+ * pseudo that is not live right after it, from a source that does nothing
+ * but compute a value, is deleted and its uses are not made live, so a
+ * chain of dead insns inside a block goes in one walk. A store to the
+ * memory home of a local that is never loaded again goes the same way,
+ * unless some insn takes the address of a local and the home can be read
+ * through a pointer. Deleting the last read of a register in one block can
+ * leave its def in another block dead, so liveness is solved again over
+ * what is left until a walk deletes nothing.
+ *
+ * Hard registers, calls, jumps and anything that is not a single SET are
+ * never deleted. A deleted insn becomes a NOTE_INSN_DELETED note, so the
+ * ids and the chain of next ids stay whole.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+public class DeadCodeElimination {
+
+    /* heads of sources that do more than compute a value */
+    private static final String[] SIDE_EFFECTS = {
+        "unspec_volatile", "asm_input", "asm_operands", "call", "trap_if", "mem/v"
+    };
+
+    private final ArrayList<LinkedList<Instruction>> graph;
+    private final HashMap<Integer, Integer> bb_map;
+    private final HashMap<Integer, Integer> skip_map;
+
+    /* false when an insn takes the address of a local */
+    private boolean homes;
+
+    private int num_removed;
+    private int num_stores;
+    private int num_passes;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param ArrayList<LinkedList<Instruction>> graph insns by basic block
+    *        number, changed in place by run
+    * @param HashMap<Integer, Integer> bb_map insn id -> basic block number
+    * @param HashMap<Integer, Integer> skip_map insn id -> next id of the
+    *        insns outside any block, -1 for a barrier
+    **/
+    public DeadCodeElimination(ArrayList<LinkedList<Instruction>> graph,
+                               HashMap<Integer, Integer> bb_map,
+                               HashMap<Integer, Integer> skip_map) {
+        this.graph = graph;
+        this.bb_map = bb_map;
+        this.skip_map = skip_map;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+   /**
+    * @return int SETs of pseudos deleted
+    **/
+    public int getNumRemoved() { return num_removed; }
+
+   /**
+    * @return int stores to memory homes deleted
+    **/
+    public int getNumStores() { return num_stores; }
+
+   /**
+    * @return int times liveness was solved, the last one deletes nothing
+    **/
+    public int getNumPasses() { return num_passes; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to delete dead insns until there are none left.
+    **/
+    public void run() {
+        homes = !Instruction.takesFrameAddress(graph);
+
+        boolean changed = true;
+        while (changed) {
+            ControlFlowGraph cfg = new ControlFlowGraph(graph, bb_map, skip_map);
+            Liveness liveness = new Liveness(cfg);
+            liveness.solve();
+            num_passes++;
+
+            changed = false;
+            for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+                if (cfg.getBlock(bb_num) != null)
+                    changed |= sweep(liveness, bb_num);
+            }
+        }
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to walk a block last insn first, keeping the live set right
+    * after each insn, and delete the insns that only define dead names.
+    *
+    * @param Liveness liveness solved over the graph as it is
+    * @param int bb_num
+    * @return boolean true if an insn was deleted
+    **/
+    private boolean sweep(Liveness liveness, int bb_num) {
+        BitVector live = new BitVector(liveness.getNumRegisters());
+        live.copy(liveness.getLiveOut(bb_num));
+
+        /* getInsns leaves the NOTEs out, so skip them here too */
+        LinkedList<Instruction> block = graph.get(bb_num);
+        ListIterator<Instruction> insns = block.listIterator(block.size());
+        Instruction[] walked = liveness.getInsns(bb_num);
+        boolean changed = false;
+
+        for (int i = 0; i < walked.length; i++) {
+            Instruction insn = insns.previous();
+            while (insn.getType() == InstructionType.NOTE)
+                insn = insns.previous();
+
+            int[] defs = liveness.getDefs(bb_num, i);
+            if (isDead(insn, defs, live)) {
+                if (insn.getSExp().getChild(0).getType() == InstructionType.MEM_C)
+                    num_stores++;
+                else
+                    num_removed++;
+                insns.set(insn.deleted());
+                changed = true;
+                continue;
+            }
+
+            for (int def : defs)
+                live.clear(def);
+            for (int use : liveness.getUses(bb_num, i))
+                live.set(use);
+        }
+        return changed;
+    }
+
+   /**
+    * @param Instruction insn
+    * @param int[] defs the ids of its defs
+    * @param BitVector live the names live right after it
+    * @return boolean true if insn can go: a SET of a pseudo or followed
+    *         memory home that is not live, from a source without side
+    *         effects
+    **/
+    private boolean isDead(Instruction insn, int[] defs, BitVector live) {
+        RtlNode pattern = insn.getSExp();
+        if (insn.getType() != InstructionType.INSN || pattern == null
+                || pattern.getType() != InstructionType.SET || defs.length == 0)
+            return false;
+
+        RtlNode dst = pattern.getChild(0);
+        switch (dst.getType()) {
+            case REG:
+            case REG_I:
+                if (!Instruction.isPseudo(dst))
+                    return false;
+                break;
+            case MEM_C:
+                if (!homes)
+                    return false;
+                break;
+            default:
+                return false;
+        }
+
+        for (int def : defs) {
+            if (live.get(def))
+                return false;
+        }
+        return isPure(pattern.getChild(1));
+    }
+
+    private static boolean isPure(RtlNode node) {
+        String head = OpcodeTable.getHead(node.getHead());
+        for (String effect : SIDE_EFFECTS) {
+            if (head.startsWith(effect))
+                return false;
+        }
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            if (!isPure(node.getChild(i)))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,469 @@
+/**
+ * This is the FunctionCompiler class, the back end for one function of an
+ * RTL file. It builds the graph of the function's insns, allocates its
+ * registers, selects and lays out its ARM code and hands the code back
+ * with the function's label, prologue and epilogue around it.
+ *
+ * Everything it works on belongs to its one function, so the
+ * CompilationContext can compile the functions of a file on different
+ * threads and put their code together in the order of the file.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+public class FunctionCompiler {
+
+    /* Instructions an ldr =N may be written before its pool. ldr reaches
+     * 4095 bytes, and the literals in the pool ahead of it count too */
+    private static final int POOL_DISTANCE = 500;
+
+    private final RTLReader reader;
+    private final String name;
+    private final String label_prefix;
+    private final String regalloc;
+    private final boolean sccp;
+    private final boolean lvn;
+    private final boolean dce;
+    private final boolean peephole;
+
+    private final ArrayList<LinkedList<Instruction>> graph = new ArrayList<>();
+    private final HashMap<String, String> reg_map = new HashMap<>();
+    private final HashMap<Integer, Integer> bb_map = new HashMap<>(); //key: insn; val: bb
+    private final HashMap<Integer, Integer> skip_map = new HashMap<>(); //key: insn outside a bb; val: next insn
+    private final Counter reg_count = new Counter();
+    /* set when a block that is not laid out last has to branch to the
+     * epilogue, which then gets the label of the EXIT block */
+    private boolean exit_branch;
+    private InstructionSelector selector;
+    /* instruction count when the oldest ldr =N not yet followed by a
+     * .ltorg was written, -1 if there is none, and pools written so far */
+    private int pool_from = -1;
+    private int num_pools;
+    private boolean compiled;
+    private final PhaseTimer timer = new PhaseTimer();
+
+    /* the INFO lines of the compile, the CompilationContext collects them
+     * in the order of the file once every function is done */
+    private final ArrayList<String> summary = new ArrayList<>();
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param CompilationContext context the options of the compile
+    * @param RTLReader reader over the function
+    * @param String label_prefix block n of the function is label_prefix + n
+    **/
+    public FunctionCompiler(CompilationContext context, RTLReader reader, String label_prefix) {
+        this.reader = reader;
+        this.name = reader.getFunctionName();
+        this.label_prefix = label_prefix;
+        this.regalloc = context.getRegalloc();
+        this.sccp = context.getSccp();
+        this.lvn = context.getLvn();
+        this.dce = context.getDce();
+        this.peephole = context.getPeephole();
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public String getName() { return name; }
+    public String getLabelPrefix() { return label_prefix; }
+    public PhaseTimer getTimer() { return timer; }
+
+   /**
+    * @return boolean true once compile has run, false for a function whose
+    *         code came from the cache
+    **/
+    public boolean isCompiled() { return compiled; }
+    public ArrayList<String> getSummary() { return summary; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to compile the function.
+    *
+    * @return byte[] the ARM code of the function
+    **/
+    public byte[] compile() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AssemblyEmitter writer = new AssemblyEmitter(bytes);
+
+        /* Method to populate graph from RTL file */
+        timer.begin(PhaseTimer.PARSE);
+        generateGraph(reader); // should have registers calculated by now
+        if (sccp) {
+            timer.begin(PhaseTimer.SCCP);
+            propagateConstants();
+        }
+        if (lvn) {
+            timer.begin(PhaseTimer.LVN);
+            numberValues();
+        }
+        if (dce) {
+            timer.begin(PhaseTimer.DCE);
+            eliminateDeadCode();
+        }
+
+        timer.begin(PhaseTimer.CFG);
+        BasicBlockGraph bb_graph = new BasicBlockGraph(graph, bb_map, skip_map);
+        RegisterAllocator allocator = null;
+        if (!regalloc.equals("none")) {
+            allocator = allocateRegisters(bb_graph);
+        } else {
+            timer.count("stack slots", reg_count.getCount() - 1);
+        }
+
+        timer.begin(PhaseTimer.SELECT);
+        writer.directive(".global", name);
+
+        /* Adjust stack */
+        writer.label(name);
+        if (allocator != null) {
+            allocator.writePrologue(writer);
+        } else {
+            writer.op("push", "{fp, lr}");
+            writer.op("mov", "fp", "sp");
+            InstructionSelector.operateImmediate(writer, "sub", "sp", "sp", reg_count.getCount() * 4);
+        }
+
+        /* Jumpstart Armify Function, the body goes through the
+         * peephole optimizer on its way to the file */
+        timer.begin(PhaseTimer.LAYOUT);
+        BlockLayout layout = new BlockLayout(bb_graph.getControlFlowGraph());
+        timer.begin(PhaseTimer.SELECT);
+        selector = new InstructionSelector(reg_map, bb_map, skip_map, label_prefix);
+        PeepholeOptimizer optimizer = peephole ? new PeepholeOptimizer(writer) : null;
+        armifyBlocks(optimizer != null ? optimizer : writer, layout);
+        if (optimizer != null) {
+            timer.begin(PhaseTimer.PEEPHOLE);
+            optimizer.finish();
+            timer.count("peephole removed", optimizer.getNumRemoved());
+            summary.add("Peephole: removed " + optimizer.getNumRemoved() + " of "
+                        + optimizer.getNumBefore() + " instructions in " + name);
+            timer.begin(PhaseTimer.SELECT);
+        }
+        if (exit_branch) {
+            writer.label(label_prefix, ControlFlowGraph.EXIT);
+        }
+
+        /* Adjust stack */
+        if (allocator != null) {
+            allocator.writeEpilogue(writer);
+        } else {
+            writer.op("mov", "sp", "fp");
+            writer.op("pop", "{fp, pc}");
+        }
+        if (pool_from >= 0) {
+            writer.directive(".ltorg");
+        }
+
+        timer.begin(PhaseTimer.WRITE);
+        writer.flush();
+        byte[] code = bytes.toByteArray();
+        timer.end();
+
+        timer.count("functions", 1);
+        timer.count("blocks", layout.getOrder().length);
+        timer.count("instructions emitted", writer.getNumInstructions());
+        timer.count("bytes emitted", code.length);
+        compiled = true;
+        return code;
+    }
+
+   /**
+    * Method to run the register allocator the context picks,
+    * filling reg_map with the hard register or stack slot of every
+    * register. The time reported covers liveness, the interference graph
+    * if one is needed and the allocation itself.
+    *
+    * @param BasicBlockGraph bb_graph
+    * @return RegisterAllocator with the prologue and epilogue of the frame
+    */
+    private RegisterAllocator allocateRegisters(BasicBlockGraph bb_graph) {
+        long start = System.nanoTime();
+        timer.begin(PhaseTimer.LIVENESS);
+        bb_graph.calculateLiveInSet();
+        timer.count("liveness iterations", bb_graph.getLiveness().getIterations());
+        timer.count("liveness block visits", bb_graph.getLiveness().getVisits());
+
+        RegisterAllocator allocator;
+        if (regalloc.equals("linear")) {
+            timer.begin(PhaseTimer.REGALLOC);
+            allocator = new LinearScanAllocator(bb_graph.getLiveness());
+        } else {
+            timer.begin(PhaseTimer.INTERFERENCE);
+            InterferenceGraph interference = bb_graph.getInterferenceGraph();
+            timer.count("interference edges", interference.getNumEdges());
+            timer.begin(PhaseTimer.REGALLOC);
+            allocator = new ColoringAllocator(interference, bb_graph.getLiveness());
+        }
+        allocator.allocate(reg_map, reg_count);
+
+        /* Registers no SET mentions still need somewhere to live */
+        HashMap<String, String> all_regs = new HashMap<>();
+        for (LinkedList<Instruction> block : graph) {
+            for (Instruction insn : block) {
+                insn.findRegisters(all_regs, new Counter());
+            }
+        }
+        for (String reg : all_regs.keySet()) {
+            allocator.addSlot(reg_map, reg_count, reg);
+        }
+
+        long ns = System.nanoTime() - start;
+        timer.count("pseudos", allocator.getNumCandidates());
+        timer.count("spills", allocator.getNumSpilled());
+
+        summary.add("Register allocation (" + regalloc + ") of " + name + ": "
+                    + allocator.getNumCandidates() + " candidates, "
+                    + allocator.getNumColored() + " colored, "
+                    + allocator.getNumSpilled() + " spilled in "
+                    + String.format("%.3f", ns / 1e6) + " ms");
+        return allocator;
+    }
+
+   /**
+    * Method to fold the constants of the function, resolve the jumps they
+    * decide and empty the blocks that can no longer run, before anything
+    * else looks at the graph.
+    */
+    private void propagateConstants() {
+        ConstantPropagation propagation = new ConstantPropagation(graph, bb_map,
+                                                                  new ControlFlowGraph(graph, bb_map, skip_map));
+        propagation.run();
+        timer.count("constants folded", propagation.getNumFolded());
+        timer.count("branches resolved", propagation.getNumResolved());
+        timer.count("blocks removed", propagation.getNumRemoved());
+        timer.count("sccp block visits", propagation.getNumVisits());
+
+        summary.add("Constant propagation: folded " + propagation.getNumFolded() + " insns, resolved "
+                    + propagation.getNumResolved() + " branches, removed "
+                    + propagation.getNumRemoved() + " blocks in " + name);
+    }
+
+   /**
+    * Method to replace the values each block computes twice by copies of
+    * the first result.
+    */
+    private void numberValues() {
+        LocalValueNumbering numbering = new LocalValueNumbering(graph);
+        numbering.run();
+        timer.count("expressions reused", numbering.getNumExprs());
+        timer.count("identities simplified", numbering.getNumIdentities());
+
+        summary.add("Value numbering: reused " + numbering.getNumExprs() + " expressions, simplified "
+                    + numbering.getNumIdentities() + " identities in " + name);
+    }
+
+   /**
+    * Method to delete the insns whose results are never read, which
+    * constant propagation leaves plenty of.
+    */
+    private void eliminateDeadCode() {
+        DeadCodeElimination elimination = new DeadCodeElimination(graph, bb_map, skip_map);
+        elimination.run();
+        timer.count("dead insns removed", elimination.getNumRemoved());
+        timer.count("dead stores removed", elimination.getNumStores());
+        timer.count("dce passes", elimination.getNumPasses());
+
+        summary.add("Dead code: removed " + elimination.getNumRemoved() + " insns and "
+                    + elimination.getNumStores() + " stores in "
+                    + elimination.getNumPasses() + " passes in " + name);
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to visit each Basic Block in the order BlockLayout puts them,
+    * converting each block into their ARM instructions.
+    *
+    * @param AssemblyEmitter writer
+    * @param BlockLayout layout
+    */
+    private void armifyBlocks(AssemblyEmitter writer, BlockLayout layout) {
+        for (int basic_block_num : layout.getOrder()) {
+            if (Log.on(Log.TRACE))
+                Log.trace("BB: " + basic_block_num);
+
+            writer.label(label_prefix, basic_block_num);
+            armifyBlock(graph.get(basic_block_num), writer, layout.getNext(basic_block_num));
+        }
+    }
+
+   /**
+    * Helper method used in armyfyBlocks to convert a Basic Block into its respective
+    * ARM instruction format. No branch is written to next_block, it is the
+    * block laid out right after this one.
+    *
+    * @param LinkedList<Instruction> all_insn
+    * @param AssemblyEmitter writer
+    * @param int next_block
+    */
+    private void armifyBlock(LinkedList<Instruction> all_insn, AssemblyEmitter writer,
+                             int next_block) {
+
+        /* Iterate through all the instructions of the basic block */
+        Iterator<Instruction> insns = all_insn.iterator();
+        for(int i = 0; i < all_insn.size() - 1; i++) {
+            /* Convert the instruction object into an arm instruction */
+            armify(insns.next(), writer, -1);
+        }
+
+        /* Get last instruction of basic block */
+        Instruction last_insn = all_insn.peekLast();
+        armify(last_insn, writer, next_block);
+
+        /* If last instruction is a jump, the selector has branched already.
+           Otherwise we branch to the block the next ID falls through to,
+           or to the epilogue if it falls off the end of the function. */
+        if(last_insn.getType() == InstructionType.JUMP_INSN) {
+            return;
+        }
+        int target = BasicBlock.fallthrough(last_insn.getNextID(), bb_map, skip_map);
+        if (target == ControlFlowGraph.EXIT) {
+            if (next_block != ControlFlowGraph.EXIT) {
+                writer.op("b", label_prefix + ControlFlowGraph.EXIT);
+                exit_branch = true;
+            }
+        } else if (target >= 0 && target != next_block) {
+            writer.op("b", label_prefix + target);
+        }
+    }
+
+   /**
+    * Method to convert RTL instruction into ARM instruction
+    *
+    * @param Instruction insn
+    * @param AssemblyEmitter writer
+    * @param int next_block block laid out after the one insn is in, for
+    *        jumps, -1 for other insns
+    */
+    private void armify (Instruction insn, AssemblyEmitter writer, int next_block) {
+        InstructionType type = insn.getType();
+        if (Log.on(Log.TRACE))
+            Log.trace(insn.getCurrID() + " " + type);
+
+        switch (type) {
+            case INSN:
+                if(insn.getSExp().getType() == InstructionType.USE) {
+                    break;
+                }
+                select(insn, writer, -1);
+                break;
+            case JUMP_INSN:
+                select(insn, writer, next_block);
+                break;
+            case CALL:
+                writer.op("bl", insn.getCallFunc());
+                break;
+            case NOTE:
+            case CODE_LABEL:
+            case USE:
+                break;
+            default:
+                if (Log.on(Log.DEBUG))
+                    Log.debug("GenerateAssembly: " + type + " not supported");
+                break;
+        }
+    }
+
+   /**
+    * Helper method used in armify to write the ARM instructions the
+    * InstructionSelector picks for insn. A pattern no rule covers throws
+    * IllegalArgumentException naming the function and the insn, which
+    * fails the whole function.
+    *
+    * @param Instruction insn
+    * @param AssemblyEmitter writer
+    * @param int next_block
+    */
+    private void select(Instruction insn, AssemblyEmitter writer, int next_block) {
+        int before = writer.getNumInstructions();
+        int literals = selector.getNumLiterals();
+        try {
+            selector.select(insn, writer, next_block);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(name + ": insn " + insn.getCurrID() + ": "
+                                               + e.getMessage(), e);
+        }
+        if (pool_from < 0 && selector.getNumLiterals() > literals)
+            pool_from = before;
+        if (pool_from >= 0 && writer.getNumInstructions() - pool_from > POOL_DISTANCE)
+            writePool(writer);
+    }
+
+   /**
+    * Method to put the literal pool here, in the middle of a function that
+    * is too long for ldr =N to reach the one written after the epilogue.
+    * Code jumps over it.
+    *
+    * @param AssemblyEmitter writer
+    */
+    private void writePool(AssemblyEmitter writer) {
+        String after = label_prefix + "pool" + num_pools++;
+        writer.op("b", after);
+        writer.directive(".ltorg");
+        writer.label(after);
+        pool_from = -1;
+    }
+
+   /**
+    * Method to read in an RTL file, parse each instruction, and populate a
+    * graph of RTL instructions.
+    *
+    * @param RTLReader reader
+    */
+    private void generateGraph(RTLReader reader) {
+        CharSequence sexp;
+        int num_insns = 0;
+
+        while ((sexp = reader.next()) != null) {
+            Instruction obj;
+            try {
+                obj = new Instruction(sexp);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + ": " + e.getMessage(), e);
+            }
+            if (regalloc.equals("none")) {
+                obj.findRegisters(reg_map, reg_count);
+            }
+            storeInstruction(obj);
+            bb_map.put(obj.getCurrID(), obj.getBasicBlock());
+            if (obj.getBasicBlock() < 0) {
+                skip_map.put(obj.getCurrID(),
+                             obj.getType() == InstructionType.BARRIER ? -1 : obj.getNextID());
+            }
+            num_insns++;
+        }
+        timer.count("insns parsed", num_insns);
+    }
+
+   /**
+    * Method to file an instruction under its basic block.
+    *
+    * @param Instruction obj
+    @ @return void
+    */
+    private void storeInstruction(Instruction obj) {
+        int basicBlock = obj.getBasicBlock();
+
+        if (basicBlock < 0) return;
+        // Initialize ArrayList indexes that have not been set
+        for (int i = graph.size(); i <= basicBlock; i++ ) {
+            graph.add(new LinkedList<Instruction>());
+        }
+
+        graph.get(basicBlock).add(obj);
+    }
+}
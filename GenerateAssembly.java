@@ -2,48 +2,106 @@
  * CSC 431 - Milestone 2
  *
  * This is a Driver file to generate assembly given an RTL file
+ *
+ * The options on the command line go into a CompilationContext, which
+ * does the compile. --batch, --serve and --socket hand many files to a
+ * CompileServer instead.
  * @author Justin Herrera
  * @author James Kwan
  **/
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.lang.Object;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Stack;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 
 public class GenerateAssembly {
-    
-    private static final int BB_START = 2;
-    private static ArrayList<LinkedList<Instruction>> graph = new ArrayList<>();
-    private static HashMap<String, String> reg_map = new HashMap<>();
-    private static HashMap<String, String> jump_label_map = new HashMap<>();
-    private static Counter reg_count = new Counter();
-    private static boolean[] visited; 
-    private static HashSet<String> basic_block_set = new HashSet<>();
-    private static HashMap<String, String> bb_map = new HashMap<>(); //key: insn; val: bb
 
     public static void main (String[] args) {
 
+        CompilationContext context = new CompilationContext();
+        int log_level = Log.INFO;
+        String mode = null;
+        String socket = null;
+        String cache_dir = null;
+        String time_report = null;
+        long cache_mb = 64;
+        ArrayList<String> files = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--regalloc=")) {
+                    context.setRegalloc(arg.substring("--regalloc=".length()));
+                } else if (arg.equals("--peephole=on") || arg.equals("--peephole=off")) {
+                    context.setPeephole(arg.endsWith("on"));
+                } else if (arg.equals("--sccp=on") || arg.equals("--sccp=off")) {
+                    context.setSccp(arg.endsWith("on"));
+                } else if (arg.equals("--lvn=on") || arg.equals("--lvn=off")) {
+                    context.setLvn(arg.endsWith("on"));
+                } else if (arg.equals("--dce=on") || arg.equals("--dce=off")) {
+                    context.setDce(arg.endsWith("on"));
+                } else if (arg.startsWith("--threads=")) {
+                    context.setThreads(Integer.parseInt(arg.substring("--threads=".length())));
+                } else if (arg.startsWith("--log=")) {
+                    log_level = Log.parseLevel(arg.substring("--log=".length()));
+                } else if (arg.equals("--time-report") || arg.equals("--time-report=table")) {
+                    time_report = "table";
+                } else if (arg.equals("--time-report=json")) {
+                    time_report = "json";
+                } else if (arg.startsWith("--cache=")) {
+                    cache_dir = arg.substring("--cache=".length());
+                } else if (arg.startsWith("--cache-size=")) {
+                    cache_mb = Long.parseLong(arg.substring("--cache-size=".length()));
+                } else if (arg.equals("--batch") || arg.equals("--serve")) {
+                    mode = arg;
+                } else if (arg.startsWith("--socket=")) {
+                    mode = "--socket";
+                    socket = arg.substring("--socket=".length());
+                } else {
+                    files.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            log_level = -1;
+        }
+
         // Command line check for file
-        if (args.length != 2) {
-            System.out.print("Please enter a expand file as first input ");
-            System.out.print("param and asm file as second param.\n");
+        boolean files_ok = mode == null ? files.size() == 2
+                         : mode.equals("--batch") ? files.size() % 2 == 0 && !files.isEmpty()
+                         : files.isEmpty();
+        if (!files_ok || log_level < 0) {
+            System.out.print("Usage: GenerateAssembly [--regalloc=color|linear|none] ");
+            System.out.print("[--sccp=on|off] [--lvn=on|off] [--dce=on|off] ");
+            System.out.print("[--peephole=on|off] [--threads=N] [--cache=DIR [--cache-size=MB]] [--time-report[=table|json]] ");
+            System.out.print("[--log=off|error|warn|info|debug|trace] ");
+            System.out.print("<expand file> <asm file>\n");
+            System.out.print("       GenerateAssembly [options] --batch <expand file> <asm file>...\n");
+            System.out.print("       GenerateAssembly [options] --serve | --socket=<path>\n");
+            return;
+        }
+        Log.setLevel(log_level);
+
+        if (cache_dir != null) {
+            try {
+                context.setCache(new CompileCache(new File(cache_dir), cache_mb << 20));
+            } catch (IOException e) {
+                System.out.println("Cannot open cache " + cache_dir + ": " + e.getMessage());
+                return;
+            }
+        }
+
+        if (mode != null) {
+            serve(context, mode, socket, files);
             return;
         }
 
-        File file = new File(args[0]);
-        File file2 = new File(args[1]);
+        File file = new File(files.get(0));
+        File file2 = new File(files.get(1));
 
         // Check to see if file exists
         if (!file.exists()) {
-            System.out.println(args[0] + " does not exist");
+            System.out.println(files.get(0) + " does not exist");
             return;
         }
     
@@ -54,286 +112,55 @@ public class GenerateAssembly {
         }
 
         try {
-            /* Create new file stream for asm file */
-            FileInputStream fis = new FileInputStream(file);
-            file.createNewFile();
-            FileWriter writer = new FileWriter(file2);
-
-            /* Method to populate graph from RTL file */        
-            generateGraph(fis); // should have registers calculated by now
-            visited = new boolean[graph.size()];
-
-            BasicBlockGraph james = new BasicBlockGraph(graph, bb_map);
-            //james.calculateLiveInSet();
-            //james.printAll();
-
-
-            /* Write initialize lines to ASM file */
-            writer.write("\t.arch armv6\n\t.text\n\t.global main\n");
-
-            /* Adjust stack */
-            writer.write("main:\n"); 
-            writer.write("\tpush {fp, lr}\n");
-            writer.write("\tmov fp, sp\n");
-            writer.write("\tsub sp, sp, #"+ Integer.toString(reg_count.getCount() * 4) + "\n");
-            /* Jumpstart Armify Function */
-            armifyBlocks(writer, BB_START);
-
-            /* Adjust stack */
-            writer.write("\tmov sp, fp\n");
-            writer.write("\tpop {fp, pc}\n");
-
-            /* Free resource */
-            writer.flush();
-            writer.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-    }
-
-   /**
-    * Method to recursively visit each Basic Block according to the sequence in the 
-    * Control Flow Graph, converting each visited block into their ARM instructions.
-    *
-    * @param FileWriter writer
-    * @param int basic_block_number
-    */
-    private static void armifyBlocks(FileWriter writer, int basic_block_num) {
-
-        /* Check to see if we've reached a base case */
-        if (basic_block_num <= 0) {
-            return;
-        }
-
-        /* Check to see if we've visited the block before */
-        if(visited[basic_block_num]) {
-            return;
-        }
-
-        /* Get the instructions of the basic block */
-        LinkedList<Instruction> all_insn = graph.get(basic_block_num);
-
-        /* Get last instrunction of the basic block */
-        Instruction last_insn = all_insn.peekLast();
-
-        System.out.println("BB: " + last_insn.getBasicBlock());
-        
-        
-        armifyBlock(all_insn, writer);
-
-        if(last_insn.getType() == InstructionType.JUMP_INSN) {
-            String jump_label = getJumpLabel(last_insn);
-            if(bb_map.containsKey(jump_label)) {
-                visited[basic_block_num] = true;
-                armifyBlocks(writer, Integer.parseInt(bb_map.get(jump_label)));
+            context.compile(file, file2);
+            for (String line : context.getSummary()) {
+                Log.info(line);
             }
-        }
-
-        String next_id = last_insn.getNextID();
-        int next_block = Integer.parseInt(bb_map.get(next_id));
-        visited[basic_block_num] = true;    
-        armifyBlocks(writer, next_block);
-    }
-
-    private static String getJumpLabel(Instruction insn) {
-        ArrayList<Object> attributes = insn.getAttributes();
-        String str = (String)attributes.get(attributes.size() - 1);
-        //System.out.println("Printing jump label: " + str);
-        return str;
-    }
-
-   /**
-    * Helper method used in armyfyBlocks to convert a Basic Block into its respective
-    * ARM instruction format.
-    *
-    * @param LinkedList<Instruction> all_insn
-    * @param FileWriter writer
-    */
-    private static void armifyBlock(LinkedList<Instruction> all_insn, FileWriter writer) {
-
-        String out = "" ; 
-        
-        /* Iterate through all the instructions of the basic block */
-        for(int i = 0; i < all_insn.size() - 1; i++) {
-            Instruction temp = all_insn.get(i);
-            /* Convert the instruction object into an arm instruction */
-            out = armify(temp, writer);
-            System.out.println(out);
-        }
-
-        /* Get last instruction of basic block */
-        Instruction last_insn = all_insn.get(all_insn.size() - 1);
-
-        /* If last instruction is a jump, then immediately convert to arm instruction.
-           Otherwise we check to see if last instruction has a NextID > 0 which means
-           the program should branch into that next instruction ID. */
-        if(last_insn.getType() == InstructionType.JUMP_INSN) {
-            out = armify(last_insn, writer);
-            System.out.println(out);
-        }
-        else if (Integer.parseInt(last_insn.getNextID()) > 0) {
-            try {
-                String next_block = bb_map.get(last_insn.getNextID());
-                out = armify(last_insn, writer);
-                System.out.println(out);
-                writer.write("\tb BB_" + next_block + "\n");
-            }
-            catch (Exception e) {
-                e.printStackTrace();
+            if (context.getCache() != null) {
+                Log.info(context.getCache().getStats());
             }
-        }
-    }
-
-   /**
-    * Method to convert RTL instruction into ARM instruction
-    *
-    * @param Instruction insn 
-    * @return String insn in ARM format
-    */
-    private static String armify (Instruction insn, FileWriter writer) {
-        InstructionType type = insn.getType();
-        String basicBlock = Integer.toString(insn.getBasicBlock());
-        if(!basic_block_set.contains(basicBlock)) {
-            try {
-                writer.write("BB_" + basicBlock + ":\n");
-                basic_block_set.add(basicBlock);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        StringBuilder out = new StringBuilder();
-        ARMInstruction arm;
-        Instruction s_exp;
-        out.append(insn.getCurrID());
-        switch (type) {
-            case NOTE:
-                out.append(" NOTE\n");
-                break;
-            case INSN:
-                out.append(" INSN\n");
-                s_exp = insn.getSExp();
-                System.out.println("TYPE OF S_EXP: " + s_exp.getType());
-                if(s_exp.getType() == InstructionType.USE) {
-                    break;
-                }
-                arm = new ARMInstruction(s_exp, reg_map, reg_count, bb_map);
-                
-                out.append("\tDST: "+arm.getArmDestination() + "\n"); 
-                out.append("\tSRC: " + arm.getArmSource() + "\n");
-                out.append(arm.toString() + "\n");
-                try {
-                    writer.write(arm.toString());
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                break;
-            case JUMP_INSN:
-                out.append(" JUMP\n");
-                
-                s_exp = insn.getSExp(); // set pc..
-                arm = new ARMInstruction(s_exp, reg_map, reg_count, bb_map);
-                out.append("\tDST: "+arm.getArmDestination() + "\n"); 
-                out.append("\tSRC: " + arm.getArmSource() + "\n");
-                out.append(arm.toString() + "\n");
-                try {
-                    writer.write(arm.toString());
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                //out.append("\tDST: "+arm.getArmDestination() + "\n"); 
-                //out.append("\tSRC: " + arm.getArmSource() + "\n");
-                break;
-            case CODE_LABEL:
-                out.append(" CODE_LABEL\n");
-                break;
-            case USE: 
-                
-                break;
-            case CALL:
-                try {
-                    writer.write("\tbl " + insn.getCallFunc() + "\n");
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                break;
-            default:
-                out.append(" GenerateAssembly: OPERATION NOT SUPPORTED\n");
-                break; 
-        }
-        return out.toString();
-    }
-
-   /**
-    * Method to read in an RTL file, parse each instruction, and populate a
-    * graph of RTL instructions.
-    * 
-    * @param FileInputStream
-    */
-    private static void generateGraph(FileInputStream fis) {
-        StringBuilder object = new StringBuilder();
-        Stack<Character> stack = new Stack<Character>();
-
-        char c;
-
-        try {
-            while (fis.available() > 0) {
-                c = (char) fis.read();
-
-                if (c == '(') 
-                    stack.push(c); 
-                if (c == ')') 
-                    stack.pop();   
-                
-                object.append(c);
-
-                if (stack.empty() && !object.toString().equals("\n")) {
-                    String result = object.toString().trim();
-                    if (isValidInsn(result)) {
-                        Instruction obj = new Instruction(result);
-                        obj.parseSExpressions();
-                        obj.setTypes();
-                        obj.setBasicBlock();
-                        obj.findRegisters(reg_map, reg_count);
-                        storeInstruction(obj);
-                        bb_map.put(obj.getCurrID(), Integer.toString(obj.getBasicBlock()));
-                    }
-                    object = new StringBuilder();
-                }                   
+            if (time_report != null) {
+                PhaseTimer report = context.getTimeReport();
+                System.out.println(time_report.equals("json")
+                                   ? report.toJson(context.getWallNanos())
+                                   : report.toTable(context.getWallNanos()));
             }
         } catch (Exception e) {
             e.printStackTrace();
+            System.exit(1);
         }
-    }
 
-   /**
-    * Method to verify if a string is in the form of a lisp instruction.
-    *
-    * @param String insn
-    @ @return boolean val: returns true on success, false otherwise
-    */    
-    private static boolean isValidInsn(String insn) {
-        if (insn.length() < 2)
-            return false;
-
-        return (insn.charAt(0) == '(' && insn.charAt(insn.length()-1) == ')');
     }
 
    /**
-    * Method to verify if a string is in the form of a lisp instruction.
+    * Method to compile with a CompileServer, which keeps one JVM warm for
+    * many files.
     *
-    * @param Instruction obj
-    @ @return void
-    */    
-    private static void storeInstruction(Instruction obj) {
-        int basicBlock = obj.getBasicBlock();
-
-        if (basicBlock < 0) return;
-        // Initialize ArrayList indexes that have not been set
-        for (int i = graph.size(); i <= basicBlock; i++ ) { 
-            graph.add(new LinkedList<Instruction>());
+    * @param CompilationContext context options of every compile
+    * @param String mode --batch, --serve or --socket
+    * @param String socket path of the socket for --socket
+    * @param ArrayList<String> files in/out pairs for --batch
+    **/
+    private static void serve(CompilationContext context, String mode, String socket,
+                              ArrayList<String> files) {
+        CompileServer server = new CompileServer(context);
+        try {
+            if (mode.equals("--batch")) {
+                ArrayList<File[]> jobs = new ArrayList<>();
+                for (int i = 0; i < files.size(); i += 2) {
+                    jobs.add(new File[] { new File(files.get(i)), new File(files.get(i + 1)) });
+                }
+                if (!server.batch(jobs))
+                    System.exit(1);
+            } else if (mode.equals("--serve")) {
+                server.serve(new BufferedReader(new InputStreamReader(System.in)), System.out);
+            } else {
+                server.listen(Paths.get(socket));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            server.close();
         }
-
-        graph.get(basicBlock).add(obj);
     }
 }
@@ -1,19 +1,29 @@
-import java.util.Stack;
-import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.lang.StringBuilder;
 
 public class Instruction {
 
     private static final int OPR_LOC = 5;
-    private static final int SRC_LOC = 2;
-    private static final int DST_LOC = 1;
-
-    private String insn;
-    private ArrayList<Object> attributes;
-    private InstructionType insn_type;
+    private static final int SRC_LOC = 1;
+    private static final int DST_LOC = 0;
+    private static final int ID_COUNT = 4;
+    private static final int HARD_REGISTERS = 16;
+
+    /* GCC's first pseudo register, and the frame pointer of the locals
+     * before it is eliminated, (reg/f:SI 105 virtual-stack-vars) */
+    public static final int FIRST_PSEUDO = 110;
+    public static final int VIRTUAL_STACK_VARS = 105;
+    private static final int MEM = OpcodeTable.findCode("mem");
+
+    private CharSequence source;
+    private int head;
+    private RtlNode[] operands;
+    private RtlNode pattern;
+    private int jump_label;
     private int basic_block_num;
     private int curr_id;
     private int prev_id;
@@ -22,34 +32,41 @@ public class Instruction {
 /****************************
  * CONSTRUCTOR
  ***************************/
-    public Instruction(String insn) {
-        this.insn = insn;
-        attributes = new ArrayList<Object>();
+   /**
+    * Builds a fully parsed Instruction from an S Expression. The operand
+    * trees, type, ids and basic block are all set here and never change
+    * afterwards, so the accessors can be called any number of times.
+    *
+    * @throws NumberFormatException if an operand is an integer that does
+    *         not fit in 32 bits
+    **/
+    public Instruction(CharSequence source) {
+        this.source = source;
+        this.jump_label = -1;
+        parseSExpressions();
     }
 
 /****************************
  * ACESSOR METHODS
  ***************************/
-    public String getInsn() { return insn; }
-    public ArrayList<Object> getAttributes() { return attributes; }
-    public InstructionType getType() { return insn_type; }
+    public String getInsn() { return source.toString(); }
+    public InstructionType getType() { return OpcodeTable.getType(head); }
+    public int getHead() { return head; }
     public int getBasicBlock () { return basic_block_num; }
-    public String getCurrID() { return Integer.toString(curr_id); }
-    public String getNextID() { return Integer.toString(next_id); }
-    public String getPrevID() { return Integer.toString(prev_id); }
-    public Instruction getSExp() {
-        Instruction insn = (Instruction) this.attributes.get(OPR_LOC);
-        return insn;
-    }
-    public Instruction getInstance() { return this;}
-/****************************
- * SETTER METHODS
- ***************************/
+    public int getCurrID() { return curr_id; }
+    public int getNextID() { return next_id; }
+    public int getPrevID() { return prev_id; }
+    public int getJumpLabel() { return jump_label; }
+    public int getNumOperands() { return operands.length; }
+    public RtlNode getOperand(int i) { return operands[i]; }
 
-    public void setBasicBlock (int basic_block_num) { this.basic_block_num = basic_block_num; }
-    public void setCurrID(int curr_id) { this.curr_id = curr_id; }
-    public void setNextID(int next_id) { this.next_id = next_id; }
-    public void setPrevID(int prev_id) { this.prev_id = prev_id; }
+   /**
+    * Method to get the pattern of the insn, (set ...), (use ...), (parallel
+    * ...), found right after the ids and basic block number.
+    *
+    * @return RtlNode pattern, null if the insn has none
+    **/
+    public RtlNode getSExp() { return pattern; }
 
 /****************************
  * Getting Defs and Uses
@@ -63,15 +80,14 @@ public class Instruction {
     **/
     public HashSet<String> getDefs() {
 
-        HashSet<String> defs = new HashSet<>();;
+        HashSet<String> defs = new HashSet<>();
+
+        /* Get SExpression from RTL Instruction. Only a SET defines anything */
+        if (pattern == null || pattern.getType() != InstructionType.SET)
+            return defs;
 
-        /* Get SExpression from RTL Instruction */
-        Instruction sexp = (Instruction) this.attributes.get(OPR_LOC);
-        setInstruction(sexp);
-    
         /* Get the DST location from the S Expression. This is our Def! */
-        Instruction dst = (Instruction) sexp.attributes.get(DST_LOC);
-        setInstruction(dst);
+        RtlNode dst = pattern.getChild(DST_LOC);
 
         /* Get the Definitions from the DST sub S Expression */
         HashSet<String> registers = getVRegisters(dst);
@@ -81,7 +97,7 @@ public class Instruction {
 
         return defs;
 
-    } 
+    }
 
    /**
     * Method to get the set of virtual regiseter uses from an RTL Instruction
@@ -92,14 +108,31 @@ public class Instruction {
 
         HashSet<String> uses = new HashSet<>();
 
-        /* Get SExpression from RTL Instruction */
-        Instruction sexp = (Instruction) this.attributes.get(OPR_LOC);
-        setInstruction(sexp);
- 
+        if (pattern == null)
+            return uses;
+
+        /* A call reads the argument registers listed as (use (reg:SI 0 r0))
+         * in its function usage */
+        if (getType() == InstructionType.CALL) {
+            for (RtlNode operand : operands) {
+                findUses(operand, uses);
+            }
+            return uses;
+        }
+
+        /* A USE keeps its register live, e.g. (use (reg/i:SI 0 r0)) */
+        if (pattern.getType() == InstructionType.USE) {
+            uses.addAll(getVRegisters(pattern.getChild(DST_LOC)));
+            return uses;
+        }
+
+        /* Otherwise only a SET is looked at */
+        if (pattern.getType() != InstructionType.SET)
+            return uses;
+
         /* Get the SRC location from the S Expression. */
         /* These will countain our uses */
-        Instruction src = (Instruction) sexp.attributes.get(SRC_LOC);
-        setInstruction(src);
+        RtlNode src = pattern.getChild(SRC_LOC);
 
         /* Get the Uses from the SRC sub S Expression */
         HashSet<String> registers = getVRegisters(src);
@@ -109,355 +142,480 @@ public class Instruction {
 
         return uses;
 
-    } 
+    }
+
+
+   /**
+    * Helper method to collect the registers under every USE below node.
+    *
+    * @param RtlNode node
+    * @param HashSet<String> uses
+    **/
+    private void findUses(RtlNode node, HashSet<String> uses) {
+        if (node.getType() == InstructionType.USE) {
+            uses.addAll(getVRegisters(node.getChild(DST_LOC)));
+            return;
+        }
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            findUses(node.getChild(i), uses);
+        }
+    }
+
+   /**
+    * Method to tell if this insn copies one register or memory home into
+    * another, (set (reg:SI 112) (reg:SI 111)) or a load or store of a local.
+    *
+    * @return boolean
+    **/
+    public boolean isMove() {
+        return pattern != null && pattern.getType() == InstructionType.SET
+            && isLocation(pattern.getChild(DST_LOC)) && isLocation(pattern.getChild(SRC_LOC));
+    }
+
+    private static boolean isLocation(RtlNode node) {
+        switch (node.getType()) {
+            case REG:
+            case REG_F:
+            case REG_I:
+            case MEM_C:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+   /**
+    * Method to tell if this insn uses the frame pointer of the locals
+    * outside of a memory reference, that is takes the address of a local,
+    * or reads or writes a local in a mode other than SI. Once any insn
+    * does, a memory home can be read or written through a pointer or in
+    * part, and is no longer just a def or use of its own name.
+    *
+    * @return boolean
+    **/
+    public boolean takesFrameAddress() {
+        for (RtlNode operand : operands) {
+            if (takesFrameAddress(operand, false))
+                return true;
+        }
+        return false;
+    }
+
+   /**
+    * Method to tell if any insn of a function takes the address of a local,
+    * see takesFrameAddress(). Until one does, the passes can follow each
+    * memory home of a local like a register.
+    *
+    * @param ArrayList<LinkedList<Instruction>> graph insns by basic block
+    * @return boolean
+    **/
+    public static boolean takesFrameAddress(ArrayList<LinkedList<Instruction>> graph) {
+        for (LinkedList<Instruction> block : graph) {
+            for (Instruction insn : block) {
+                if (insn.takesFrameAddress())
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean takesFrameAddress(RtlNode node, boolean in_mem) {
+        if (node.getType() == InstructionType.REG_F)
+            return !in_mem && node.getValue() == VIRTUAL_STACK_VARS;
+
+        if (node.getCode() == MEM) {
+            if (!node.isWord() && takesFrameAddress(node.getChild(DST_LOC), false))
+                return true;
+            in_mem = true;
+        }
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            if (takesFrameAddress(node.getChild(i), in_mem))
+                return true;
+        }
+        return false;
+    }
+
+   /**
+    * Method to tell hard registers (reg:SI 0 r0) from pseudos (reg:SI 117).
+    *
+    * @param int regno
+    * @return boolean true for r0 - r15
+    **/
+    public static boolean isHardRegister(int regno) {
+        return regno < HARD_REGISTERS;
+    }
+
+   /**
+    * Method to tell pseudos (reg:SI 117) from hard registers and the
+    * virtual registers below FIRST_PSEUDO.
+    *
+    * @param RtlNode node
+    * @return boolean
+    **/
+    public static boolean isPseudo(RtlNode node) {
+        InstructionType type = node.getType();
+        return (type == InstructionType.REG || type == InstructionType.REG_I
+                || type == InstructionType.REG_F) && node.getValue() >= FIRST_PSEUDO;
+    }
+
+   /**
+    * @param RtlNode node
+    * @return boolean true for the memory home of a local,
+    *         (mem/c:SI (plus:SI (reg/f:SI 105) (const_int -4)))
+    **/
+    public static boolean isHome(RtlNode node) {
+        return node.getType() == InstructionType.MEM_C && node.getNumChildren() > 0
+            && isFrameAddress(node.getChild(DST_LOC));
+    }
+
+   /**
+    * @param RtlNode node
+    * @return boolean true for the address of a local,
+    *         (plus:SI (reg/f:SI 105) (const_int -4))
+    **/
+    public static boolean isFrameAddress(RtlNode node) {
+        return node.getType() == InstructionType.PLUS
+            && node.getChild(DST_LOC).getType() == InstructionType.REG_F
+            && node.getChild(DST_LOC).getValue() == VIRTUAL_STACK_VARS
+            && node.getChild(SRC_LOC).getType() == InstructionType.CONST_INT;
+    }
 
-          
    /**
     * Helper method to retrieve registers used in subSexpressions (src or dst)
     *
-    * @param Instruction sub S Expression
+    * @param RtlNode sub S Expression
     * @return HashSet<String> virtual registers
     **/
-    private HashSet<String> getVRegisters(Instruction subExpression) {
+    private HashSet<String> getVRegisters(RtlNode subExpression) {
 
         HashSet<String> registers = new HashSet<>();
 
         InstructionType type = subExpression.getType();
 
         switch (type) {
-            case REG_SI:
-                registers.add((String)subExpression.getAttributes().get(DST_LOC));
-                break;
-            case REG_F_SI:
-                registers.add((String)subExpression.getAttributes().get(DST_LOC));
-                break;
-            case REG_I_SI:
-                registers.add((String)subExpression.getAttributes().get(DST_LOC));
+            case REG:
+            case REG_F:
+            case REG_I:
+                registers.add(Integer.toString(subExpression.getValue()));
                 break;
-            case MEM_C_SI:
-                StringBuilder mem_label = new StringBuilder();
-
-                /* Get Sub Expressions for Plus, Register, and CONST */
-                Instruction plus = (Instruction) subExpression.getAttributes().get(DST_LOC);
-                setInstruction(plus);
-                Instruction reg_exp = (Instruction) plus.getAttributes().get(DST_LOC);
-                setInstruction(reg_exp);
-                Instruction offset_exp = (Instruction) plus.getAttributes().get(SRC_LOC);
-                setInstruction(offset_exp);
-
-                /* Get the values from the sub expressions for register and const */
-                String reg_val = (String) reg_exp.getAttributes().get(DST_LOC);
-                String offset_val = (String) offset_exp.getAttributes().get(DST_LOC);
-                
-                /* Construct memory string */
-                mem_label.append("mem[" + reg_val + ", #" + offset_val + "]");
-                registers.add(mem_label.toString()); 
+            case MEM_C:
+                registers.add(getMemoryHome(subExpression));
                 break;
             case PLUS:
-                Instruction dst_exp = (Instruction) subExpression.getAttributes().get(DST_LOC);
-                setInstruction(dst_exp);
-                Instruction src_exp = (Instruction) subExpression.getAttributes().get(SRC_LOC);
-                setInstruction(src_exp);
-
-                registers.addAll(getVRegisters(dst_exp));
-                registers.addAll(getVRegisters(src_exp));
+            case COMPARE_CC:
+                registers.addAll(getVRegisters(subExpression.getChild(DST_LOC)));
+                registers.addAll(getVRegisters(subExpression.getChild(SRC_LOC)));
                 break;
             default:
                 //System.out.println("Instruction.java: Default case hit for type: " + type);
                 break;
         }
-        
-        return registers;
-    }
 
-    public static void setInstruction (Instruction insn) {
-        insn.parseSExpressions();
-        insn.setTypes();
-        insn.setBasicBlock();
+        return registers;
     }
 
 /****************************
  * HELPER METHODS
  ***************************/
+   /**
+    * Method to get the integer in source[start, end), or fallback if the
+    * word is not an integer.
+    **/
+    private int parseInt(int start, int end, int fallback) {
+        char ch = source.charAt(start);
+        if (ch != '-' && (ch < '0' || ch > '9')) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(source, start, end, 10);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
 
+   /**
+    * Method to get the value of a nested S Expression, the word after its
+    * code: 0 for a word that is not an integer, such as a register name.
+    *
+    * @throws NumberFormatException for an integer that does not fit in 32
+    *         bits, (const_int 4294967296) read as anything else is wrong code
+    **/
+    private int parseValue(int start, int end) {
+        int digits = source.charAt(start) == '-' ? start + 1 : start;
+        if (digits == end) {
+            return 0;
+        }
+        for (int i = digits; i < end; i++) {
+            char ch = source.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return 0;
+            }
+        }
+        try {
+            return Integer.parseInt(source, start, end, 10);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException(source.subSequence(start, end) + " does not fit in 32 bits");
+        }
+    }
 
 /****************************
  * INSTRUCTION LOGIC METHODS
  ***************************/
-    public void parseSExpressions() {
-        StringBuilder word = new StringBuilder();
-        for(int i = 1; i < insn.length(); i++) {
-            char ch = insn.charAt(i);
-
-            if(ch == '\"' || ch == '>' || ch == '<') {
-                word.append("\\");
+   /**
+    * Method to parse the insn into its typed form in a single pass. The ids
+    * and basic block are read from the words right after the insn code, the
+    * nested S Expressions become RtlNodes, and the S Expression in OPR_LOC
+    * is the pattern. Head tokens are interned straight from the source by
+    * OpcodeTable and the other words are never copied; the only Strings
+    * made are string literals. Only called once, from the constructor.
+    **/
+    private void parseSExpressions() {
+        ArrayList<RtlNode> roots = new ArrayList<>();
+        int[] id_starts = new int[ID_COUNT];
+        int[] id_ends = new int[ID_COUNT];
+        int root_attrs = 0;
+        int last_start = -1;
+        int last_end = -1;
+
+        /* State of the open nested S Expressions, indexed by depth - 1 */
+        ArrayList<RtlNode> children = new ArrayList<>();
+        int[] heads = new int[8];
+        int[] values = new int[8];
+        int[] counts = new int[8];
+        int[] firsts = new int[8];
+        int[] starts = new int[8];
+        int[] ends = new int[8];
+        int depth = 0;
+        int word_start = -1;
+
+        head = OpcodeTable.LITERAL;
+
+        for (int i = 1; i < source.length(); i++) {
+            char ch = source.charAt(i);
+
+            if (!Character.isWhitespace(ch) && ch != '(' && ch != ')') {
+                if (word_start < 0) {
+                    word_start = i;
+                }
+                continue;
             }
 
-            if(Character.isWhitespace(ch)) {
-                if(word.length() > 0) {
-                    attributes.add(word.toString());   
-                    word.setLength(0);
+            if (word_start >= 0) {
+                if (depth == 0) {
+                    if (root_attrs == 0) {
+                        head = OpcodeTable.intern(source, word_start, i);
+                    }
+                    else if (root_attrs <= ID_COUNT) {
+                        id_starts[root_attrs - 1] = word_start;
+                        id_ends[root_attrs - 1] = i;
+                    }
+                    last_start = word_start;
+                    last_end = i;
+                    root_attrs++;
                 }
+                else {
+                    int d = depth - 1;
+                    if (counts[d] == 0) {
+                        heads[d] = OpcodeTable.intern(source, word_start, i);
+                        starts[d] = word_start;
+                        ends[d] = i;
+                    }
+                    else if (counts[d] == 1) {
+                        values[d] = parseValue(word_start, i);
+                    }
+                    counts[d]++;
+                }
+                word_start = -1;
             }
-            else if(ch == '(') {
-                //find matching closing paren...
-                int end_index = findIndexOfClosingParen(i, insn);
-                //new insn obj
-                String s_exp = insn.substring(i, end_index+1);
-                Instruction s_exp_obj = new Instruction(s_exp);
-                //call new obj.parseSExpression
-                s_exp_obj.parseSExpressions();
-                attributes.add(s_exp_obj);
-
-                i = end_index + 1;
+
+            if (ch == '(') {
+                if (depth == heads.length) {
+                    heads = Arrays.copyOf(heads, depth * 2);
+                    values = Arrays.copyOf(values, depth * 2);
+                    counts = Arrays.copyOf(counts, depth * 2);
+                    firsts = Arrays.copyOf(firsts, depth * 2);
+                    starts = Arrays.copyOf(starts, depth * 2);
+                    ends = Arrays.copyOf(ends, depth * 2);
+                }
+                heads[depth] = OpcodeTable.LITERAL;
+                starts[depth] = ends[depth] = 0;
+                values[depth] = 0;
+                counts[depth] = 0;
+                firsts[depth] = children.size();
+                depth++;
             }
             else if (ch == ')') {
-                attributes.add(word.toString());   
-                word.setLength(0);
-            }
-            else {
-                word.append(ch);
-            }
-        }
-    }
-
-    private static int findIndexOfClosingParen(int num, String str){
-        Stack<Character> stack = new Stack<Character>();
-        if (str.charAt(num) != '(') {
-            System.out.println("error");
-            return 0;
-        }
-        stack.push(str.charAt(num));
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+
+                /* Close the S Expression, its children are on top of the list */
+                int first = firsts[depth];
+                RtlNode[] nested = RtlNode.NO_CHILDREN;
+                if (children.size() > first) {
+                    nested = children.subList(first, children.size()).toArray(nested);
+                    children.subList(first, children.size()).clear();
+                }
 
-        for(int i = num + 1; i < str.length(); i++) {
-            char ch = str.charAt(i);
-            if(ch == '(') {
-                stack.push(ch);
-            }
-            else if(ch == ')') {
-                stack.pop();
-                if (stack.empty()) {
-                    return i;
+                /* String literals such as ("printint") keep their text */
+                String name = null;
+                if (ends[depth] - starts[depth] > 1 && source.charAt(starts[depth]) == '"') {
+                    name = source.subSequence(starts[depth] + 1, ends[depth] - 1).toString();
+                }
+                RtlNode node = new RtlNode(heads[depth], values[depth], name, nested);
+
+                if (depth == 0) {
+                    if (root_attrs == OPR_LOC) {
+                        pattern = node;
+                    }
+                    roots.add(node);
+                    root_attrs++;
+                    last_start = -1;
+                }
+                else {
+                    children.add(node);
+                    counts[depth - 1]++;
                 }
             }
         }
-        return 0;
-
-    }
 
-    public void setTypes() {
-        String type = (String)attributes.get(0);
+        operands = roots.toArray(RtlNode.NO_CHILDREN);
 
-        switch (type) {
-            case "insn":
-                insn_type = InstructionType.INSN;
-                break;
-            case "note": 
-                insn_type = InstructionType.NOTE;
-                break;
-            case "barrier": 
-                insn_type = InstructionType.BARRIER;
-                break;
-            case "code_label": 
-                insn_type = InstructionType.CODE_LABEL;
-                break;
-            case "jump_insn": 
-                insn_type = InstructionType.JUMP_INSN;
-                break;
-            case "set":
-                insn_type = InstructionType.SET;
-                break;
-            case "reg:SI":
-                      insn_type = InstructionType.REG_SI;
-                      break;
-            case "reg/f:SI":
-                        insn_type = InstructionType.REG_F_SI;
-                        break;
-            case "reg/i:SI":
-                        insn_type = InstructionType.REG_I_SI;
-                        break;
-            case "reg:CC":
-                      insn_type = InstructionType.REG_CC;
-                      break;
-            case "compare:CC":
-                          insn_type = InstructionType.COMPARE_CC;
-                          break;
-            case "mem/c:SI":
-                        insn_type = InstructionType.MEM_C_SI;
-                        break;
-            case "plus:SI":
-                       insn_type = InstructionType.PLUS;
-                       break;
-            case "const_int":
-                       insn_type = InstructionType.CONST_INT;
-                       break;
-            case "label_ref":
-                       insn_type = InstructionType.LABEL_REF;
-                       break;
-            case "pc":
-                       insn_type = InstructionType.PC;
-                       break;
-            case "if_then_else":
-                       insn_type = InstructionType.IF_THEN_ELSE;
-                       break;
-            case "le":  
-                       insn_type = InstructionType.LE;
-                       break;
-            case "use": 
-                       insn_type = InstructionType.USE;
-                       break;
-            case "call_insn":
-                       insn_type = InstructionType.CALL;
-                       break;
-            case "symbol_ref:SI":
-                             insn_type = InstructionType.SYMBOL_REF;
-                             break;
-            default: 
-                             insn_type = InstructionType.DEFAULT;
+        /* A jump_insn ends with the label it jumps to, -> 27 */
+        if (last_start >= 0) {
+            jump_label = parseInt(last_start, last_end, -1);
         }
 
-
-        for (int i = 1; i < attributes.size(); i++) {
-            if(attributes.get(i) instanceof Instruction) {
-                ((Instruction)attributes.get(i)).setTypes();
-            }
-        }
+        setBasicBlock(id_starts, id_ends, root_attrs - 1);
     }
 
-    public void setBasicBlock() {
+   /**
+    * Method to read the insn's id, previous id, next id and basic block
+    * number, in that order. Anything that is not an insn, such as a barrier,
+    * a NOTE_INSN_DELETED note or the function header, gets basic block -1
+    * but keeps whichever ids were read before the first bad word.
+    **/
+    private void setBasicBlock(int[] starts, int[] ends, int count) {
         try {
-            curr_id = Integer.parseInt(((String)attributes.get(1))); 
-            prev_id = Integer.parseInt(((String)attributes.get(2))); 
-            next_id = Integer.parseInt(((String)attributes.get(3))); 
-            basic_block_num = Integer.parseInt(((String)attributes.get(4)));
-            for(int i = 0; i < attributes.size(); i++) {
-                Object temp = attributes.get(i);
-                if(temp instanceof Instruction) {
-                    setRestBasicBlock((Instruction)temp, curr_id, prev_id, next_id, basic_block_num);
-                }
-            } 
-        } catch (Exception e) {
+            curr_id = readId(starts, ends, count, 0);
+            prev_id = readId(starts, ends, count, 1);
+            next_id = readId(starts, ends, count, 2);
+            basic_block_num = readId(starts, ends, count, 3);
+        } catch (NumberFormatException e) {
             basic_block_num = -1;
         }
-
     }
 
-    private void setRestBasicBlock(Instruction temp, int curr_id, int prev_id, int next_id, int basic_block_num) {
-
-
-        temp.setBasicBlock(basic_block_num);
-        temp.setNextID(next_id);
-        temp.setCurrID(curr_id);
-        temp.setPrevID(prev_id);
-
-        for(int i = 0; i < temp.getAttributes().size(); i++) {
-            Object elem = temp.getAttributes().get(i);
-            if(elem instanceof Instruction) {
-                Instruction instruction = (Instruction)elem;
-                setRestBasicBlock(instruction, curr_id, prev_id, next_id, basic_block_num);
-            } 
-        } 
+    private int readId(int[] starts, int[] ends, int count, int i) {
+        if (i >= count || starts[i] == ends[i]) {
+            throw new NumberFormatException("missing insn id " + i);
+        }
+        return Integer.parseInt(source, starts[i], ends[i], 10);
     }
 
     public void print_type_and_bb() {
-        System.out.println(insn_type);
+        System.out.println(getType());
         System.out.println(basic_block_num);
 
     }
 
     public void printAll(){
-
-        for (int i = 0; i < attributes.size(); i++) {
-            Object temp = attributes.get(i);
-            if (temp instanceof String) {
-                String str = (String) temp;
-                System.out.print(str);
-            }
-            if (temp instanceof Instruction) {
-                Instruction instr = (Instruction) temp;
-                System.out.print("{");
-                instr.printAll();
-                System.out.print("}");
-
-            }
-            if(i + 1 < attributes.size()) {
-                System.out.print(" ");
-            }
+        System.out.print(getType() + " " + curr_id + " " + prev_id + " " + next_id + " " + basic_block_num);
+        for (RtlNode operand : operands) {
+            System.out.print(" " + operand);
         }
     }
 
+    public void findRegisters(HashMap<String, String> reg_map, Counter counter) {
+        for (RtlNode operand : operands) {
+            findRegisters(operand, reg_map, counter);
+        }
+    }
 
-    public void writeInsnIntoDot(FileWriter writer) {
-        try {for (int i = 0; i < attributes.size(); i++) {
-            Object temp = attributes.get(i);
-            if (temp instanceof String) {
-                String str = (String) temp;
-                writer.write(str);
-            }
-            if (temp instanceof Instruction) {
-                Instruction instr = (Instruction) temp;
-                writer.write("\\{");
-                instr.writeInsnIntoDot(writer);
-                writer.write("\\}");
-
-            }
-            if(i + 1 < attributes.size()) {
-                writer.write("\\ ");
+    private static void findRegisters(RtlNode node, HashMap<String, String> reg_map, Counter counter) {
+        String reg_num;
+        if (node.getType() == InstructionType.REG) {
+            /* Hard registers such as r0 have no home on the stack */
+            if (isHardRegister(node.getValue()))
+                return;
+            reg_num = Integer.toString(node.getValue());
+        } else if (node.getType() == InstructionType.MEM_C) {
+            /* Memory homes of locals get a slot of their own too */
+            reg_num = getMemoryHome(node);
+        } else if (isFrameAddress(node)) {
+            /* and so do locals whose address is taken, which is their slot */
+            reg_num = "mem[" + VIRTUAL_STACK_VARS + ", #" + node.getChild(SRC_LOC).getValue() + "]";
+        } else {
+            for (int i = 0; i < node.getNumChildren(); i++) {
+                findRegisters(node.getChild(i), reg_map, counter);
             }
+            return;
         }
-        } catch (Exception e) {
-            e.printStackTrace();
+
+        if(!reg_map.containsKey(reg_num)) {
+            reg_map.put(reg_num, "[fp, #-" + Integer.toString(counter.getCount() * 4) + "]");
+            counter.increment();
+            if (Log.on(Log.TRACE))
+                Log.trace("REG_NUM: " + reg_num + " Location: " + reg_map.get(reg_num));
         }
     }
 
-    public void findRegisters(HashMap<String, String> reg_map, Counter counter) {
-        if (insn_type == InstructionType.REG_SI) {
-            String reg_num = (String)attributes.get(DST_LOC);
-
-            if(!reg_map.containsKey(reg_num)) {
-                reg_map.put(reg_num, "[fp, #-" + Integer.toString(counter.getCount() * 4) + "]");
-                counter.increment();
-                System.out.println("eEG_NUM: " + reg_num + " Location: " + reg_map.get(reg_num));
-            }
-
-            return;
+   /**
+    * @param RtlNode mem (mem/c:SI (plus:SI (reg/f:SI 105) (const_int -4))),
+    *        or (mem/c:SI (reg/f:SI 105)) for offset 0
+    * @return String the name getDefs and getUses give it, "mem[105, #-4]"
+    * @throws IllegalArgumentException if the address is neither
+    **/
+    static String getMemoryHome(RtlNode mem) {
+        RtlNode address = mem.getChild(DST_LOC);
+        if (address.getType() == InstructionType.PLUS
+                && address.getChild(SRC_LOC).getType() == InstructionType.CONST_INT)
+            return "mem[" + address.getChild(DST_LOC).getValue() + ", #" + address.getChild(SRC_LOC).getValue() + "]";
+        switch (address.getType()) {
+            case REG:
+            case REG_F:
+            case REG_I:
+                return "mem[" + address.getValue() + ", #0]";
+            default:
+                throw new IllegalArgumentException("no memory home for " + mem);
         }
-        /* 
-           else if (insn_type == InstructionType.REG_F_SI) {
-           counter.increment();
-           return;
-           } 
-           */
-        for(int i = 0; i < attributes.size(); i++) {
-            Object temp = attributes.get(i);
-            if(temp instanceof Instruction) {
-                Instruction instr = (Instruction)temp;
-                instr.findRegisters(reg_map, counter);
-            }
+    }
+
+   /**
+    * Method to make the same insn with another pattern. It keeps its ids,
+    * basic block and jump label, the rest of the source is dropped.
+    *
+    * @param String pattern (set (reg:SI 117) (const_int 3 [0x3]))
+    * @return Instruction the new insn
+    **/
+    public Instruction withPattern(String pattern) {
+        StringBuilder insn = new StringBuilder("(");
+        insn.append(OpcodeTable.getHead(head)).append(' ').append(curr_id).append(' ')
+            .append(prev_id).append(' ').append(next_id).append(' ')
+            .append(basic_block_num).append(' ').append(pattern);
+        if (jump_label >= 0 && getType() == InstructionType.JUMP_INSN) {
+            insn.append(" -> ").append(jump_label);
         }
+        return new Instruction(insn.append(')'));
     }
 
-    public void storeJumpLabel (HashMap<String, String> jump_label_map) {
-        StringBuilder label = new StringBuilder();
-        label.append(".L" + (String)attributes.get(attributes.size()-1));
-        jump_label_map.put((String)attributes.get(attributes.size()-1), label.toString());
-        //System.out.println("label: " + attributes.get(attributes.size()-1) + " output: " + label.toString());
-        return;
+   /**
+    * Method to make the note GCC leaves where it deletes an insn, which
+    * keeps the insn's place in the chain of ids and its basic block.
+    *
+    * @return Instruction (note id prev next bb NOTE_INSN_DELETED)
+    **/
+    public Instruction deleted() {
+        return new Instruction("(note " + curr_id + " " + prev_id + " " + next_id + " "
+                               + basic_block_num + " NOTE_INSN_DELETED)");
     }
 
     public String getCallFunc() {
-        System.out.println("point 1");
-        if(insn_type == InstructionType.SYMBOL_REF) {
-            Instruction temp = (Instruction)attributes.get(1);
-            String target = (String)temp.getAttributes().get(0);
-            return target.replaceAll("\\\\\"", "");
-        }
-        for (int i = 0; i < attributes.size(); i++){
-            Object temp = attributes.get(i);
-            if(temp instanceof Instruction) {
-                Instruction temp_insn = (Instruction)temp;
-                //System.out.println("recurse");
-                return temp_insn.getCallFunc();
+        for (RtlNode operand : operands) {
+            String target = operand.findSymbol();
+            if (target != null) {
+                return target;
             }
         }
         return "mistake";
@@ -465,42 +623,22 @@ public class Instruction {
     }
 
     public static void main(String[] args) {
-        HashMap<String, String> reg_map = new HashMap<>(); 
+        HashMap<String, String> reg_map = new HashMap<>();
         Counter virtual_reg_count = new Counter();
-        Boolean[] rawr = {true, true, true};
         //String test = "(jump_insn 32 31 33 5 (set (pc) (if_then_else (le (reg:CC 100 cc) (const_int 0 [0])) (label_ref 29) (pc))) \"fib.c\":7 -1 (nil) -> 29)";
         String test_2 = "(call_insn 13 12 14 2 (parallel [ (call (mem:SI (symbol_ref:SI (\"printint\") [flags 0x41]  <function_decl 0x768ba180 printint>) [0 printint S4 A32]) (const_int 0 [0])) (use (const_int 0 [0])) (clobber (reg:SI 14 lr)) ]) addwithprint.c:5 -1 (nil) (expr_list (clobber (reg:SI 12 ip)) (expr_list:SI (use (reg:SI 0 r0)) (nil))))";
         //System.out.println(test);
         Instruction in = new Instruction(test_2);
-        in.parseSExpressions();
-        in.setTypes();
-        in.setBasicBlock();
         in.findRegisters(reg_map, virtual_reg_count);
         //in.print_type_and_bb();
-        Instruction temp = (Instruction)in.getAttributes().get(5);
-        Instruction temp_2 = (Instruction)temp.getAttributes().get(2);
-        System.out.print("{");
-        temp.printAll();
-        System.out.print("}");
+        in.printAll();
         System.out.println();
+        System.out.println(in.getSExp());
+        System.out.println(in.getCallFunc());
         System.out.println(in.getCurrID());
         System.out.println(in.getNextID());
         System.out.println(in.getPrevID());
         System.out.println(in.getBasicBlock());
-        System.out.println(temp.getCurrID());
-        System.out.println(temp.getNextID());
-        System.out.println(temp.getPrevID());
-        System.out.println(temp.getBasicBlock());
-        //System.out.print(rawr[2]);
-        //helper(rawr);
-        //System.out.print(rawr[2]);
     }
 
-    private static void helper(Boolean[] rawr) {
-
-        rawr[2] = false;
-    }
-
-
-
 }
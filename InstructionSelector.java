@@ -0,0 +1,818 @@
+/**
+ * This is the InstructionSelector class, which turns the pattern of an RTL
+ * insn into ARM instructions by tiling its tree (BURS, as in iburg).
+ *
+ * The rules are a table. Each rule rewrites a tree pattern into a
+ * nonterminal at a cost, e.g.
+ *
+ *     STMT <- (set LOC (plus REG IMM))      add rd, rn, #imm
+ *     REG  <- LOC                           the value, loaded if spilled
+ *
+ * Lower case words in a pattern are RTL codes, upper case words are
+ * nonterminals. A rule may also have a cost worked out from the node it
+ * matches, so a rule that does not apply (a constant that does not fit
+ * an immediate) costs INFINITE and one whose cost depends on where the
+ * register allocator put a value can say so.
+ *
+ * select labels the tree bottom up, finding the cheapest rule for every
+ * nonterminal at every node, then reduces it top down from STMT, handing
+ * the instructions of each rule used to an AssemblyEmitter. Nodes are matched on their interned
+ * RTL code, so no operand is ever turned into a string to be matched.
+ * Because every tiling is costed, a SET of a constant is one mov into the
+ * destination instead of a mov into a scratch register and a copy, and a
+ * constant that only fits negated becomes a sub or cmn.
+ *
+ * Values spilled to the stack are loaded into the scratch registers r2
+ * and r3, which the register allocator never hands out.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class InstructionSelector {
+
+    public static final int INFINITE = Integer.MAX_VALUE / 4;
+
+    /* Nonterminals */
+    private static final String[] NONTERMINALS = {
+        "STMT", "REG", "LOC", "CONST", "IMM", "NEG_IMM", "CC", "COND", "LABEL", "PC", "ADDR"
+    };
+    private static final int STMT = 0;
+    private static final int REG = 1;
+    private static final int LOC = 2;
+    private static final int CONST = 3;
+    private static final int IMM = 4;
+    private static final int NEG_IMM = 5;
+    private static final int CC = 6;
+    private static final int COND = 7;
+    private static final int LABEL = 8;
+    private static final int PC = 9;
+    private static final int ADDR = 10;
+
+    private static final String[] SCRATCH = { "r2", "r3" };
+    public static final int MAX_OFFSET = 4095;
+    private static final int FRAME_POINTER = Instruction.VIRTUAL_STACK_VARS;
+
+    private static final int REG_CODE = OpcodeTable.findCode("reg");
+
+    /* Conditions GCC compares the condition code register against zero
+     * with, the ARM suffix for each and the suffix of its opposite */
+    private static final String[][] CONDITIONS = {
+        { "eq", "eq", "ne" }, { "ne", "ne", "eq" }, { "gt", "gt", "le" },
+        { "ge", "ge", "lt" }, { "lt", "lt", "ge" }, { "le", "le", "gt" },
+        { "gtu", "hi", "ls" }, { "geu", "hs", "lo" }, { "ltu", "lo", "hs" },
+        { "leu", "ls", "hi" }
+    };
+
+    /* branch -> the branch taken in the opposite case, "ble" -> "bgt" */
+    private static final HashMap<String, String> INVERSE = new HashMap<>();
+
+    private static final Rule[] RULES;
+
+    /* rules by the code at the root of their pattern, and chain rules,
+     * whose pattern is a single nonterminal */
+    private static final Rule[][] BY_CODE;
+    private static final Rule[] CHAIN;
+
+    static {
+        ArrayList<Rule> rules = new ArrayList<>();
+
+        /* Leaves */
+        rules.add(new Rule("LOC <- (reg)", 0, InstructionSelector::isValueRegister,
+                (sel, node, kids) -> sel.location(node)));
+        rules.add(new Rule("LOC <- (mem (plus (reg) (const_int)))", 0, InstructionSelector::isHome,
+                (sel, node, kids) -> sel.location(node)));
+        rules.add(new Rule("LOC <- (mem (reg))", 0, InstructionSelector::isHome,
+                (sel, node, kids) -> sel.location(node)));
+        rules.add(new Rule("ADDR <- (plus (reg) (const_int))", 0, InstructionSelector::isFrameAddress,
+                (sel, node, kids) -> sel.slotOf(node)));
+        rules.add(new Rule("CC <- (reg)", 0, InstructionSelector::isConditionCodes,
+                (sel, node, kids) -> "cc"));
+        rules.add(new Rule("CONST <- (const_int)", 0, null,
+                (sel, node, kids) -> "#" + node.getValue()));
+        rules.add(new Rule("IMM <- (const_int)", 0,
+                (sel, node) -> isImmediate(node.getValue()) ? 0 : INFINITE,
+                (sel, node, kids) -> "#" + node.getValue()));
+        rules.add(new Rule("NEG_IMM <- (const_int)", 0,
+                (sel, node) -> isImmediate(-node.getValue()) ? 0 : INFINITE,
+                (sel, node, kids) -> "#" + (-node.getValue())));
+        rules.add(new Rule("LABEL <- (label_ref)", 0, null,
+                (sel, node, kids) -> sel.blockLabel(node.getValue())));
+        rules.add(new Rule("PC <- (pc)", 0, null, (sel, node, kids) -> "pc"));
+
+        /* Values in registers */
+        rules.add(new Rule("REG <- LOC", 0, (sel, node) -> sel.inRegister(node) ? 0 : 1,
+                (sel, node, kids) -> sel.load(kids[0])));
+        rules.add(new Rule("REG <- CONST", 1, (sel, node) -> constantCost(node.getValue()),
+                (sel, node, kids) -> sel.materialize(sel.scratch(), node.getValue())));
+        rules.add(new Rule("REG <- ADDR", 1, null,
+                (sel, node, kids) -> sel.frameAddress(sel.scratch(), kids[0])));
+        rules.add(new Rule("REG <- (plus REG IMM)", 1, null,
+                (sel, node, kids) -> sel.operate("add", sel.result(kids), kids[0], kids[1])));
+        rules.add(new Rule("REG <- (plus REG NEG_IMM)", 1, null,
+                (sel, node, kids) -> sel.operate("sub", sel.result(kids), kids[0], kids[1])));
+        rules.add(new Rule("REG <- (plus REG REG)", 1, null,
+                (sel, node, kids) -> sel.operate("add", sel.result(kids), kids[0], kids[1])));
+
+        /* Assignments, each also pays for the store if the destination
+         * is on the stack. The plain move comes last so that the larger
+         * tiles win ties */
+        rules.add(new Rule("STMT <- (set LOC CONST)", 0,
+                (sel, node) -> constantCost(node.getChild(1).getValue()) + sel.storeCost(node),
+                (sel, node, kids) -> sel.store(sel.materialize(sel.target(kids[0]),
+                                               node.getChild(1).getValue()), kids[0])));
+        rules.add(new Rule("STMT <- (set LOC (plus REG IMM))", 1, InstructionSelector::storeCost,
+                (sel, node, kids) -> sel.store(sel.operate("add", sel.target(kids[0]),
+                                                           kids[1], kids[2]), kids[0])));
+        rules.add(new Rule("STMT <- (set LOC (plus REG NEG_IMM))", 1, InstructionSelector::storeCost,
+                (sel, node, kids) -> sel.store(sel.operate("sub", sel.target(kids[0]),
+                                                           kids[1], kids[2]), kids[0])));
+        rules.add(new Rule("STMT <- (set LOC (plus REG REG))", 1, InstructionSelector::storeCost,
+                (sel, node, kids) -> sel.store(sel.operate("add", sel.target(kids[0]),
+                                                           kids[1], kids[2]), kids[0])));
+        rules.add(new Rule("STMT <- (set LOC REG)", 0, InstructionSelector::moveCost,
+                (sel, node, kids) -> sel.move(kids[0], kids[1])));
+
+        /* Comparisons */
+        rules.add(new Rule("STMT <- (set CC (compare REG IMM))", 1, null,
+                (sel, node, kids) -> sel.emit("cmp", kids[1], kids[2])));
+        rules.add(new Rule("STMT <- (set CC (compare REG NEG_IMM))", 1, null,
+                (sel, node, kids) -> sel.emit("cmn", kids[1], kids[2])));
+        rules.add(new Rule("STMT <- (set CC (compare REG REG))", 1, null,
+                (sel, node, kids) -> sel.emit("cmp", kids[1], kids[2])));
+        for (String[] condition : CONDITIONS) {
+            String branch = "b" + condition[1];
+            INVERSE.put(branch, "b" + condition[2]);
+            rules.add(new Rule("COND <- (" + condition[0] + " CC (const_int))", 0,
+                    (sel, node) -> node.getChild(1).getValue() == 0 ? 0 : INFINITE,
+                    (sel, node, kids) -> branch));
+        }
+
+        /* Jumps, leaving out a branch to the block laid out next. When that
+         * is where a conditional jump goes, the condition is turned around
+         * so the other way is the branch */
+        rules.add(new Rule("STMT <- (set PC LABEL)", 1, null,
+                (sel, node, kids) -> kids[1].equals(sel.fallthrough) ? null : sel.emit("b", kids[1])));
+        rules.add(new Rule("STMT <- (set PC (if_then_else COND LABEL PC))", 2, null,
+                (sel, node, kids) -> sel.branch(kids[1], kids[2])));
+        rules.add(new Rule("STMT <- (set PC (if_then_else COND PC LABEL))", 2, null,
+                (sel, node, kids) -> sel.branch(INVERSE.get(kids[1]), kids[3])));
+
+        RULES = rules.toArray(new Rule[0]);
+
+        int max_code = 0;
+        for (Rule rule : RULES) {
+            max_code = Math.max(max_code, rule.pattern.code);
+        }
+        ArrayList<ArrayList<Rule>> by_code = new ArrayList<>();
+        ArrayList<Rule> chain = new ArrayList<>();
+        for (int code = 0; code <= max_code; code++) {
+            by_code.add(new ArrayList<>());
+        }
+        for (Rule rule : RULES) {
+            if (rule.pattern.code < 0) {
+                chain.add(rule);
+            } else {
+                by_code.get(rule.pattern.code).add(rule);
+            }
+        }
+        BY_CODE = new Rule[max_code + 1][];
+        for (int code = 0; code <= max_code; code++) {
+            BY_CODE[code] = by_code.get(code).toArray(new Rule[0]);
+        }
+        CHAIN = chain.toArray(new Rule[0]);
+    }
+
+    private final HashMap<String, String> reg_map;
+    private final HashMap<Integer, Integer> bb_map;
+    private final HashMap<Integer, Integer> skip_map;
+
+    /* reg_map by register number, and for memory homes by the negated
+     * frame offset, filled in as they are seen */
+    private String[] locations = new String[128];
+    private String[] home_locations = new String[64];
+
+    /* label_prefix + n by basic block number */
+    private final String label_prefix;
+    private String[] block_labels = new String[16];
+    /* constants loaded with ldr =N, which need a literal pool in reach */
+    private int num_literals;
+
+    /* state of the insn being selected */
+    private Instruction insn;
+    private AssemblyEmitter out;
+    private String fallthrough;
+    private int num_scratch;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param HashMap<String, String> reg_map location of every register,
+    *        which must not change once the selector is made
+    * @param HashMap<Integer, Integer> bb_map insn id -> basic block number
+    **/
+    public InstructionSelector(HashMap<String, String> reg_map, HashMap<Integer, Integer> bb_map) {
+        this(reg_map, bb_map, "BB_");
+    }
+
+   /**
+    * @param HashMap<String, String> reg_map
+    * @param HashMap<Integer, Integer> bb_map
+    * @param String label_prefix block n is labelled label_prefix + n
+    **/
+    public InstructionSelector(HashMap<String, String> reg_map, HashMap<Integer, Integer> bb_map,
+                               String label_prefix) {
+        this(reg_map, bb_map, new HashMap<Integer, Integer>(), label_prefix);
+    }
+
+   /**
+    * @param HashMap<String, String> reg_map
+    * @param HashMap<Integer, Integer> bb_map
+    * @param HashMap<Integer, Integer> skip_map insn id -> next id of the
+    *        insns outside any block, -1 for a barrier
+    * @param String label_prefix block n is labelled label_prefix + n
+    **/
+    public InstructionSelector(HashMap<String, String> reg_map, HashMap<Integer, Integer> bb_map,
+                               HashMap<Integer, Integer> skip_map, String label_prefix) {
+        this.reg_map = reg_map;
+        this.bb_map = bb_map;
+        this.skip_map = skip_map;
+        this.label_prefix = label_prefix;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+   /**
+    * @return int constants loaded from the literal pool so far
+    **/
+    public int getNumLiterals() { return num_literals; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to select the ARM instructions for the pattern of insn and
+    * write them to out.
+    *
+    * @param Instruction insn
+    * @param AssemblyEmitter out
+    * @throws IllegalArgumentException if no rule covers the pattern or a
+    *         register it mentions has no location, what was written for
+    *         insn is then of no use and the function cannot be compiled
+    **/
+    public void select(Instruction insn, AssemblyEmitter out) {
+        select(insn, out, -1);
+    }
+
+   /**
+    * @param Instruction insn
+    * @param AssemblyEmitter out
+    * @param int next_block block laid out right after the one insn is in,
+    *        which a jump falls into without a branch, -1 if there is none
+    * @throws IllegalArgumentException as select(insn, out)
+    **/
+    public void select(Instruction insn, AssemblyEmitter out, int next_block) {
+        RtlNode pattern = insn.getSExp();
+        State state = label(pattern);
+        if (state.cost[STMT] >= INFINITE)
+            throw new IllegalArgumentException("no rule covers " + pattern);
+
+        this.insn = insn;
+        this.out = out;
+        this.fallthrough = next_block >= 0 ? labelOf(next_block) : null;
+        this.num_scratch = 0;
+        reduce(state, STMT);
+    }
+
+   /**
+    * Method to find the cheapest rule for each nonterminal at node and
+    * every node below it.
+    *
+    * @param RtlNode node
+    * @return State
+    **/
+    State label(RtlNode node) {
+        State state = new State(node);
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            state.kids[i] = label(node.getChild(i));
+        }
+
+        boolean matched = false;
+        if (state.code < BY_CODE.length) {
+            for (Rule rule : BY_CODE[state.code]) {
+                matched |= consider(rule, state);
+            }
+        }
+
+        /* Chain rules until nothing gets cheaper, they only start from a
+         * nonterminal some rule already gave the node */
+        boolean changed = matched;
+        while (changed) {
+            changed = false;
+            for (Rule rule : CHAIN) {
+                changed |= consider(rule, state);
+            }
+        }
+        return state;
+    }
+
+   /**
+    * Rules are tried in table order and only a cheaper rule replaces the
+    * one found, so on a tie the larger tile listed first wins.
+    **/
+    private boolean consider(Rule rule, State state) {
+        int cost = matchCost(rule.pattern, state);
+        if (cost >= INFINITE)
+            return false;
+        cost += rule.cost;
+        if (rule.dynamic != null)
+            cost += rule.dynamic.of(this, state.node);
+        if (cost >= state.cost[rule.lhs])
+            return false;
+
+        state.cost[rule.lhs] = cost;
+        state.rule[rule.lhs] = rule;
+        return true;
+    }
+
+    private static int matchCost(Pattern pattern, State state) {
+        if (pattern.code < 0)
+            return state.cost[pattern.nonterminal];
+        if (state.code != pattern.code || state.kids.length < pattern.kids.length)
+            return INFINITE;
+
+        int cost = 0;
+        for (int i = 0; i < pattern.kids.length && cost < INFINITE; i++) {
+            cost += matchCost(pattern.kids[i], state.kids[i]);
+        }
+        return Math.min(cost, INFINITE);
+    }
+
+   /**
+    * Method to emit the rule chosen for nonterminal at state, after the
+    * rules for the nonterminals its pattern leaves.
+    *
+    * @return String the operand the nonterminal stands for
+    **/
+    private String reduce(State state, int nonterminal) {
+        Rule rule = state.rule[nonterminal];
+        ArrayList<String> kids = new ArrayList<>();
+        reduceLeaves(rule.pattern, state, kids);
+        return rule.emit.emit(this, state.node, kids.toArray(new String[0]));
+    }
+
+    private void reduceLeaves(Pattern pattern, State state, ArrayList<String> kids) {
+        if (pattern.code < 0) {
+            kids.add(reduce(state, pattern.nonterminal));
+            return;
+        }
+        for (int i = 0; i < pattern.kids.length; i++) {
+            reduceLeaves(pattern.kids[i], state.kids[i], kids);
+        }
+    }
+
+/**************************
+ * Costs
+ **************************/
+   /**
+    * The leaves only take SI values, which are what a register or a slot
+    * holds. A QI, HI or DI value has no rule, so the insn is reported as
+    * one no rule covers rather than compiled as a word.
+    **/
+    private static int isValueRegister(InstructionSelector sel, RtlNode node) {
+        return node.isWord() && node.getValue() != FRAME_POINTER ? 0 : INFINITE;
+    }
+
+    private static int isConditionCodes(InstructionSelector sel, RtlNode node) {
+        return node.getType() == InstructionType.REG_CC ? 0 : INFINITE;
+    }
+
+    private static int isFrameAddress(InstructionSelector sel, RtlNode node) {
+        RtlNode base = node.getChild(0);
+        return node.isWord() && base.getCode() == REG_CODE && base.getValue() == FRAME_POINTER
+            ? 0 : INFINITE;
+    }
+
+    private static int isHome(InstructionSelector sel, RtlNode node) {
+        if (!node.isWord())
+            return INFINITE;
+        RtlNode base = node.getChild(0);
+        if (base.getCode() != REG_CODE)
+            base = base.getChild(0);
+        return base.getCode() == REG_CODE && base.getValue() == FRAME_POINTER ? 0 : INFINITE;
+    }
+
+    private static int constantCost(int value) {
+        return isImmediate(value) || isImmediate(~value) ? 0 : 1;
+    }
+
+    private int storeCost(RtlNode set) {
+        return inRegister(set.getChild(0)) ? 0 : 1;
+    }
+
+   /**
+    * A move is a mov or a str, or nothing when both sides were given the
+    * same place.
+    **/
+    private static int moveCost(InstructionSelector sel, RtlNode set) {
+        RtlNode src = set.getChild(1);
+        if (isLocation(src) && sel.location(set.getChild(0)).equals(sel.location(src)))
+            return 0;
+        return 1;
+    }
+
+/**************************
+ * Operands
+ **************************/
+   /**
+    * @param RtlNode node a register or memory home
+    * @return String where it lives, "r4" or "[fp, #-8]"
+    **/
+    private String location(RtlNode node) {
+        if (node.getCode() != REG_CODE)
+            return homeLocation(node);
+
+        int regno = node.getValue();
+        if (regno >= locations.length)
+            locations = Arrays.copyOf(locations, Math.max(regno + 1, locations.length * 2));
+        if (locations[regno] == null) {
+            locations[regno] = Instruction.isHardRegister(regno) ? "r" + regno
+                : mapped(Integer.toString(regno));
+        }
+        return locations[regno];
+    }
+
+    private String homeLocation(RtlNode mem) {
+        return slotOf(mem.getChild(0));
+    }
+
+   /**
+    * @param RtlNode address (plus (reg/f 105) (const_int -4)) or a bare
+    *        base register
+    * @return String where the memory home at address lives
+    **/
+    private String slotOf(RtlNode address) {
+        RtlNode base = address.getCode() == REG_CODE ? address : address.getChild(0);
+        int offset = base == address ? 0 : -address.getChild(1).getValue();
+        String home = "mem[" + base.getValue() + ", #" + -offset + "]";
+        if (base.getValue() != FRAME_POINTER || offset < 0 || offset >= 4096)
+            return mapped(home);
+
+        if (offset >= home_locations.length)
+            home_locations = Arrays.copyOf(home_locations, Math.max(offset + 1, home_locations.length * 2));
+        if (home_locations[offset] == null)
+            home_locations[offset] = mapped(home);
+        return home_locations[offset];
+    }
+
+    private String mapped(String name) {
+        String location = reg_map.get(name);
+        if (location == null)
+            throw new IllegalArgumentException(name + " has no location in " + insn.getSExp());
+        return location;
+    }
+
+   /**
+    * @return String the label of the block control falls through to after
+    *         insn, null if it falls off the function or into a barrier
+    **/
+    private String nextLabel() {
+        int next = BasicBlock.fallthrough(insn.getNextID(), bb_map, skip_map);
+        return next >= 0 && next != ControlFlowGraph.EXIT ? labelOf(next) : null;
+    }
+
+   /**
+    * @param int id of the first insn of a block
+    * @return String the label of the block, "BB_4"
+    **/
+    private String blockLabel(int id) {
+        Integer block = bb_map.get(id);
+        if (block == null)
+            throw new IllegalArgumentException("no block starts at insn " + id);
+        return labelOf(block);
+    }
+
+    private String labelOf(int bb_num) {
+        if (bb_num >= block_labels.length)
+            block_labels = Arrays.copyOf(block_labels, Math.max(bb_num + 1, block_labels.length * 2));
+        if (block_labels[bb_num] == null)
+            block_labels[bb_num] = label_prefix + bb_num;
+        return block_labels[bb_num];
+    }
+
+    private static boolean isLocation(RtlNode node) {
+        return node.getCode() == REG_CODE || node.getType() == InstructionType.MEM_C;
+    }
+
+    private boolean inRegister(RtlNode node) {
+        return isLocation(node) && inRegister(location(node));
+    }
+
+    private static boolean inRegister(String location) {
+        return location.charAt(0) == 'r';
+    }
+
+   /**
+    * @param String[] kids operands of the value being computed
+    * @return String register for it, the scratch of an operand if there is
+    *         one as its old value is not needed again
+    **/
+    private String result(String[] kids) {
+        for (String kid : kids) {
+            for (String register : SCRATCH) {
+                if (register.equals(kid))
+                    return register;
+            }
+        }
+        return scratch();
+    }
+
+    private String scratch() {
+        if (num_scratch == SCRATCH.length)
+            throw new IllegalArgumentException("out of scratch registers in " + insn.getSExp());
+        return SCRATCH[num_scratch++];
+    }
+
+   /**
+    * Method to tell if value fits an ARM data processing immediate, an
+    * 8 bit value rotated right by an even amount.
+    *
+    * @param int value
+    * @return boolean
+    **/
+    public static boolean isImmediate(int value) {
+        for (int rotate = 0; rotate < 32; rotate += 2) {
+            if ((Integer.rotateLeft(value, rotate) & ~0xff) == 0)
+                return true;
+        }
+        return false;
+    }
+
+   /**
+    * Method to write dst = src op value for any value, in as many
+    * instructions as it takes to give each an immediate that encodes.
+    * Used for frame sizes, which can be anything.
+    *
+    * @param AssemblyEmitter out
+    * @param String op "add" or "sub"
+    * @param String dst
+    * @param String src
+    * @param int value, not negative
+    **/
+    public static void operateImmediate(AssemblyEmitter out, String op, String dst, String src, int value) {
+        do {
+            int low = Integer.numberOfTrailingZeros(value) & ~1;
+            int chunk = value & (0xff << low);
+            out.op(op, dst, src, chunk);
+            value -= chunk;
+            src = dst;
+        } while (value != 0);
+    }
+
+/**************************
+ * Emitters
+ **************************/
+    private String emit(String op, String a) {
+        out.op(op, a);
+        return null;
+    }
+
+    private String emit(String op, String a, String b) {
+        out.op(op, a, b);
+        return null;
+    }
+
+   /**
+    * @param String location
+    * @return String a register holding the value at location
+    **/
+    private String load(String location) {
+        if (inRegister(location))
+            return location;
+        String register = scratch();
+        emit("ldr", register, reach(location));
+        return register;
+    }
+
+   /**
+    * @param String location of a result
+    * @return String register to compute the result in
+    **/
+    private String target(String location) {
+        return inRegister(location) ? location : SCRATCH[0];
+    }
+
+    private String store(String register, String location) {
+        if (!inRegister(location))
+            emit("str", register, reach(location));
+        return null;
+    }
+
+   /**
+    * Method to make a slot addressable by ldr and str, whose offset only
+    * goes to 4095. A slot further down is addressed from lr, which the
+    * prologue pushed and nothing else holds inside the function body.
+    *
+    * @param String location "[fp, #-N]" or another memory operand
+    * @return String the operand to use
+    **/
+    private String reach(String location) {
+        if (!location.startsWith("[fp, #-"))
+            return location;
+        int offset = Integer.parseInt(location.substring("[fp, #-".length(), location.length() - 1));
+        if (offset <= MAX_OFFSET)
+            return location;
+        int base = offset & ~MAX_OFFSET;
+        out.op("sub", "lr", "fp", base);
+        return "[lr, #-" + (offset - base) + "]";
+    }
+
+    private String move(String dst, String register) {
+        if (!dst.equals(register)) {
+            if (inRegister(dst)) {
+                emit("mov", dst, register);
+            } else {
+                store(register, dst);
+            }
+        }
+        return null;
+    }
+
+    private String operate(String op, String result, String left, String right) {
+        out.op(op, result, left, right);
+        return result;
+    }
+
+   /**
+    * Method to emit a jump to label when branch is taken, which goes on to
+    * the next insn otherwise. A branch to the block laid out next is left
+    * out, by turning the condition around if that is where label is.
+    *
+    * @param String branch "ble"
+    * @param String label
+    **/
+    private String branch(String branch, String label) {
+        String next = nextLabel();
+        if (next != null && label.equals(fallthrough))
+            return emit(INVERSE.get(branch), next);
+
+        emit(branch, label);
+        if (next != null && !next.equals(fallthrough))
+            emit("b", next);
+        return null;
+    }
+
+   /**
+    * Method to compute the address of a local that lives on the stack.
+    *
+    * @param String register
+    * @param String slot "[fp, #-N]"
+    * @return String register
+    **/
+    private String frameAddress(String register, String slot) {
+        if (inRegister(slot))
+            throw new IllegalArgumentException("address of a local kept in " + slot + " in " + insn.getSExp());
+
+        int offset = -Integer.parseInt(slot.substring("[fp, #".length(), slot.length() - 1));
+        if (isImmediate(offset))
+            return operate("sub", register, "fp", "#" + offset);
+        return operate("sub", register, "fp", materialize(register, offset));
+    }
+
+    private String materialize(String register, int value) {
+        if (isImmediate(value)) {
+            out.op("mov", register, value);
+        } else if (isImmediate(~value)) {
+            out.op("mvn", register, ~value);
+        } else {
+            emit("ldr", register, "=" + value);
+            num_literals++;
+        }
+        return register;
+    }
+
+/**************************
+ * Rule table types
+ **************************/
+    interface Cost {
+        int of(InstructionSelector sel, RtlNode node);
+    }
+
+    interface Emitter {
+        String emit(InstructionSelector sel, RtlNode node, String[] kids);
+    }
+
+   /**
+    * A rule, "LHS <- pattern", with a fixed cost, an optional cost worked
+    * out from the node and what to emit.
+    **/
+    static final class Rule {
+        final String text;
+        final int lhs;
+        final Pattern pattern;
+        final int cost;
+        final Cost dynamic;
+        final Emitter emit;
+
+        Rule(String text, int cost, Cost dynamic, Emitter emit) {
+            int arrow = text.indexOf("<-");
+            this.text = text;
+            this.lhs = nonterminal(text.substring(0, arrow).trim());
+            this.pattern = Pattern.parse(text.substring(arrow + 2).trim());
+            this.cost = cost;
+            this.dynamic = dynamic;
+            this.emit = emit;
+        }
+
+        public String toString() { return text; }
+    }
+
+   /**
+    * A tree pattern: an RTL code with sub patterns, or a nonterminal leaf
+    * (code -1).
+    **/
+    static final class Pattern {
+        final int code;
+        final int nonterminal;
+        final Pattern[] kids;
+
+        private Pattern(int code, int nonterminal, Pattern[] kids) {
+            this.code = code;
+            this.nonterminal = nonterminal;
+            this.kids = kids;
+        }
+
+        static Pattern parse(String text) {
+            int[] pos = { 0 };
+            return parse(text, pos);
+        }
+
+        private static Pattern parse(String text, int[] pos) {
+            skipSpaces(text, pos);
+            if (text.charAt(pos[0]) != '(') {
+                return new Pattern(-1, nonterminal(word(text, pos)), new Pattern[0]);
+            }
+
+            pos[0]++;
+            String name = word(text, pos);
+            int code = OpcodeTable.findCode(name);
+            if (code < 0)
+                throw new IllegalArgumentException("unknown RTL code " + name);
+
+            ArrayList<Pattern> kids = new ArrayList<>();
+            skipSpaces(text, pos);
+            while (text.charAt(pos[0]) != ')') {
+                kids.add(parse(text, pos));
+                skipSpaces(text, pos);
+            }
+            pos[0]++;
+            return new Pattern(code, -1, kids.toArray(new Pattern[0]));
+        }
+
+        private static String word(String text, int[] pos) {
+            int start = pos[0];
+            while (pos[0] < text.length() && text.charAt(pos[0]) != ' '
+                   && text.charAt(pos[0]) != '(' && text.charAt(pos[0]) != ')')
+                pos[0]++;
+            return text.substring(start, pos[0]);
+        }
+
+        private static void skipSpaces(String text, int[] pos) {
+            while (text.charAt(pos[0]) == ' ')
+                pos[0]++;
+        }
+    }
+
+    private static int nonterminal(String name) {
+        for (int i = 0; i < NONTERMINALS.length; i++) {
+            if (NONTERMINALS[i].equals(name))
+                return i;
+        }
+        throw new IllegalArgumentException("unknown nonterminal " + name);
+    }
+
+   /**
+    * The labels of one node: the cheapest cost and rule for every
+    * nonterminal.
+    **/
+    static final class State {
+        final RtlNode node;
+        final int code;
+        final State[] kids;
+        final int[] cost = new int[NONTERMINALS.length];
+        final Rule[] rule = new Rule[NONTERMINALS.length];
+
+        State(RtlNode node) {
+            this.node = node;
+            this.code = node.getCode();
+            this.kids = new State[node.getNumChildren()];
+            Arrays.fill(cost, INFINITE);
+        }
+    }
+}
@@ -8,22 +8,23 @@ public enum InstructionType {
     LABEL_REF,
     PC,
     IF_THEN_ELSE,
-    LE,
+    COMPARISON,
     CALL,
     SYMBOL_REF,
  
     SET,
     USE,
 
-    REG_SI,
-    REG_F_SI,
-    REG_I_SI,
+    REG,
+    REG_F,
+    REG_I,
     REG_CC,
     COMPARE_CC,
-    MEM_C_SI,
+    MEM_C,
     PLUS,
     CONST_INT,
 
-    DEFAULT
+    DEFAULT,
+    UNKNOWN
 
 }
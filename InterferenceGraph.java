@@ -0,0 +1,252 @@
+/**
+ * This is the InterferenceGraph class. Two registers interfere when one is
+ * defined while the other is live, so they can not share a hard register.
+ *
+ * Nodes are the register ids handed out by Liveness. Edges are kept twice:
+ * in a triangular bit matrix so interferes() is a single bit test, and in
+ * an int adjacency list per node so the neighbours of a node can be walked
+ * without scanning a matrix row.
+ *
+ * A move (set (reg a) (reg b)) does not make a interfere with b, since the
+ * two hold the same value and may share a register. The same goes for a
+ * load or store of a memory home. Such pairs are kept in
+ * a move list instead so the allocator can try to coalesce them.
+ *
+ * The walk also notes which registers are live across a call. A call
+ * clobbers the caller saved registers, so those must not be kept in them.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+public class InterferenceGraph {
+
+    private static final int[] NO_NODES = new int[0];
+
+    private final Liveness liveness;
+    private final int num_nodes;
+
+    /* bit i * (i - 1) / 2 + j is set if i and j interfere, for j < i */
+    private final long[] matrix;
+
+    private final int[][] adjacent;
+    private final int[] degree;
+    private int num_edges;
+
+    private int[] move_dst;
+    private int[] move_src;
+    private int num_moves;
+    private final int[] node_moves;
+    private final boolean[] crosses_call;
+
+    private final long build_time;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * Builds the graph with one backward walk over each block, starting from
+    * the live out of the block. liveness must already be solved.
+    *
+    * @param Liveness liveness
+    **/
+    public InterferenceGraph(Liveness liveness) {
+        long start = System.nanoTime();
+
+        this.liveness = liveness;
+        this.num_nodes = liveness.getNumRegisters();
+        this.matrix = new long[(int) ((bitIndex(num_nodes, 0) + 63) >>> 6)];
+        this.adjacent = new int[num_nodes][];
+        this.degree = new int[num_nodes];
+        this.move_dst = new int[16];
+        this.move_src = new int[16];
+        this.node_moves = new int[num_nodes];
+        this.crosses_call = new boolean[num_nodes];
+
+        for (int i = 0; i < num_nodes; i++) {
+            adjacent[i] = NO_NODES;
+        }
+
+        ControlFlowGraph cfg = liveness.getControlFlowGraph();
+        BitVector live = new BitVector(num_nodes);
+
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+            Instruction[] insns = liveness.getInsns(bb_num);
+            live.copy(liveness.getLiveOut(bb_num));
+
+            for (int i = 0; i < insns.length; i++) {
+                int[] defs = liveness.getDefs(bb_num, i);
+                int[] uses = liveness.getUses(bb_num, i);
+
+                /* The source of a move does not interfere with its dest */
+                int src = moveSource(insns[i], uses);
+                if (src >= 0 && defs.length == 1) {
+                    addMove(defs[0], src);
+                }
+
+                for (int def : defs) {
+                    for (int reg = live.nextSetBit(0); reg >= 0; reg = live.nextSetBit(reg + 1)) {
+                        if (reg != def && reg != src) {
+                            addEdge(def, reg);
+                        }
+                    }
+                }
+
+                for (int def : defs) {
+                    live.clear(def);
+                }
+
+                /* What is live after a call, apart from what it sets, is
+                 * live across it */
+                if (insns[i].getType() == InstructionType.CALL) {
+                    for (int reg = live.nextSetBit(0); reg >= 0; reg = live.nextSetBit(reg + 1)) {
+                        crosses_call[reg] = true;
+                    }
+                }
+
+                for (int use : uses) {
+                    live.set(use);
+                }
+            }
+        }
+
+        this.build_time = System.nanoTime() - start;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int getNumNodes() { return num_nodes; }
+    public int getNumEdges() { return num_edges; }
+    public int getNumMoves() { return num_moves; }
+    public String getName(int node) { return liveness.getRegister(node); }
+
+   /**
+    * @return long nanoseconds it took to build the graph
+    **/
+    public long getBuildTime() { return build_time; }
+
+   /**
+    * @return long bytes held by the bit matrix and adjacency lists
+    **/
+    public long getSizeInBytes() {
+        long bytes = (long) matrix.length * 8;
+        for (int node = 0; node < num_nodes; node++) {
+            bytes += (long) adjacent[node].length * 4;
+        }
+        return bytes;
+    }
+
+    public int getDegree(int node) { return degree[node]; }
+
+   /**
+    * Method to get the i'th neighbour of a node, for i < getDegree(node).
+    *
+    * @param int node
+    * @param int i
+    * @return int neighbour
+    **/
+    public int getNeighbour(int node, int i) { return adjacent[node][i]; }
+
+    public boolean interferes(int a, int b) {
+        if (a == b)
+            return false;
+        long bit = a > b ? bitIndex(a, b) : bitIndex(b, a);
+        return (matrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    public int getMoveDst(int move) { return move_dst[move]; }
+    public int getMoveSrc(int move) { return move_src[move]; }
+    public boolean isMoveRelated(int node) { return node_moves[node] > 0; }
+    public boolean crossesCall(int node) { return crosses_call[node]; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to record that a and b interfere. Adding an edge twice, or an
+    * edge from a node to itself, does nothing.
+    *
+    * @param int a
+    * @param int b
+    **/
+    public void addEdge(int a, int b) {
+        if (a == b)
+            return;
+
+        long bit = a > b ? bitIndex(a, b) : bitIndex(b, a);
+        int word = (int) (bit >>> 6);
+        if ((matrix[word] & (1L << bit)) != 0)
+            return;
+
+        matrix[word] |= 1L << bit;
+        addAdjacent(a, b);
+        addAdjacent(b, a);
+        num_edges++;
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private static long bitIndex(int i, int j) {
+        return (long) i * (i - 1) / 2 + j;
+    }
+
+    private void addAdjacent(int node, int neighbour) {
+        int[] list = adjacent[node];
+        if (degree[node] == list.length) {
+            int[] grown = new int[Math.max(4, list.length * 2)];
+            System.arraycopy(list, 0, grown, 0, list.length);
+            adjacent[node] = list = grown;
+        }
+        list[degree[node]++] = neighbour;
+    }
+
+    private void addMove(int dst, int src) {
+        if (dst == src)
+            return;
+
+        if (num_moves == move_dst.length) {
+            int[] grown_dst = new int[num_moves * 2];
+            int[] grown_src = new int[num_moves * 2];
+            System.arraycopy(move_dst, 0, grown_dst, 0, num_moves);
+            System.arraycopy(move_src, 0, grown_src, 0, num_moves);
+            move_dst = grown_dst;
+            move_src = grown_src;
+        }
+        move_dst[num_moves] = dst;
+        move_src[num_moves] = src;
+        num_moves++;
+        node_moves[dst]++;
+        node_moves[src]++;
+    }
+
+   /**
+    * Method to get the source of a move between registers or memory homes.
+    *
+    * @param Instruction insn
+    * @param int[] uses register ids insn uses
+    * @return int register id of the source, -1 if insn is not a move
+    **/
+    private static int moveSource(Instruction insn, int[] uses) {
+        return insn.isMove() && uses.length == 1 ? uses[0] : -1;
+    }
+
+/**************************
+ * Methods for Testing
+ **************************/
+    public void printAll() {
+        System.out.println("Interference Graph: " + num_nodes + " nodes, "
+                           + num_edges + " edges, " + num_moves + " moves, built in "
+                           + String.format("%.3f", build_time / 1e6) + " ms");
+        for (int node = 0; node < num_nodes; node++) {
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < degree[node]; i++) {
+                if (i > 0) out.append(", ");
+                out.append(getName(adjacent[node][i]));
+            }
+            System.out.println("\t" + getName(node) + ": [" + out + "]"
+                               + (isMoveRelated(node) ? " (move related)" : ""));
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * This is the LinearScanAllocator class, a linear scan register allocator
+ * (Poletto and Sarkar) for when compile time matters more than the last
+ * few moves and spills.
+ *
+ * The blocks are laid out in reverse postorder and every insn gets a
+ * position; an insn reads its uses at 2 * n and writes its defs at
+ * 2 * n + 1. The live interval of a register runs from the first to the
+ * last position it is used, defined or live at a block boundary, so a
+ * value is kept in one place for its whole life, holes and all. Intervals
+ * are visited by start position and each takes a register whose last
+ * interval has ended. When there is none, whichever of it and the
+ * intervals holding a register it could use has the lowest spill cost per
+ * position goes to the stack, so values used in loops stay in registers.
+ *
+ * No interference graph is built. Sorting is a counting sort over the
+ * positions and each interval looks at a fixed number of registers, so the
+ * whole allocation is linear in the size of the function and its live
+ * sets.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.Arrays;
+
+public class LinearScanAllocator extends RegisterAllocator {
+
+    private static final int NUM_REGISTERS = 16;
+
+    /* live interval of each register, start > end if it never appears */
+    private int[] start;
+    private int[] end;
+
+    /* the other side of a move, -1 if the register is never moved */
+    private int[] hint;
+
+    /* positions of calls, ascending */
+    private int[] calls;
+    private int num_calls;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param Liveness liveness, already solved
+    **/
+    public LinearScanAllocator(Liveness liveness) {
+        super(liveness);
+    }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+    protected void assign() {
+        int positions = buildIntervals();
+
+        /* The end of the interval each register was last given to */
+        int[] busy_until = new int[NUM_REGISTERS];
+        int[] holder = new int[NUM_REGISTERS];
+        Arrays.fill(busy_until, -1);
+        Arrays.fill(holder, -1);
+
+        /* Hard registers hold on to their own interval */
+        int[] fixed_start = new int[NUM_REGISTERS];
+        int[] fixed_end = new int[NUM_REGISTERS];
+        Arrays.fill(fixed_start, Integer.MAX_VALUE);
+        Arrays.fill(fixed_end, -1);
+        for (int node = 0; node < kind.length; node++) {
+            if (kind[node] == HARD && color[node] < NUM_REGISTERS) {
+                fixed_start[color[node]] = Math.min(fixed_start[color[node]], start[node]);
+                fixed_end[color[node]] = Math.max(fixed_end[color[node]], end[node]);
+            }
+        }
+
+        for (int node : byStart(positions)) {
+            int[] allowed = crossesCall(node) ? CALLEE_SAVED : ANY_REGISTER;
+            int choice = -1;
+
+            /* A free register of a move partner saves the move */
+            int partner = hint[node];
+            if (partner >= 0 && color[partner] >= 0) {
+                int reg = color[partner];
+                if (contains(allowed, reg) && busy_until[reg] < start[node]
+                        && !overlaps(node, fixed_start[reg], fixed_end[reg]))
+                    choice = reg;
+            }
+            /* Registers the RTL never names first, so they are left to
+             * the values that have to be in them */
+            for (int i = 0; choice < 0 && i < allowed.length; i++) {
+                int reg = allowed[i];
+                if (busy_until[reg] < start[node] && fixed_end[reg] < 0)
+                    choice = reg;
+            }
+            for (int i = 0; choice < 0 && i < allowed.length; i++) {
+                int reg = allowed[i];
+                if (busy_until[reg] < start[node]
+                        && !overlaps(node, fixed_start[reg], fixed_end[reg]))
+                    choice = reg;
+            }
+
+            /* None free, spill the cheapest of node and the ones in the way */
+            if (choice < 0) {
+                int victim = node;
+                for (int reg : allowed) {
+                    int other = holder[reg];
+                    if (other >= 0 && busy_until[reg] >= start[node]
+                            && !overlaps(node, fixed_start[reg], fixed_end[reg])
+                            && weight(other) < weight(victim))
+                        victim = other;
+                }
+                num_spilled++;
+                if (victim == node)
+                    continue;
+
+                choice = color[victim];
+                color[victim] = -1;
+                num_colored--;
+            }
+
+            color[node] = choice;
+            busy_until[choice] = end[node];
+            holder[choice] = node;
+            num_colored++;
+        }
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to number the insns in block layout order and work out the
+    * live interval of every register, the move hints and where the calls
+    * are.
+    *
+    * @return int number of positions
+    **/
+    private int buildIntervals() {
+        ControlFlowGraph cfg = liveness.getControlFlowGraph();
+        int num_nodes = liveness.getNumRegisters();
+
+        start = new int[num_nodes];
+        end = new int[num_nodes];
+        hint = new int[num_nodes];
+        Arrays.fill(start, Integer.MAX_VALUE);
+        Arrays.fill(end, -1);
+        Arrays.fill(hint, -1);
+        calls = new int[16];
+
+        int pos = 0;
+        for (int bb_num : layout(cfg)) {
+            Instruction[] insns = liveness.getInsns(bb_num);
+            if (insns.length == 0)
+                continue;
+
+            int block_start = 2 * pos;
+            int block_end = 2 * (pos + insns.length - 1) + 1;
+            BitVector live_in = liveness.getLiveIn(bb_num);
+            BitVector live_out = liveness.getLiveOut(bb_num);
+            for (int reg = live_in.nextSetBit(0); reg >= 0; reg = live_in.nextSetBit(reg + 1))
+                extend(reg, block_start);
+            for (int reg = live_out.nextSetBit(0); reg >= 0; reg = live_out.nextSetBit(reg + 1))
+                extend(reg, block_end);
+
+            /* Liveness keeps the insns last first */
+            for (int i = insns.length - 1; i >= 0; i--, pos++) {
+                int[] defs = liveness.getDefs(bb_num, i);
+                int[] uses = liveness.getUses(bb_num, i);
+
+                for (int use : uses)
+                    extend(use, 2 * pos);
+                for (int def : defs)
+                    extend(def, 2 * pos + 1);
+
+                if (insns[i].isMove() && defs.length == 1 && uses.length == 1) {
+                    hint[defs[0]] = uses[0];
+                    if (hint[uses[0]] < 0)
+                        hint[uses[0]] = defs[0];
+                }
+                if (insns[i].getType() == InstructionType.CALL)
+                    addCall(2 * pos);
+            }
+        }
+        return 2 * pos;
+    }
+
+   /**
+    * Method to get the real blocks in reverse postorder, followed by the
+    * ones ENTRY does not reach.
+    **/
+    private static int[] layout(ControlFlowGraph cfg) {
+        int[] out = new int[cfg.size()];
+        boolean[] placed = new boolean[cfg.size()];
+        int count = 0;
+
+        for (int bb_num : cfg.getReversePostorder()) {
+            if (cfg.getBlock(bb_num) != null) {
+                out[count++] = bb_num;
+                placed[bb_num] = true;
+            }
+        }
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+            if (cfg.getBlock(bb_num) != null && !placed[bb_num])
+                out[count++] = bb_num;
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    private void extend(int node, int pos) {
+        if (pos < start[node])
+            start[node] = pos;
+        if (pos > end[node])
+            end[node] = pos;
+    }
+
+    private void addCall(int pos) {
+        if (num_calls == calls.length)
+            calls = Arrays.copyOf(calls, num_calls * 2);
+        calls[num_calls++] = pos;
+    }
+
+   /**
+    * Method to sort the candidates that appear in the code by the start of
+    * their interval, by counting.
+    *
+    * @param int positions
+    * @return int[] candidates
+    **/
+    private int[] byStart(int positions) {
+        int[] count = new int[positions + 1];
+        int total = 0;
+        for (int node = 0; node < start.length; node++) {
+            if (candidate[node] && start[node] <= end[node]) {
+                count[start[node] + 1]++;
+                total++;
+            }
+        }
+        for (int pos = 1; pos <= positions; pos++)
+            count[pos] += count[pos - 1];
+
+        int[] out = new int[total];
+        for (int node = 0; node < start.length; node++) {
+            if (candidate[node] && start[node] <= end[node])
+                out[count[start[node]]++] = node;
+        }
+        return out;
+    }
+
+   /**
+    * Method to tell if a call falls inside the interval of node, that is
+    * node is live after a call it was live before.
+    **/
+    private boolean crossesCall(int node) {
+        int low = 0;
+        int high = num_calls;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (calls[mid] < start[node])
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low < num_calls && calls[low] < end[node];
+    }
+
+   /**
+    * Spill cost per position held, so a long interval that is seldom used
+    * gives way to the short ones it is in the way of.
+    **/
+    private double weight(int node) {
+        return spill_cost[node] / (end[node] - start[node] + 1);
+    }
+
+    private boolean overlaps(int node, int other_start, int other_end) {
+        return start[node] <= other_end && other_start <= end[node];
+    }
+
+    private static boolean contains(int[] list, int value) {
+        for (int item : list) {
+            if (item == value)
+                return true;
+        }
+        return false;
+    }
+}
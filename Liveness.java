@@ -0,0 +1,191 @@
+/**
+ * This is the Liveness class, which solves live variables over the basic
+ * block graph with bit vectors.
+ *
+ * Every register number and memory home that appears in a def or use is
+ * given a dense id, so a live set is a BitVector with one bit per name. The
+ * GEN and KILL sets of each block are worked out once up front, which leaves
+ * the transfer function with nothing but word-wise OR and AND NOT. Liveness
+ * is a backward problem, see Dataflow for how the blocks are visited.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+public class Liveness extends Dataflow {
+
+    /* dense numbering of the names returned by Instruction.getDefs/getUses */
+    private final HashMap<String, Integer> reg_ids;
+    private final ArrayList<String> reg_names;
+
+    /* the insns of each block, last first, with their defs and uses as ids */
+    private final Instruction[][] insns;
+    private final int[][][] insn_defs;
+    private final int[][][] insn_uses;
+
+    private BitVector[] gen;
+    private BitVector[] kill;
+    private BitVector[] live_in;
+    private BitVector[] live_out;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * Numbers the registers of the graph and builds GEN and KILL for every
+    * block. ENTRY, EXIT and empty numbers keep empty sets.
+    *
+    * @param ControlFlowGraph cfg
+    **/
+    public Liveness(ControlFlowGraph cfg) {
+        super(cfg, true);
+        this.reg_ids = new HashMap<>();
+        this.reg_names = new ArrayList<>();
+
+        this.insns = new Instruction[cfg.size()][];
+        this.insn_defs = new int[cfg.size()][][];
+        this.insn_uses = new int[cfg.size()][][];
+
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+            BasicBlock block = cfg.getBlock(bb_num);
+            if (block == null) {
+                insns[bb_num] = new Instruction[0];
+                insn_defs[bb_num] = new int[0][];
+                insn_uses[bb_num] = new int[0][];
+                continue;
+            }
+
+            ArrayList<Instruction> walked = new ArrayList<>();
+            ArrayList<int[]> defs = new ArrayList<>();
+            ArrayList<int[]> uses = new ArrayList<>();
+
+            LinkedList<Instruction> instructions = block.getInstructions();
+            for (int insn_num = instructions.size() - 1; insn_num >= 0; insn_num--) {
+                Instruction insn = instructions.get(insn_num);
+
+                /* Same walk as BasicBlockGraph.adjustLiveSet */
+                if (insn.getType() == InstructionType.NOTE)
+                    continue;
+
+                walked.add(insn);
+                defs.add(number(insn.getDefs()));
+                uses.add(number(insn.getUses()));
+            }
+
+            insns[bb_num] = walked.toArray(new Instruction[0]);
+            insn_defs[bb_num] = defs.toArray(new int[0][]);
+            insn_uses[bb_num] = uses.toArray(new int[0][]);
+        }
+
+        int size = reg_names.size();
+        this.gen = new BitVector[cfg.size()];
+        this.kill = new BitVector[cfg.size()];
+        this.live_in = new BitVector[cfg.size()];
+        this.live_out = new BitVector[cfg.size()];
+
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+            gen[bb_num] = new BitVector(size);
+            kill[bb_num] = new BitVector(size);
+            live_in[bb_num] = new BitVector(size);
+            live_out[bb_num] = new BitVector(size);
+
+            /* Walking backwards, a def kills the name and hides any later
+             * use of it, a use makes it live on entry */
+            for (int i = 0; i < insns[bb_num].length; i++) {
+                for (int def : insn_defs[bb_num][i]) {
+                    kill[bb_num].set(def);
+                    gen[bb_num].clear(def);
+                }
+                for (int use : insn_uses[bb_num][i]) {
+                    gen[bb_num].set(use);
+                }
+            }
+        }
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int getNumRegisters() { return reg_names.size(); }
+    public String getRegister(int id) { return reg_names.get(id); }
+    public BitVector getGen(int block_num) { return gen[block_num]; }
+    public BitVector getKill(int block_num) { return kill[block_num]; }
+    public BitVector getLiveIn(int block_num) { return live_in[block_num]; }
+    public BitVector getLiveOut(int block_num) { return live_out[block_num]; }
+
+   /**
+    * Method to get the insns of a block other than NOTEs, last insn first. The defs and uses of insn i are getDefs(block_num, i) and
+    * getUses(block_num, i) as register ids.
+    *
+    * @param int block_num
+    * @return Instruction[] insns
+    **/
+    public Instruction[] getInsns(int block_num) { return insns[block_num]; }
+    public int[] getDefs(int block_num, int i) { return insn_defs[block_num][i]; }
+    public int[] getUses(int block_num, int i) { return insn_uses[block_num][i]; }
+
+   /**
+    * Method to get the dense id of a register or memory home.
+    *
+    * @param String name as returned by getDefs/getUses
+    * @return int id, -1 if the name never appears
+    **/
+    public int getRegisterId(String name) {
+        Integer id = reg_ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+   /**
+    * Method to turn a live set back into the names it stands for.
+    *
+    * @param BitVector set
+    * @return HashSet<String> names
+    **/
+    public HashSet<String> toSet(BitVector set) {
+        HashSet<String> names = new HashSet<>();
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            names.add(reg_names.get(i));
+        }
+        return names;
+    }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * live_out = U live_in(succ), live_in = gen | (live_out & ~kill)
+    *
+    * @param int block_num
+    * @return boolean true if live_in changed
+    **/
+    protected boolean transfer(int block_num) {
+        BitVector out = live_out[block_num];
+        for (int succ : cfg.getSuccessors(block_num)) {
+            out.or(live_in[succ]);
+        }
+        return live_in[block_num].transfer(gen[block_num], out, kill[block_num]);
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private int[] number(HashSet<String> names) {
+        int[] ids = new int[names.size()];
+        int i = 0;
+        for (String name : names) {
+            Integer id = reg_ids.get(name);
+            if (id == null) {
+                id = reg_names.size();
+                reg_ids.put(name, id);
+                reg_names.add(name);
+            }
+            ids[i++] = id;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * This is the LocalValueNumbering class, common subexpression elimination
+ * inside each basic block by hash based value numbering.
+ *
+ * Walking a block from the top, every value gets a number: a constant by
+ * its value, a pseudo or memory home by the number of the last SET to it
+ * in the block (a new number if there is none), and a plus by its operator
+ * and the numbers of its operands, looked up in a hash table. The operands
+ * of a plus are put in order first, so a + b and b + a get the same
+ * number, x + 0 gets the number of x and a plus of two constants that of
+ * their sum. Each number remembers the first pseudo that got it. When a
+ * later plus computes a number that pseudo still holds, it becomes a copy
+ * of the pseudo. Pseudos are never clobbered by calls and
+ * memory homes are only followed when no insn takes the address of a
+ * local, so a SET is the only thing that changes a number. A block costs
+ * one walk and a hash lookup per plus.
+ *
+ * A load of a local gets the number of the local, so pluses of values
+ * loaded twice match, but the load itself is kept: the register allocator
+ * keeps such locals in registers, where the load is a move it coalesces,
+ * while a copy of an older pseudo would only keep that one live longer.
+ *
+ * The copies are left to dead code elimination and the register
+ * allocator, which drop the SETs nothing reads any more and coalesce the
+ * copies.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+public class LocalValueNumbering {
+
+    private static final int PLUS = OpcodeTable.findCode("plus");
+
+    private final ArrayList<LinkedList<Instruction>> graph;
+
+    /* dense ids of the pseudos and followed memory homes */
+    private RegisterNumbering numbering;
+
+    /* value number of each register in the block being walked, valid where
+     * stamp is the block's, and the node to copy a pseudo from */
+    private int[] var_vn = new int[256];
+    private int[] var_stamp = new int[256];
+    private RtlNode[] var_node = new RtlNode[256];
+    private int stamp;
+
+    /* by value number, restarted for each block: the pseudo holding it, -1
+     * for none, and its value if it is a constant */
+    private int[] holder = new int[256];
+    private boolean[] is_const = new boolean[256];
+    private int[] const_value = new int[256];
+    private int num_values;
+    private HashMap<Long, Integer> exprs = new HashMap<>();
+    private HashMap<Integer, Integer> consts = new HashMap<>();
+
+    private int num_exprs;
+    private int num_identities;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param ArrayList<LinkedList<Instruction>> graph insns by basic block
+    *        number, changed in place by run
+    **/
+    public LocalValueNumbering(ArrayList<LinkedList<Instruction>> graph) {
+        this.graph = graph;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+   /**
+    * @return int pluses replaced by a copy of a pseudo computing the same
+    **/
+    public int getNumExprs() { return num_exprs; }
+
+   /**
+    * @return int pluses of 0 or of two constants simplified
+    **/
+    public int getNumIdentities() { return num_identities; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to number the values of every block and replace the redundant
+    * ones.
+    **/
+    public void run() {
+        numbering = new RegisterNumbering(graph);
+
+        for (LinkedList<Instruction> block : graph) {
+            if (block.isEmpty())
+                continue;
+
+            stamp++;
+            num_values = 0;
+            if (!exprs.isEmpty())
+                exprs = new HashMap<>();
+            if (!consts.isEmpty())
+                consts = new HashMap<>();
+
+            ListIterator<Instruction> insns = block.listIterator();
+            while (insns.hasNext()) {
+                Instruction insn = insns.next();
+                String pattern = number(insn);
+                if (pattern != null)
+                    insns.set(insn.withPattern(pattern));
+            }
+        }
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to number the value an insn sets and give its destination that
+    * number.
+    *
+    * @param Instruction insn
+    * @return String the new pattern of insn, null if it does not change
+    **/
+    private String number(Instruction insn) {
+        RtlNode pattern = insn.getSExp();
+        InstructionType type = insn.getType();
+        if (pattern == null || type == InstructionType.NOTE || type == InstructionType.CALL
+                || type == InstructionType.JUMP_INSN || pattern.getType() == InstructionType.USE)
+            return null;
+
+        if (type != InstructionType.INSN || pattern.getType() != InstructionType.SET) {
+            /* anything else may write what it mentions */
+            forget(pattern);
+            return null;
+        }
+
+        RtlNode dst = pattern.getChild(0);
+        RtlNode src = pattern.getChild(1);
+        if (dst.getType() == InstructionType.REG_CC || dst.getType() == InstructionType.PC)
+            return null;
+
+        int vn = valueOf(src);
+        int var = varOf(dst);
+        String copy = replacement(src, vn, var);
+
+        if (var >= 0) {
+            var_vn[var] = vn;
+            var_stamp[var] = stamp;
+            if (Instruction.isPseudo(dst)) {
+                var_node[var] = dst;
+                if (heldBy(vn) < 0)
+                    holder[vn] = var;
+            }
+        } else if (!isPlainDestination(dst)) {
+            forget(dst);
+        }
+        return copy == null ? null : "(set " + dst + " " + copy + ")";
+    }
+
+   /**
+    * Method to work out what a SET source numbered vn can become instead.
+    *
+    * @param RtlNode src
+    * @param int vn
+    * @param int dst id of the register set, -1 if it is not followed
+    * @return String a pseudo or constant with the same value, null to keep
+    *         src
+    **/
+    private String replacement(RtlNode src, int vn, int dst) {
+        if (src.getType() != InstructionType.PLUS)
+            return null;
+
+        if (is_const[vn]) {
+            num_identities++;
+            return "(const_int " + const_value[vn] + ")";
+        }
+        int var = heldBy(vn);
+        if (var >= 0 && var != dst) {
+            if (isIdentity(src))
+                num_identities++;
+            else
+                num_exprs++;
+            return var_node[var].toString();
+        }
+
+        /* x + 0 with x in a register nobody else holds */
+        if (isIdentity(src)) {
+            RtlNode x = src.getChild(1).getType() == InstructionType.CONST_INT
+                        ? src.getChild(0) : src.getChild(1);
+            if (Instruction.isPseudo(x)) {
+                num_identities++;
+                return x.toString();
+            }
+        }
+        return null;
+    }
+
+   /**
+    * @param RtlNode node
+    * @return int value number of node, a new one for anything that is not
+    *         a constant, a register or a plus
+    **/
+    private int valueOf(RtlNode node) {
+        switch (node.getType()) {
+            case CONST_INT:
+                return constant(node.getValue());
+            case REG:
+            case REG_I:
+            case REG_F:
+            case MEM_C:
+                int var = varOf(node);
+                if (var < 0 || !node.isWord())
+                    return newValue();
+                if (var_stamp[var] != stamp) {
+                    var_stamp[var] = stamp;
+                    var_vn[var] = newValue();
+                    if (Instruction.isPseudo(node)) {
+                        var_node[var] = node;
+                        holder[var_vn[var]] = var;
+                    }
+                }
+                return var_vn[var];
+            case PLUS:
+                if (!node.isWord())
+                    return newValue();
+                int first = valueOf(node.getChild(0));
+                int second = valueOf(node.getChild(1));
+                if (is_const[first] && is_const[second])
+                    return constant(const_value[first] + const_value[second]);
+                if (is_const[second] && const_value[second] == 0)
+                    return first;
+                if (is_const[first] && const_value[first] == 0)
+                    return second;
+
+                /* plus is commutative, key it by the smaller number first */
+                long key = ((long) PLUS << 58) | ((long) Math.min(first, second) << 29)
+                           | Math.max(first, second);
+                Integer vn = exprs.get(key);
+                if (vn == null) {
+                    vn = newValue();
+                    exprs.put(key, vn);
+                }
+                return vn;
+            default:
+                return newValue();
+        }
+    }
+
+    private int constant(int value) {
+        Integer vn = consts.get(value);
+        if (vn == null) {
+            vn = newValue();
+            is_const[vn] = true;
+            const_value[vn] = value;
+            consts.put(value, vn);
+        }
+        return vn;
+    }
+
+    private int newValue() {
+        if (num_values == holder.length) {
+            holder = Arrays.copyOf(holder, num_values * 2);
+            is_const = Arrays.copyOf(is_const, num_values * 2);
+            const_value = Arrays.copyOf(const_value, num_values * 2);
+        }
+        holder[num_values] = -1;
+        is_const[num_values] = false;
+        return num_values++;
+    }
+
+   /**
+    * @param int vn
+    * @return int the pseudo that still holds vn, -1 if none does
+    **/
+    private int heldBy(int vn) {
+        int var = holder[vn];
+        if (var >= 0 && var_stamp[var] == stamp && var_vn[var] == vn)
+            return var;
+        return -1;
+    }
+
+   /**
+    * Method to give every register node mentions a value of its own.
+    *
+    * @param RtlNode node
+    **/
+    private void forget(RtlNode node) {
+        int var = varOf(node);
+        if (var >= 0) {
+            var_stamp[var] = stamp;
+            var_vn[var] = newValue();
+            return;
+        }
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            forget(node.getChild(i));
+        }
+    }
+
+   /**
+    * Method to find the id of a pseudo or followed memory home, numbering
+    * it and making room for it if it is new.
+    *
+    * @param RtlNode node
+    * @return int id, -1 if node is neither
+    **/
+    private int varOf(RtlNode node) {
+        int var = numbering.number(node);
+        if (var >= var_vn.length) {
+            var_vn = Arrays.copyOf(var_vn, var_vn.length * 2);
+            var_stamp = Arrays.copyOf(var_stamp, var_stamp.length * 2);
+            var_node = Arrays.copyOf(var_node, var_node.length * 2);
+        }
+        return var;
+    }
+
+    private static boolean isIdentity(RtlNode plus) {
+        for (int i = 0; i < 2; i++) {
+            RtlNode operand = plus.getChild(i);
+            if (operand.getType() == InstructionType.CONST_INT && operand.getValue() == 0)
+                return true;
+        }
+        return false;
+    }
+
+   /**
+    * @return boolean true if a SET to node writes nothing this pass
+    *         follows, a hard register
+    **/
+    private static boolean isPlainDestination(RtlNode node) {
+        switch (node.getType()) {
+            case REG:
+            case REG_I:
+            case REG_F:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * This is the Log class, the levelled logger all tracing of the compiler
+ * goes through instead of System.out.println.
+ *
+ * The level is a plain static int, so asking whether a level is on is a
+ * load and a compare. A message that has to be built is guarded at the
+ * call site,
+ *
+ *     if (Log.on(Log.TRACE))
+ *         Log.trace("BB: " + block);
+ *
+ * so with tracing off no string is ever put together. The default level is
+ * INFO, which only reports a line or two per compile.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+public final class Log {
+
+    public static final int OFF = 0;
+    public static final int ERROR = 1;
+    public static final int WARN = 2;
+    public static final int INFO = 3;
+    public static final int DEBUG = 4;
+    public static final int TRACE = 5;
+
+    private static final String[] NAMES = { "off", "error", "warn", "info", "debug", "trace" };
+
+    private static int level = INFO;
+
+    private Log() {}
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public static int getLevel() { return level; }
+    public static void setLevel(int new_level) { level = new_level; }
+
+   /**
+    * @param String name off, error, warn, info, debug or trace
+    * @return int the level, -1 if name is not one
+    **/
+    public static int parseLevel(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    public static boolean on(int at) { return at <= level; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+    public static void error(String message) { log(ERROR, message); }
+    public static void warn(String message) { log(WARN, message); }
+    public static void info(String message) { log(INFO, message); }
+    public static void debug(String message) { log(DEBUG, message); }
+    public static void trace(String message) { log(TRACE, message); }
+
+    private static void log(int at, String message) {
+        if (at <= level)
+            System.out.println(message);
+    }
+}
@@ -0,0 +1,384 @@
+/**
+ * This is the OpcodeTable class, the registry of RTL codes, machine modes
+ * and flags seen at the head of every S Expression.
+ *
+ * A head token such as "mem/c:SI" is split into its code (mem), its flags
+ * (/c) and its machine mode (SI). Each distinct head token is interned once
+ * into a dense id, and its code, mode, flags and InstructionType are stored
+ * in arrays indexed by that id, so classifying a node is an array lookup.
+ *
+ * Codes GCC knows about but the backend does not handle are classified as
+ * DEFAULT. Codes that are not RTL codes at all are still interned under
+ * their own name but classified as UNKNOWN, so they can be reported instead
+ * of silently looking like a known code.
+ *
+ * Lookups never lock. Adding a new head token copies the tables under a lock
+ * and publishes the copy, so many threads can parse at once.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public final class OpcodeTable {
+
+    /* Mode of a head token without one, e.g. (set ...) */
+    public static final int VOIDmode = 0;
+
+    /* Head id of string literals such as ("printint") */
+    public static final int LITERAL = 0;
+
+    /* Every code in GCC's rtl.def the dumps can contain */
+    private static final String[] RTL_CODES = {
+        "UnKnown", "value", "debug_expr", "expr_list", "insn_list",
+        "int_list", "sequence", "address", "debug_insn", "insn", "jump_insn",
+        "call_insn", "jump_table_data", "barrier", "code_label", "note",
+        "cond_exec", "parallel", "asm_input", "asm_operands",
+        "unspec", "unspec_volatile", "addr_vec", "addr_diff_vec",
+        "prefetch", "set", "use", "clobber", "call", "return",
+        "simple_return", "eh_return", "trap_if", "const_int", "const_fixed",
+        "const_double", "const_vector", "const_string", "const", "pc",
+        "reg", "scratch", "subreg", "strict_low_part", "concat", "concatn",
+        "mem", "label_ref", "symbol_ref", "cc0", "if_then_else", "compare",
+        "plus", "minus", "neg", "mult", "ss_mult", "us_mult", "div",
+        "ss_div", "us_div", "mod", "udiv", "umod", "and", "ior", "xor",
+        "not", "ashift", "rotate", "ashiftrt", "lshiftrt", "rotatert",
+        "smin", "smax", "umin", "umax", "pre_dec", "pre_inc", "post_dec",
+        "post_inc", "pre_modify", "post_modify", "ne", "eq", "ge", "gt",
+        "le", "lt", "geu", "gtu", "leu", "ltu", "unordered", "ordered",
+        "uneq", "unge", "ungt", "unle", "unlt", "ltgt", "sign_extend",
+        "zero_extend", "truncate", "float_extend", "float_truncate",
+        "float", "fix", "unsigned_float", "unsigned_fix", "abs", "sqrt",
+        "bswap", "ffs", "clrsb", "clz", "ctz", "popcount", "parity",
+        "sign_extract", "zero_extract", "high", "lo_sum", "vec_merge",
+        "vec_select", "vec_concat", "vec_duplicate", "ss_plus", "us_plus",
+        "ss_minus", "ss_neg", "us_neg", "ss_abs", "ss_ashift", "us_ashift",
+        "us_minus", "ss_truncate", "us_truncate", "fma", "var_location",
+        "debug_implicit_ptr", "entry_value", "debug_parameter_ref", "nil"
+    };
+
+    /* Machine modes, VOIDmode first so that it gets id 0 */
+    private static final String[] MODES = {
+        "VOID", "BLK", "BI", "QI", "HI", "SI", "DI", "TI", "SF", "DF",
+        "CC", "CC_NOOV", "CC_Z", "CC_C", "CC_N", "CCFP", "CCFPE"
+    };
+
+    /* Mode classes the rules below are written against. A QI and a DI reg
+     * are both REG, so the type says what a node is, not how wide it is;
+     * anything that computes with a value checks RtlNode.isWord first */
+    private static final String[] INT_MODES = { "QI", "HI", "SI", "DI" };
+    private static final String[] CC_MODES = { "CC", "CC_NOOV", "CC_Z", "CC_C", "CC_N" };
+
+    /* Integer comparisons of the condition codes against zero */
+    private static final String[] COMPARISONS = {
+        "eq", "ne", "gt", "ge", "lt", "le", "gtu", "geu", "ltu", "leu"
+    };
+
+   /**
+    * Classification rules. A head is given the type of the first rule whose
+    * code is one of its codes, whose mode is one of its modes (null for any
+    * mode) and whose flags are all present on the head (null for any
+    * flags). Codes and modes are a single name or an array of names.
+    **/
+    private static final Object[][] RULES = {
+        { "insn", null, null, InstructionType.INSN },
+        { "note", null, null, InstructionType.NOTE },
+        { "barrier", null, null, InstructionType.BARRIER },
+        { "code_label", null, null, InstructionType.CODE_LABEL },
+        { "jump_insn", null, null, InstructionType.JUMP_INSN },
+        { "call_insn", null, null, InstructionType.CALL },
+        { "set", null, null, InstructionType.SET },
+        { "use", null, null, InstructionType.USE },
+        { "reg", INT_MODES, "f", InstructionType.REG_F },
+        { "reg", INT_MODES, "i", InstructionType.REG_I },
+        { "reg", INT_MODES, null, InstructionType.REG },
+        { "reg", CC_MODES, null, InstructionType.REG_CC },
+        { "compare", CC_MODES, null, InstructionType.COMPARE_CC },
+        { "mem", INT_MODES, "c", InstructionType.MEM_C },
+        { "plus", INT_MODES, null, InstructionType.PLUS },
+        { "const_int", null, null, InstructionType.CONST_INT },
+        { "label_ref", null, null, InstructionType.LABEL_REF },
+        { "pc", null, null, InstructionType.PC },
+        { "if_then_else", null, null, InstructionType.IF_THEN_ELSE },
+        { COMPARISONS, null, null, InstructionType.COMPARISON },
+        { "symbol_ref", INT_MODES, null, InstructionType.SYMBOL_REF },
+    };
+
+    private static final HashMap<String, Integer> code_ids = new HashMap<>();
+    private static final ArrayList<String> code_names = new ArrayList<>();
+    private static final HashMap<String, Integer> mode_ids = new HashMap<>();
+    private static final ArrayList<String> mode_names = new ArrayList<>();
+    private static int known_codes;
+
+    private static volatile Table table = new Table(64, 16);
+
+    static {
+        for (String code : RTL_CODES) {
+            codeId(code);
+        }
+        known_codes = code_names.size();
+        for (String mode : MODES) {
+            modeId(mode);
+        }
+        table = table.withHead("\"\"", hash("\"\"", 0, 2), codeId("UnKnown"),
+                               VOIDmode, 0, InstructionType.DEFAULT);
+    }
+
+    private OpcodeTable() { }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public static InstructionType getType(int head) { return table.types[head]; }
+    public static int getCode(int head) { return table.codes[head]; }
+    public static int getMode(int head) { return table.modes[head]; }
+    public static int getFlags(int head) { return table.flags[head]; }
+    public static String getHead(int head) { return table.heads[head]; }
+    public static int size() { return table.count; }
+
+    public static boolean hasFlag(int head, char flag) {
+        return (table.flags[head] & flagBit(flag)) != 0;
+    }
+
+    public static boolean isKnown(int head) {
+        return head == LITERAL || table.codes[head] < known_codes;
+    }
+
+    public static synchronized String getCodeName(int code) { return code_names.get(code); }
+    public static synchronized String getModeName(int mode) { return mode_names.get(mode); }
+
+   /**
+    * Method to look up the id of an RTL code by name, e.g. "plus".
+    *
+    * @param String name
+    * @return int code id, -1 if the code has never been seen
+    **/
+    public static synchronized int findCode(String name) {
+        Integer id = code_ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+   /**
+    * Method to look up the id of a machine mode by name, e.g. "CC".
+    *
+    * @param String name
+    * @return int mode id, -1 if the mode has never been seen
+    **/
+    public static synchronized int findMode(String name) {
+        Integer id = mode_ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+/****************************
+ * INTERNING METHODS
+ ***************************/
+   /**
+    * Method to get the dense id of the head token source[start, end). The
+    * hit path only hashes the characters and compares them against the
+    * table, nothing is allocated.
+    *
+    * @param CharSequence source
+    * @param int start
+    * @param int end
+    * @return int head id
+    **/
+    public static int intern(CharSequence source, int start, int end) {
+        if (source.charAt(start) == '"') {
+            return LITERAL;
+        }
+
+        int hash = hash(source, start, end);
+        int id = table.find(source, start, end, hash);
+        if (id >= 0) {
+            return id;
+        }
+        return add(source.subSequence(start, end).toString(), hash);
+    }
+
+    private static synchronized int add(String head, int hash) {
+        Table current = table;
+        int id = current.find(head, 0, head.length(), hash);
+        if (id >= 0) {
+            return id;
+        }
+
+        /* Split "code/flags:MODE" */
+        int colon = head.indexOf(':');
+        int slash = head.indexOf('/');
+        int code_end = slash >= 0 ? slash : (colon >= 0 ? colon : head.length());
+        int flags_end = colon >= 0 ? colon : head.length();
+
+        int code = codeId(head.substring(0, code_end));
+        int mode = colon >= 0 ? modeId(head.substring(colon + 1)) : VOIDmode;
+        int flags = 0;
+        for (int i = code_end; i < flags_end; i++) {
+            if (head.charAt(i) != '/') {
+                flags |= flagBit(head.charAt(i));
+            }
+        }
+
+        Table next = current.withHead(head, hash, code, mode, flags, classify(code, mode, flags));
+        table = next;
+        return next.count - 1;
+    }
+
+    private static InstructionType classify(int code, int mode, int flags) {
+        if (code >= known_codes) {
+            return InstructionType.UNKNOWN;
+        }
+
+        for (Object[] rule : RULES) {
+            if (!isOneOf(code, rule[0], code_ids)) {
+                continue;
+            }
+            if (rule[1] != null && !isOneOf(mode, rule[1], mode_ids)) {
+                continue;
+            }
+            if (rule[2] != null && (flags & flagBit(((String) rule[2]).charAt(0))) == 0) {
+                continue;
+            }
+            return (InstructionType) rule[3];
+        }
+        return InstructionType.DEFAULT;
+    }
+
+    private static boolean isOneOf(int id, Object names, HashMap<String, Integer> ids) {
+        if (names instanceof String) {
+            return id == ids.get(names);
+        }
+        for (String name : (String[]) names) {
+            if (id == ids.get(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int codeId(String name) {
+        Integer id = code_ids.get(name);
+        if (id == null) {
+            id = code_names.size();
+            code_ids.put(name, id);
+            code_names.add(name);
+        }
+        return id;
+    }
+
+    private static int modeId(String name) {
+        Integer id = mode_ids.get(name);
+        if (id == null) {
+            id = mode_names.size();
+            mode_ids.put(name, id);
+            mode_names.add(name);
+        }
+        return id;
+    }
+
+    private static int flagBit(char flag) {
+        return flag >= 'a' && flag <= 'z' ? 1 << (flag - 'a') : 0;
+    }
+
+    private static int hash(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash;
+    }
+
+   /**
+    * Snapshot of the interned heads. An open addressing table maps a head
+    * token to its id, and the per id arrays hold what it was split into.
+    * A Table is never changed once published.
+    **/
+    private static final class Table {
+
+        final String[] keys;
+        final int[] slots;
+        final String[] heads;
+        final int[] codes;
+        final int[] modes;
+        final int[] flags;
+        final InstructionType[] types;
+        final int count;
+
+        Table(int buckets, int capacity) {
+            keys = new String[buckets];
+            slots = new int[buckets];
+            heads = new String[capacity];
+            codes = new int[capacity];
+            modes = new int[capacity];
+            flags = new int[capacity];
+            types = new InstructionType[capacity];
+            count = 0;
+        }
+
+        private Table(Table from, int buckets, int capacity) {
+            keys = new String[buckets];
+            slots = new int[buckets];
+            heads = Arrays.copyOf(from.heads, capacity);
+            codes = Arrays.copyOf(from.codes, capacity);
+            modes = Arrays.copyOf(from.modes, capacity);
+            flags = Arrays.copyOf(from.flags, capacity);
+            types = Arrays.copyOf(from.types, capacity);
+            count = from.count + 1;
+
+            for (int id = 0; id < from.count; id++) {
+                String head = from.heads[id];
+                place(head, hash(head, 0, head.length()), id);
+            }
+        }
+
+        int find(CharSequence source, int start, int end, int hash) {
+            int mask = keys.length - 1;
+            for (int b = hash & mask; keys[b] != null; b = (b + 1) & mask) {
+                String key = keys[b];
+                if (key.length() == end - start && matches(key, source, start)) {
+                    return slots[b];
+                }
+            }
+            return -1;
+        }
+
+        Table withHead(String head, int hash, int code, int mode, int flag_bits,
+                       InstructionType type) {
+            int buckets = keys.length;
+            if ((count + 1) * 2 > buckets) {
+                buckets *= 2;
+            }
+            int capacity = count < heads.length ? heads.length : heads.length * 2;
+
+            Table next = new Table(this, buckets, capacity);
+            int id = count;
+            next.heads[id] = head;
+            next.codes[id] = code;
+            next.modes[id] = mode;
+            next.flags[id] = flag_bits;
+            next.types[id] = type;
+            next.place(head, hash, id);
+            return next;
+        }
+
+        private void place(String head, int hash, int id) {
+            int mask = keys.length - 1;
+            int b = hash & mask;
+            while (keys[b] != null) {
+                b = (b + 1) & mask;
+            }
+            keys[b] = head;
+            slots[b] = id;
+        }
+
+        private static boolean matches(String key, CharSequence source, int start) {
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != source.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
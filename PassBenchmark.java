@@ -0,0 +1,157 @@
+/**
+ * This is the PassBenchmark class, the Benchmark suites that time one
+ * back end pass over an expand file: liveness, building the interference
+ * graph, and the two register allocators against each other.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+public class PassBenchmark {
+
+    private PassBenchmark() { }
+
+/**************************
+ * Suites
+ **************************/
+   /**
+    * Runs the liveness calculation over the same graph passes times and
+    * reports time, heap after a GC and the total number of RtlNodes under
+    * the Instructions for each pass. Instructions are parsed once, so the
+    * node count must not move between passes; if it does the suite exits
+    * with status 1, which is what make check looks at.
+    *
+    * @param File file
+    * @param int passes
+    **/
+    static void liveness(File file, int passes) throws Exception {
+        HashMap<Integer, Integer> bb_map = new HashMap<>();
+        ArrayList<LinkedList<Instruction>> graph = Benchmark.loadGraph(file, bb_map);
+        Runtime runtime = Runtime.getRuntime();
+
+        BasicBlockGraph bb_graph = new BasicBlockGraph(graph, bb_map);
+        long nodes = countNodes(graph);
+        StringBuilder results = new StringBuilder();
+        boolean moved = false;
+
+        for (int pass = 1; pass <= passes; pass++) {
+            long start = System.nanoTime();
+            bb_graph.calculateLiveInSet();
+            long ns = System.nanoTime() - start;
+
+            System.gc();
+            long heap = runtime.totalMemory() - runtime.freeMemory();
+            long count = countNodes(graph);
+            moved |= count != nodes;
+
+            results.append(String.format("pass %4d %10.3f ms %10d KB heap %10d nodes%s%n",
+                    pass, ns / 1e6, heap / 1024, count,
+                    count == nodes ? "" : " (was " + nodes + ")"));
+        }
+        System.out.print(results);
+        if (moved) {
+            System.out.println("Liveness changed the number of nodes under the insns");
+            System.exit(1);
+        }
+    }
+
+   /**
+    * Builds the interference graph of the file over and over and reports
+    * its size and the average build time. Liveness is solved once up front
+    * and is not part of the time.
+    *
+    * @param File file
+    * @param int iterations
+    **/
+    static void interference(File file, int iterations) throws Exception {
+        HashMap<Integer, Integer> bb_map = new HashMap<>();
+        ArrayList<LinkedList<Instruction>> graph = Benchmark.loadGraph(file, bb_map);
+        ControlFlowGraph[] built = new ControlFlowGraph[1];
+
+        Benchmark.quietly(() -> built[0] = new ControlFlowGraph(graph, bb_map));
+        Liveness liveness = new Liveness(built[0]);
+        liveness.solve();
+
+        InterferenceGraph interference = new InterferenceGraph(liveness);
+        System.out.println(file.getName() + ": " + interference.getNumNodes() + " nodes, "
+                + interference.getNumEdges() + " edges, " + interference.getNumMoves() + " moves, "
+                + interference.getSizeInBytes() / 1024 + " KB");
+
+        double ns = Benchmark.measure(iterations, () ->
+                Benchmark.sink += new InterferenceGraph(liveness).getNumEdges());
+        Benchmark.report("InterferenceGraph", file.length(), ns);
+        System.out.printf("%-24s %10.1f ns/node%n", "", ns / Math.max(1, interference.getNumNodes()));
+    }
+
+   /**
+    * Compares the graph colouring and linear scan allocators. Liveness is
+    * solved once up front; the colouring time includes building the
+    * interference graph, which linear scan does not need. Spills are the
+    * number of candidates each allocator sends to the stack.
+    *
+    * @param File file
+    * @param int iterations
+    **/
+    static void regalloc(File file, int iterations) throws Exception {
+        HashMap<Integer, Integer> bb_map = new HashMap<>();
+        ArrayList<LinkedList<Instruction>> graph = Benchmark.loadGraph(file, bb_map);
+        ControlFlowGraph[] built = new ControlFlowGraph[1];
+
+        Benchmark.quietly(() -> built[0] = new ControlFlowGraph(graph, bb_map));
+        Liveness liveness = new Liveness(built[0]);
+        liveness.solve();
+
+        RegisterAllocator coloring = new ColoringAllocator(new InterferenceGraph(liveness), liveness);
+        RegisterAllocator linear = new LinearScanAllocator(liveness);
+        coloring.allocate(new HashMap<>(), new Counter());
+        linear.allocate(new HashMap<>(), new Counter());
+
+        System.out.println(file.getName() + ": " + liveness.getNumRegisters() + " registers, "
+                + coloring.getNumCandidates() + " candidates");
+        System.out.printf("%-24s %10d spilled%n", "graph colouring", coloring.getNumSpilled());
+        System.out.printf("%-24s %10d spilled%n", "linear scan", linear.getNumSpilled());
+
+        double coloring_ns = Benchmark.measure(iterations, () -> {
+            RegisterAllocator allocator =
+                new ColoringAllocator(new InterferenceGraph(liveness), liveness);
+            allocator.allocate(new HashMap<>(), new Counter());
+            Benchmark.sink += allocator.getNumSpilled();
+        });
+        double linear_ns = Benchmark.measure(iterations, () -> {
+            RegisterAllocator allocator = new LinearScanAllocator(liveness);
+            allocator.allocate(new HashMap<>(), new Counter());
+            Benchmark.sink += allocator.getNumSpilled();
+        });
+        Benchmark.report("graph colouring", file.length(), coloring_ns);
+        Benchmark.report("linear scan", file.length(), linear_ns);
+        System.out.printf("speedup: %.1fx%n", coloring_ns / linear_ns);
+    }
+
+/**************************
+ * Helper Methods
+ **************************/
+    private static long countNodes(ArrayList<LinkedList<Instruction>> graph) {
+        long count = 0;
+        for (LinkedList<Instruction> block : graph) {
+            for (Instruction insn : block) {
+                for (int i = 0; i < insn.getNumOperands(); i++) {
+                    count += countNodes(insn.getOperand(i));
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long countNodes(RtlNode node) {
+        long count = 1;
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            count += countNodes(node.getChild(i));
+        }
+        return count;
+    }
+}
@@ -0,0 +1,971 @@
+/**
+ * This is the PeepholeOptimizer class, which cleans up the ARM code of a
+ * function between instruction selection and the ASM file.
+ *
+ * It is an AssemblyEmitter that keeps the instructions of the function
+ * instead of writing them. finish runs the passes below until nothing
+ * changes and hands what is left to the real emitter.
+ *
+ *   forward   walks each block keeping which register holds the value of
+ *             each stack slot and which register is a copy of which.
+ *             A reload of a slot becomes a mov from the register that
+ *             holds it, or nothing. A store of a value the slot already
+ *             holds goes, and so does a store overwritten before anything
+ *             reads it. Uses of a copy are replaced with its source.
+ *   unloaded  removes stores to slots no instruction ever loads, as long
+ *             as the function never takes the address of its frame.
+ *   dead      removes mov, mvn, add, sub and ldr whose result is dead.
+ *   rules     slides a window over the code and rewrites it with the
+ *             rules in RULES.
+ *
+ * A rule is written like the code it matches, e.g.
+ *
+ *     "mov T, #K ; add|sub D, S, T"  ->  "%1 D, S, #K"
+ *
+ * Upper case words are registers, [M] a memory operand, #K an immediate
+ * and ?X any operand; a name used twice must match the same operand. %1
+ * is the mnemonic the second instruction had. A rule may also have a
+ * guard, usually that a register it gets rid of is dead afterwards.
+ * Liveness is worked out over the blocks of the emitted code; the return
+ * value r0 is live into the epilogue and fp and sp are always live.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class PeepholeOptimizer extends AssemblyEmitter {
+
+    private static final int MAX_ROUNDS = 4;
+
+    private static final int FP = 11;
+    private static final int IP = 12;
+    private static final int SP = 13;
+    private static final int LR = 14;
+    private static final int PC = 15;
+    private static final String[] NAMES = {
+        "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7", "r8", "r9", "r10",
+        "fp", "r12", "sp", "lr", "pc"
+    };
+
+    private static final int ALL = 0xffff;
+    private static final int PINNED = bit(FP) | bit(SP);
+    private static final int EXIT_LIVE = bit(0) | PINNED;
+    private static final int CALL_USES = bit(0) | bit(1) | bit(2) | bit(3);
+    private static final int CALL_DEFS = CALL_USES | bit(IP) | bit(LR);
+
+    private static final String[] BRANCHES = {
+        "b", "beq", "bne", "bgt", "bge", "blt", "ble", "bhi", "bhs", "blo", "bls",
+        "bmi", "bpl", "bcs", "bcc", "bvs", "bvc", "bal"
+    };
+
+    private static final int INSTRUCTION = 0;
+    private static final int LABEL = 1;
+    private static final int TEXT = 2;
+
+    private static final Rule[] RULES = {
+        new Rule("self move", "mov A, A", "", null),
+        new Rule("store then reload", "str A, [M] ; ldr A, [M]", "str A, [M]", null),
+        new Rule("store then load", "str A, [M] ; ldr B, [M]", "str A, [M] ; mov B, A", null),
+        new Rule("load then store back", "ldr A, [M] ; str A, [M]", "ldr A, [M]",
+                 (m) -> !m.isBase("A", "[M]")),
+        new Rule("store over store", "str A, [M] ; str B, [M]", "str B, [M]", null),
+        new Rule("fold immediate", "mov T, #K ; add|sub D, S, T", "%1 D, S, #K",
+                 (m) -> !m.same("T", "S") && m.deadAfter("T", 1)),
+        new Rule("fold immediate", "mov T, #K ; add D, T, S", "add D, S, #K",
+                 (m) -> !m.same("T", "S") && m.deadAfter("T", 1)),
+        new Rule("fold immediate", "mov T, #K ; cmp|cmn S, T", "%1 S, #K",
+                 (m) -> !m.same("T", "S") && m.deadAfter("T", 1)),
+        new Rule("fold result", "add|sub T, X, ?Y ; mov D, T", "%0 D, X, ?Y",
+                 (m) -> m.deadAfter("T", 1)),
+        new Rule("fold result", "mov|mvn|ldr T, ?X ; mov D, T", "%0 D, ?X",
+                 (m) -> m.deadAfter("T", 1)),
+        new Rule("fold copy", "mov T, S ; str T, [M]", "str S, [M]",
+                 (m) -> m.deadAfter("T", 1) && !m.isBase("T", "[M]")),
+    };
+
+    private final AssemblyEmitter out;
+    private ArrayList<Op> ops = new ArrayList<>();
+
+    /* What the forward pass knows at the current instruction: the
+     * register holding the value of a slot and the other way round, stores
+     * nothing has read yet, the register each one is a copy of, the slot
+     * each one was loaded from, the slots that are copies of another and
+     * the constant a register was given with mov and a slot stored from
+     * such a register holds */
+    private final HashMap<String, Integer> slot_reg = new HashMap<>();
+    private final ArrayList<ArrayList<String>> reg_slots = new ArrayList<>();
+    private final HashMap<String, Integer> pending = new HashMap<>();
+    private final int[] copy_of = new int[NAMES.length];
+    private final String[] reg_from = new String[NAMES.length];
+    private final HashMap<String, SlotCopy> slot_copy = new HashMap<>();
+    private final HashMap<String, Integer> slot_version = new HashMap<>();
+    private final String[] reg_const = new String[NAMES.length];
+    private final HashMap<String, String> slot_const = new HashMap<>();
+
+    private int num_before;
+    private int num_handed;
+    private int num_removed;
+    private int num_total_removed;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param AssemblyEmitter out where finish writes the optimized code
+    **/
+    public PeepholeOptimizer(AssemblyEmitter out) {
+        this.out = out;
+        for (int reg = 0; reg < NAMES.length; reg++) {
+            reg_slots.add(new ArrayList<>());
+        }
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+   /**
+    * @return int instructions the last finish was handed
+    **/
+    public int getNumBefore() { return num_before; }
+
+   /**
+    * @return int instructions the last finish removed
+    **/
+    public int getNumRemoved() { return num_removed; }
+
+    public int getTotalRemoved() { return num_total_removed; }
+
+   /**
+    * @return int instructions handed over so far, before any are removed,
+    *         so that the distance to a literal pool is never underestimated
+    **/
+    public int getNumInstructions() { return num_handed; }
+
+/**************************
+ * Emitter methods, kept until finish
+ **************************/
+    public void directive(String directive) { text("\t" + directive + "\n"); }
+    public void directive(String directive, String arg) { text("\t" + directive + " " + arg + "\n"); }
+    public void label(String name) { ops.add(new Op(LABEL, null, null, name)); }
+    public void label(String prefix, int number) { label(prefix + number); }
+    public void comment(String text) { text("\t@ " + text + "\n"); }
+    public void raw(String text) { text(text); }
+    public void raw(byte[] bytes) { text(new String(bytes, StandardCharsets.ISO_8859_1)); }
+
+    public void op(String mnemonic, String a) {
+        ops.add(new Op(INSTRUCTION, mnemonic, new String[] { a }, null));
+        num_handed++;
+    }
+
+    public void op(String mnemonic, String a, String b) {
+        ops.add(new Op(INSTRUCTION, mnemonic, new String[] { a, b }, null));
+        num_handed++;
+    }
+
+    public void op(String mnemonic, String a, int imm) {
+        op(mnemonic, a, "#" + imm);
+    }
+
+    public void op(String mnemonic, String a, String b, String c) {
+        ops.add(new Op(INSTRUCTION, mnemonic, new String[] { a, b, c }, null));
+        num_handed++;
+    }
+
+    public void op(String mnemonic, String a, String b, int imm) {
+        op(mnemonic, a, b, "#" + imm);
+    }
+
+   /**
+    * Same as finish, the buffered code is written when it is done.
+    **/
+    public void flush() { finish(); }
+    public void close() { finish(); }
+
+    private void text(String text) {
+        ops.add(new Op(TEXT, null, null, text));
+    }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to optimize the code emitted since the last finish and write
+    * it to the real emitter.
+    *
+    * @return int number of instructions removed
+    **/
+    public int finish() {
+        num_before = countInstructions();
+
+        boolean changed = true;
+        for (int round = 0; changed && round < MAX_ROUNDS; round++) {
+            changed = forward();
+            changed |= removeUnloadedStores();
+            computeLiveness();
+            changed |= removeDeadDefs();
+            computeLiveness();
+            changed |= applyRules();
+        }
+
+        num_removed = num_before - countInstructions();
+        num_total_removed += num_removed;
+        for (Op op : ops) {
+            write(op);
+        }
+        ops = new ArrayList<>();
+        return num_removed;
+    }
+
+   /**
+    * The forward pass, see the class comment.
+    *
+    * @return boolean true if anything changed
+    **/
+    private boolean forward() {
+        boolean changed = false;
+        forgetAll();
+
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            if (op.kind != INSTRUCTION || !isKnown(op.mnemonic)) {
+                forgetAll();
+                continue;
+            }
+
+            /* Read registers through their copies */
+            int first_use = isAlu(op.mnemonic) ? 1 : 0;
+            if (op.mnemonic.equals("ldr") || op.mnemonic.equals("bl") || isBranch(op.mnemonic))
+                first_use = op.operands.length;
+            for (int k = first_use; k < op.operands.length; k++) {
+                int reg = register(op.operands[k]);
+                if (reg >= 0 && copy_of[reg] >= 0) {
+                    op.operands[k] = NAMES[copy_of[reg]];
+                    changed = true;
+                }
+            }
+
+            switch (op.mnemonic) {
+                case "ldr": {
+                    String slot = frameSlot(op.operands[1]);
+                    int dst = register(op.operands[0]);
+                    if (slot == null) {
+                        if (op.operands[1].startsWith("["))
+                            pending.clear();
+                        kill(dst);
+                        break;
+                    }
+
+                    /* A slot that is a copy of another is read from that
+                     * one, which may leave the copy unloaded */
+                    SlotCopy copy = slot_copy.get(slot);
+                    if (copy != null && copy.version == version(copy.slot)) {
+                        slot = copy.slot;
+                        op.operands[1] = slot;
+                        changed = true;
+                    }
+                    pending.remove(slot);
+
+                    Integer holder = slot_reg.get(slot);
+                    if (holder != null && holder == dst) {
+                        ops.set(i, null);
+                        changed = true;
+                        break;
+                    }
+                    kill(dst);
+                    String constant = slot_const.get(slot);
+                    if (holder != null) {
+                        ops.set(i, new Op(INSTRUCTION, "mov", new String[] { NAMES[dst], NAMES[holder] }, null));
+                        copy_of[dst] = holder;
+                        changed = true;
+                    } else if (constant != null) {
+                        ops.set(i, new Op(INSTRUCTION, "mov", new String[] { NAMES[dst], constant }, null));
+                        changed = true;
+                    }
+                    reg_const[dst] = constant;
+                    slot_reg.put(slot, dst);
+                    reg_slots.get(dst).add(slot);
+                    reg_from[dst] = slot;
+                    break;
+                }
+                case "str": {
+                    String slot = frameSlot(op.operands[1]);
+                    int src = register(op.operands[0]);
+                    if (slot == null) {
+                        forgetAll();
+                        break;
+                    }
+                    Integer holder = slot_reg.get(slot);
+                    String constant = src >= 0 ? reg_const[src] : null;
+                    if ((holder != null && holder == src)
+                            || (constant != null && constant.equals(slot_const.get(slot)))) {
+                        ops.set(i, null);
+                        changed = true;
+                        break;
+                    }
+                    if (constant != null)
+                        slot_const.put(slot, constant);
+                    else
+                        slot_const.remove(slot);
+                    Integer overwritten = pending.get(slot);
+                    if (overwritten != null) {
+                        ops.set(overwritten, null);
+                        changed = true;
+                    }
+                    pending.put(slot, i);
+                    slot_reg.put(slot, src);
+                    reg_slots.get(src).add(slot);
+
+                    slot_version.merge(slot, 1, Integer::sum);
+                    slot_copy.remove(slot);
+                    String from = reg_from[src];
+                    if (from != null && !from.equals(slot))
+                        slot_copy.put(slot, new SlotCopy(from, version(from)));
+
+                    /* Registers loaded from slot hold its old value now */
+                    for (int reg = 0; reg < reg_from.length; reg++) {
+                        if (slot.equals(reg_from[reg]))
+                            reg_from[reg] = null;
+                    }
+                    break;
+                }
+                case "mov": {
+                    int dst = register(op.operands[0]);
+                    int src = register(op.operands[1]);
+                    kill(dst);
+                    if (src >= 0 && src != dst && (bit(src) & PINNED) == 0) {
+                        copy_of[dst] = src;
+                        reg_from[dst] = reg_from[src];
+                        reg_const[dst] = reg_const[src];
+                    } else if (op.operands[1].startsWith("#")) {
+                        reg_const[dst] = op.operands[1];
+                    }
+                    break;
+                }
+                case "bl":
+                    forgetAll();
+                    break;
+                case "cmp":
+                case "cmn":
+                    break;
+                default:
+                    if (isBranch(op.mnemonic)) {
+                        pending.clear();
+                        if (op.mnemonic.equals("b"))
+                            forgetAll();
+                    } else {
+                        kill(register(op.operands[0]));
+                    }
+                    break;
+            }
+        }
+
+        compact();
+        return changed;
+    }
+
+   /**
+    * Method to remove stores to frame slots nothing loads from.
+    *
+    * @return boolean true if anything changed
+    **/
+    private boolean removeUnloadedStores() {
+        HashMap<String, Integer> loads = new HashMap<>();
+        for (Op op : ops) {
+            if (op.kind != INSTRUCTION)
+                continue;
+            if (op.mnemonic.equals("ldr")) {
+                String slot = frameSlot(op.operands[1]);
+                if (slot != null)
+                    loads.merge(slot, 1, Integer::sum);
+                else if (op.operands[1].startsWith("["))
+                    return false;
+            }
+            /* The frame pointer as a value means a local can be reached
+             * some other way */
+            for (int k = 0; k < op.operands.length; k++) {
+                int reg = register(op.operands[k]);
+                if (reg == FP || reg == SP)
+                    return false;
+            }
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            if (op.kind == INSTRUCTION && op.mnemonic.equals("str")) {
+                String slot = frameSlot(op.operands[1]);
+                if (slot != null && !loads.containsKey(slot)) {
+                    ops.set(i, null);
+                    changed = true;
+                }
+            }
+        }
+        compact();
+        return changed;
+    }
+
+   /**
+    * Method to remove instructions that only set a register that is dead
+    * after them.
+    *
+    * @return boolean true if anything changed
+    **/
+    private boolean removeDeadDefs() {
+        boolean changed = false;
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            if (op.kind != INSTRUCTION || !(isAlu(op.mnemonic) || op.mnemonic.equals("ldr")))
+                continue;
+            int dst = register(op.operands[0]);
+            if (dst >= 0 && (bit(dst) & (op.live_after | PINNED)) == 0) {
+                ops.set(i, null);
+                changed = true;
+            }
+        }
+        compact();
+        return changed;
+    }
+
+   /**
+    * Method to run the rules over the code. Each instruction is appended
+    * to the result and the rules are tried on the instructions that now
+    * end it, so a rewrite can set up another one with what came before.
+    *
+    * @return boolean true if anything changed
+    **/
+    private boolean applyRules() {
+        boolean changed = false;
+        ArrayList<Op> result = new ArrayList<>(ops.size());
+        Match match = new Match();
+
+        for (Op op : ops) {
+            result.add(op);
+            boolean rewrote = true;
+            while (rewrote) {
+                rewrote = false;
+                for (Rule rule : RULES) {
+                    if (match.tryRule(rule, result)) {
+                        match.rewrite(result);
+                        rewrote = true;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        ops = result;
+        return changed;
+    }
+
+/**************************
+ * Liveness
+ **************************/
+   /**
+    * Method to set live_after of every instruction. Blocks start at a
+    * label and after a branch; a branch to a label that is not in the
+    * function, like the epilogue, and falling off the end both go to
+    * the exit, where only the return value is live.
+    **/
+    private void computeLiveness() {
+        int n = ops.size();
+        int[] start = new int[n + 1];
+        int num_blocks = 0;
+        HashMap<String, Integer> block_of_label = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            Op op = ops.get(i);
+            boolean after_branch = i > 0 && ops.get(i - 1).kind == INSTRUCTION
+                                   && isBranch(ops.get(i - 1).mnemonic);
+            if (num_blocks == 0 || ((op.kind == LABEL || after_branch) && start[num_blocks - 1] != i))
+                start[num_blocks++] = i;
+            if (op.kind == LABEL)
+                block_of_label.put(op.text, num_blocks - 1);
+        }
+        start[num_blocks] = n;
+
+        /* Successors, -1 for the exit */
+        int[][] succs = new int[num_blocks][];
+        for (int b = 0; b < num_blocks; b++) {
+            int fall = b + 1 < num_blocks ? b + 1 : -1;
+            Op last = ops.get(start[b + 1] - 1);
+            if (last.kind == INSTRUCTION && isBranch(last.mnemonic)) {
+                Integer target = block_of_label.get(last.operands[0]);
+                int to = target == null ? -1 : target;
+                succs[b] = last.mnemonic.equals("b") ? new int[] { to } : new int[] { to, fall };
+            } else {
+                succs[b] = new int[] { fall };
+            }
+        }
+
+        for (Op op : ops) {
+            op.uses = uses(op);
+            op.defs = defs(op);
+        }
+
+        int[] live_in = new int[num_blocks];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = num_blocks - 1; b >= 0; b--) {
+                int live = 0;
+                for (int succ : succs[b])
+                    live |= succ < 0 ? EXIT_LIVE : live_in[succ];
+                for (int i = start[b + 1] - 1; i >= start[b]; i--) {
+                    Op op = ops.get(i);
+                    op.live_after = live | PINNED;
+                    live = (live & ~op.defs) | op.uses;
+                }
+                if (live != live_in[b]) {
+                    live_in[b] = live;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static int uses(Op op) {
+        if (op.kind != INSTRUCTION)
+            return op.kind == TEXT ? ALL : 0;
+
+        String[] o = op.operands;
+        switch (op.mnemonic) {
+            case "mov":
+            case "mvn":
+            case "add":
+            case "sub":
+                return registers(o, 1);
+            case "cmp":
+            case "cmn":
+                return registers(o, 0);
+            case "ldr":
+                return registers(o, 1);
+            case "str":
+                return registers(o, 0);
+            case "bl":
+                return CALL_USES;
+            default:
+                return isBranch(op.mnemonic) ? 0 : ALL;
+        }
+    }
+
+    private static int defs(Op op) {
+        if (op.kind != INSTRUCTION)
+            return 0;
+        if (isAlu(op.mnemonic) || op.mnemonic.equals("ldr"))
+            return bit(register(op.operands[0]));
+        if (op.mnemonic.equals("bl"))
+            return CALL_DEFS;
+        return 0;
+    }
+
+   /**
+    * @return int the registers operands from first on read, including the
+    *         base of a memory operand
+    **/
+    private static int registers(String[] operands, int first) {
+        int mask = 0;
+        for (int k = first; k < operands.length; k++) {
+            String operand = operands[k];
+            if (operand.startsWith("[")) {
+                int end = operand.indexOf(',');
+                mask |= bit(register(operand, 1, end < 0 ? operand.length() - 1 : end));
+            } else {
+                mask |= bit(register(operand));
+            }
+        }
+        return mask;
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private void forgetAll() {
+        slot_reg.clear();
+        for (ArrayList<String> slots : reg_slots)
+            slots.clear();
+        pending.clear();
+        slot_copy.clear();
+        Arrays.fill(copy_of, -1);
+        Arrays.fill(reg_from, null);
+        slot_const.clear();
+        Arrays.fill(reg_const, null);
+    }
+
+   /**
+    * Method to forget everything known about the value of reg, which is
+    * about to change.
+    *
+    * @param int reg
+    **/
+    private void kill(int reg) {
+        if (reg < 0)
+            return;
+        for (String slot : reg_slots.get(reg)) {
+            Integer holder = slot_reg.get(slot);
+            if (holder != null && holder == reg)
+                slot_reg.remove(slot);
+        }
+        reg_slots.get(reg).clear();
+        copy_of[reg] = -1;
+        reg_from[reg] = null;
+        reg_const[reg] = null;
+        for (int other = 0; other < copy_of.length; other++) {
+            if (copy_of[other] == reg)
+                copy_of[other] = -1;
+        }
+    }
+
+    private int version(String slot) {
+        Integer version = slot_version.get(slot);
+        return version == null ? 0 : version;
+    }
+
+    private void compact() {
+        ArrayList<Op> kept = new ArrayList<>(ops.size());
+        for (Op op : ops) {
+            if (op != null)
+                kept.add(op);
+        }
+        ops = kept;
+    }
+
+    private int countInstructions() {
+        int count = 0;
+        for (Op op : ops) {
+            if (op.kind == INSTRUCTION)
+                count++;
+        }
+        return count;
+    }
+
+    private void write(Op op) {
+        if (op.kind == LABEL) {
+            out.label(op.text);
+        } else if (op.kind == TEXT) {
+            out.raw(op.text);
+        } else if (op.operands.length == 1) {
+            out.op(op.mnemonic, op.operands[0]);
+        } else if (op.operands.length == 2) {
+            out.op(op.mnemonic, op.operands[0], op.operands[1]);
+        } else {
+            out.op(op.mnemonic, op.operands[0], op.operands[1], op.operands[2]);
+        }
+    }
+
+   /**
+    * @param String operand
+    * @return String operand if it is a slot of the frame, [fp, #-8], null
+    *         otherwise
+    **/
+    private static String frameSlot(String operand) {
+        return operand.startsWith("[fp") ? operand : null;
+    }
+
+    private static int register(String operand) {
+        return register(operand, 0, operand.length());
+    }
+
+   /**
+    * @param String text
+    * @param int from
+    * @param int to
+    * @return int the register named by text[from, to), -1 if it is not one
+    **/
+    private static int register(String text, int from, int to) {
+        int length = to - from;
+        if (length == 2) {
+            char a = text.charAt(from);
+            char b = text.charAt(from + 1);
+            if (a == 'f' && b == 'p') return FP;
+            if (a == 'i' && b == 'p') return IP;
+            if (a == 's' && b == 'p') return SP;
+            if (a == 'l' && b == 'r') return LR;
+            if (a == 'p' && b == 'c') return PC;
+        }
+        if (length < 2 || length > 3 || text.charAt(from) != 'r')
+            return -1;
+        int reg = 0;
+        for (int i = from + 1; i < to; i++) {
+            char ch = text.charAt(i);
+            if (ch < '0' || ch > '9')
+                return -1;
+            reg = reg * 10 + (ch - '0');
+        }
+        return reg < NAMES.length ? reg : -1;
+    }
+
+    private static int bit(int reg) {
+        return reg < 0 ? 0 : 1 << reg;
+    }
+
+    private static boolean isAlu(String mnemonic) {
+        return mnemonic.equals("mov") || mnemonic.equals("mvn")
+            || mnemonic.equals("add") || mnemonic.equals("sub");
+    }
+
+    private static boolean isBranch(String mnemonic) {
+        for (String branch : BRANCHES) {
+            if (branch.equals(mnemonic))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isKnown(String mnemonic) {
+        return isAlu(mnemonic) || isBranch(mnemonic) || mnemonic.equals("ldr")
+            || mnemonic.equals("str") || mnemonic.equals("cmp") || mnemonic.equals("cmn")
+            || mnemonic.equals("bl");
+    }
+
+/**************************
+ * Rule table types
+ **************************/
+   /**
+    * An instruction, label or piece of text in the buffered code.
+    **/
+    static final class Op {
+        final int kind;
+        final String mnemonic;
+        final String[] operands;
+        final String text;
+
+        /* registers live right after it, and the ones it reads and
+         * writes, set by computeLiveness */
+        int live_after = ALL;
+        int uses;
+        int defs;
+
+        Op(int kind, String mnemonic, String[] operands, String text) {
+            this.kind = kind;
+            this.mnemonic = mnemonic;
+            this.operands = operands;
+            this.text = text;
+        }
+    }
+
+   /**
+    * A slot holding the same value as another slot had when its version
+    * was version.
+    **/
+    static final class SlotCopy {
+        final String slot;
+        final int version;
+
+        SlotCopy(String slot, int version) {
+            this.slot = slot;
+            this.version = version;
+        }
+    }
+
+    interface Guard {
+        boolean test(Match match);
+    }
+
+   /**
+    * A rule, the instructions it matches, what they are replaced with
+    * (nothing for "") and an optional guard.
+    **/
+    static final class Rule {
+        final String name;
+        final String[][] match;
+        final String[][] mnemonics;
+        final String[][] replace;
+        final Guard guard;
+
+        Rule(String name, String match, String replace, Guard guard) {
+            this.name = name;
+            this.match = parse(match);
+            this.mnemonics = new String[this.match.length][];
+            for (int i = 0; i < this.match.length; i++) {
+                mnemonics[i] = this.match[i][0].split("\\|");
+            }
+            this.replace = parse(replace);
+            this.guard = guard;
+        }
+
+       /**
+        * @return String[][] per instruction, the mnemonic followed by the
+        *         operands
+        **/
+        private static String[][] parse(String text) {
+            if (text.trim().isEmpty())
+                return new String[0][];
+            String[] lines = text.split(";");
+            String[][] out = new String[lines.length][];
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i].trim();
+                int space = line.indexOf(' ');
+                String[] operands = line.substring(space + 1).split(",");
+                out[i] = new String[operands.length + 1];
+                out[i][0] = line.substring(0, space);
+                for (int k = 0; k < operands.length; k++) {
+                    out[i][k + 1] = operands[k].trim();
+                }
+            }
+            return out;
+        }
+
+        public String toString() { return name; }
+    }
+
+   /**
+    * The bindings of the rule being tried against the end of the code.
+    **/
+    static final class Match {
+        private final String[] names = new String[8];
+        private final String[] values = new String[8];
+        private int count;
+        private Rule rule;
+        private Op[] window = new Op[4];
+
+        boolean tryRule(Rule rule, ArrayList<Op> code) {
+            int length = rule.match.length;
+            if (length > code.size())
+                return false;
+
+            /* The last instruction is the one new to the window, most
+             * rules fail on it */
+            int start = code.size() - length;
+            Op last = code.get(code.size() - 1);
+            if (last.kind != INSTRUCTION || !isOneOf(last.mnemonic, rule.mnemonics[length - 1]))
+                return false;
+
+            this.rule = rule;
+            this.count = 0;
+            for (int i = 0; i < length; i++) {
+                Op op = code.get(start + i);
+                window[i] = op;
+                if (op.kind != INSTRUCTION || !matches(rule.match[i], rule.mnemonics[i], op))
+                    return false;
+            }
+            return rule.guard == null || rule.guard.test(this);
+        }
+
+       /**
+        * Method to replace the matched instructions at the end of code
+        * with the rule's replacement, working out their live_after from
+        * that of the last one matched.
+        **/
+        void rewrite(ArrayList<Op> code) {
+            int length = rule.match.length;
+            int live = window[length - 1].live_after;
+            for (int i = 0; i < length; i++) {
+                code.remove(code.size() - 1);
+            }
+
+            Op[] made = new Op[rule.replace.length];
+            for (int i = 0; i < made.length; i++) {
+                String[] pattern = rule.replace[i];
+                String mnemonic = pattern[0].startsWith("%")
+                    ? window[pattern[0].charAt(1) - '0'].mnemonic : pattern[0];
+                String[] operands = new String[pattern.length - 1];
+                for (int k = 0; k < operands.length; k++) {
+                    operands[k] = substitute(pattern[k + 1]);
+                }
+                made[i] = new Op(INSTRUCTION, mnemonic, operands, null);
+            }
+            for (int i = made.length - 1; i >= 0; i--) {
+                made[i].live_after = live;
+                live = (live & ~defs(made[i])) | uses(made[i]) | PINNED;
+            }
+            for (Op op : made) {
+                code.add(op);
+            }
+        }
+
+        String get(String name) {
+            for (int i = 0; i < count; i++) {
+                if (names[i].equals(name))
+                    return values[i];
+            }
+            return null;
+        }
+
+        boolean same(String a, String b) {
+            return get(a).equals(get(b));
+        }
+
+       /**
+        * @param String name of a register in the rule
+        * @param int i instruction of the match
+        * @return boolean true if the register is dead right after it
+        **/
+        boolean deadAfter(String name, int i) {
+            int reg = register(get(name));
+            return reg >= 0 && (bit(reg) & (window[i].live_after | PINNED)) == 0;
+        }
+
+       /**
+        * @return boolean true if the register is the base of the memory
+        *         operand
+        **/
+        boolean isBase(String name, String memory) {
+            return (bit(register(get(name))) & registers(new String[] { get(memory) }, 0)) != 0;
+        }
+
+        private boolean matches(String[] pattern, String[] mnemonics, Op op) {
+            if (pattern.length - 1 != op.operands.length || !isOneOf(op.mnemonic, mnemonics))
+                return false;
+
+            for (int k = 1; k < pattern.length; k++) {
+                if (!bind(pattern[k], op.operands[k - 1]))
+                    return false;
+            }
+            return true;
+        }
+
+        private static boolean isOneOf(String mnemonic, String[] options) {
+            for (String option : options) {
+                if (option.equals(mnemonic))
+                    return true;
+            }
+            return false;
+        }
+
+        private boolean bind(String pattern, String operand) {
+            String name;
+            String value;
+            if (pattern.startsWith("[")) {
+                if (!operand.startsWith("["))
+                    return false;
+                name = pattern;
+                value = operand;
+            } else if (pattern.startsWith("#")) {
+                if (!operand.startsWith("#"))
+                    return false;
+                name = pattern;
+                value = operand;
+            } else if (pattern.startsWith("?")) {
+                name = pattern;
+                value = operand;
+            } else if (Character.isUpperCase(pattern.charAt(0))) {
+                if (register(operand) < 0)
+                    return false;
+                name = pattern;
+                value = operand;
+            } else {
+                return pattern.equals(operand);
+            }
+
+            String bound = get(name);
+            if (bound != null)
+                return bound.equals(value);
+            names[count] = name;
+            values[count] = value;
+            count++;
+            return true;
+        }
+
+        private String substitute(String pattern) {
+            if (pattern.startsWith("#") || pattern.startsWith("[") || pattern.startsWith("?")
+                    || Character.isUpperCase(pattern.charAt(0)))
+                return get(pattern);
+            return pattern;
+        }
+    }
+}
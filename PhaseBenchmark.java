@@ -0,0 +1,311 @@
+/**
+ * This is the PhaseBenchmark class, the Benchmark suites that time the
+ * compiler as it is: each phase on its own over a few inputs, and the
+ * whole compile over synthetic inputs of doubling size. Both can write
+ * their results as JSON, and compare prints two such files side by side.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PhaseBenchmark {
+
+    private static final int SCALING_ROUNDS = 5;
+
+    private static final Pattern RESULT = Pattern.compile(
+        "\"phase\": \"([^\"]*)\", \"input\": \"([^\"]*)\".*\"ms_per_op\": ([0-9.]+)");
+
+    private PhaseBenchmark() { }
+
+/**************************
+ * Suites
+ **************************/
+   /**
+    * Times each phase of the compiler on its own over every input: RTL
+    * scanning, S Expression parsing, CFG build, liveness, labelling the
+    * SETs for instruction selection, selection and emission of the ARM
+    * text, and the whole compile of the file as GenerateAssembly does it.
+    * Each phase gets what the phases before it produce built once up
+    * front, so only the phase itself is in the time, and is reported as
+    * the mean and standard deviation of its measured rounds after the warm
+    * up ones. --json=FILE writes the results, one per line, for compare.
+    *
+    * @param String[] args the inputs and options after "phases"
+    **/
+    static void phases(String[] args) throws Exception {
+        int iterations = Benchmark.DEFAULT_ITERATIONS;
+        File json = null;
+        ArrayList<String> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--iterations="))
+                iterations = Integer.parseInt(args[i].substring("--iterations=".length()));
+            else if (args[i].startsWith("--json="))
+                json = new File(args[i].substring("--json=".length()));
+            else
+                inputs.add(args[i]);
+        }
+
+        ArrayList<String> results = new ArrayList<>();
+        System.out.printf("%-10s %-28s %12s %10s %10s%n", "phase", "input", "ms/op", "+-", "MB/s");
+        for (String input : inputs) {
+            boolean synthetic = input.startsWith("synthetic:");
+            File file = synthetic
+                    ? Benchmark.syntheticFile(Integer.parseInt(input.substring("synthetic:".length())))
+                    : new File(input);
+            String name = synthetic ? input : file.getName();
+            long bytes = file.length();
+
+            ArrayList<String> sexps = new ArrayList<>();
+            RTLReader reader = new RTLReader(file);
+            CharSequence sexp;
+            while ((sexp = reader.next()) != null) {
+                sexps.add(sexp.toString());
+            }
+
+            HashMap<Integer, Integer> bb_map = new HashMap<>();
+            ArrayList<LinkedList<Instruction>> graph = Benchmark.loadGraph(file, bb_map);
+            ControlFlowGraph cfg = new ControlFlowGraph(graph, bb_map);
+
+            /* every register on the stack, as with --regalloc=none */
+            HashMap<String, String> reg_map = new HashMap<>();
+            ArrayList<Instruction> selected = new ArrayList<>();
+            for (LinkedList<Instruction> block : graph) {
+                for (Instruction insn : block) {
+                    insn.findRegisters(reg_map, new Counter());
+                    if (Benchmark.isSelected(insn))
+                        selected.add(insn);
+                }
+            }
+            InstructionSelector selector = new InstructionSelector(reg_map, bb_map);
+            CompilationContext context = new CompilationContext();
+            context.setThreads(1);
+
+            phase(results, "scan", name, bytes, iterations, () ->
+                    Benchmark.sink += Benchmark.mappedScan(file));
+            phase(results, "parse", name, bytes, iterations, () -> {
+                for (String insn : sexps) Benchmark.sink += Benchmark.linearParse(insn);
+            });
+            phase(results, "cfg", name, bytes, iterations, () ->
+                    Benchmark.sink += new ControlFlowGraph(graph, bb_map).size());
+            phase(results, "liveness", name, bytes, iterations, () -> {
+                Liveness liveness = new Liveness(cfg);
+                liveness.solve();
+                Benchmark.sink += liveness.getIterations();
+            });
+            phase(results, "label", name, bytes, iterations, () -> {
+                for (Instruction insn : selected) {
+                    if (insn.getSExp().getType() == InstructionType.SET)
+                        Benchmark.sink += selector.label(insn.getSExp()).cost[0];
+                }
+            });
+            phase(results, "emit", name, bytes, iterations, () -> {
+                AssemblyEmitter out = new AssemblyEmitter(new ByteArrayOutputStream());
+                for (Instruction insn : selected) selector.select(insn, out, -1);
+                out.flush();
+                Benchmark.sink += out.getBytesWritten();
+            });
+            phase(results, "compile", name, bytes, iterations, () ->
+                    context.compile(file, OutputStream.nullOutputStream()));
+        }
+
+        if (json != null) {
+            try (FileWriter writer = new FileWriter(json)) {
+                writer.write("[\n" + String.join(",\n", results) + "\n]\n");
+            }
+            System.out.println("Wrote " + json);
+        }
+    }
+
+   /**
+    * Compiles synthetic inputs of doubling size, from --from to --to
+    * pseudos in blocks of --insns insns with loops nested --loops deep,
+    * and prints the compile time and the bytes allocated at each size. The
+    * exponents are the slopes of time and of allocation against size on a
+    * log scale since the size before, about 1 for a compiler that scales
+    * linearly and 2 for a quadratic one; sizes where either goes over 1.5
+    * are marked. Allocation does not depend on the machine, so it shows a
+    * regression even when the times are noisy. Each size is compiled once
+    * untimed and then SCALING_ROUNDS times on one thread, after the JIT has
+    * warmed up on the smallest. --json=FILE writes the results for compare.
+    *
+    * @param String[] args the options after "scaling"
+    **/
+    static void scaling(String[] args) throws Exception {
+        int from = 1000;
+        int to = 32000;
+        File json = null;
+        RTLGenerator generator = new RTLGenerator();
+        CompilationContext context = new CompilationContext();
+        context.setThreads(1);
+        for (int i = 1; i < args.length; i++) {
+            String value = args[i].substring(args[i].indexOf('=') + 1);
+            if (args[i].startsWith("--from="))
+                from = Integer.parseInt(value);
+            else if (args[i].startsWith("--to="))
+                to = Integer.parseInt(value);
+            else if (args[i].startsWith("--loops="))
+                generator.setLoopDepth(Integer.parseInt(value));
+            else if (args[i].startsWith("--insns="))
+                generator.setInsnsPerBlock(Integer.parseInt(value));
+            else if (args[i].startsWith("--regalloc="))
+                context.setRegalloc(value);
+            else if (args[i].startsWith("--json="))
+                json = new File(value);
+        }
+
+        File file = File.createTempFile("scaling", ".expand");
+        file.deleteOnExit();
+        generateScaling(generator, from, file);
+        for (int i = 0; i < Benchmark.WARMUP; i++) {
+            context.compile(file, OutputStream.nullOutputStream());
+        }
+
+        ArrayList<String> results = new ArrayList<>();
+        System.out.printf("%10s %8s %10s %12s %10s %12s %9s %9s%n", "pseudos", "blocks",
+                          "insns", "ms", "+-", "alloc MB", "time exp", "alloc exp");
+        double last_ms = 0;
+        long last_bytes = 0;
+        int last = 0;
+        for (int pseudos = from; pseudos <= to; pseudos *= 2) {
+            generateScaling(generator, pseudos, file);
+            context.compile(file, OutputStream.nullOutputStream());
+
+            double[] ms = new double[SCALING_ROUNDS];
+            double mean = 0;
+            for (int i = 0; i < ms.length; i++) {
+                long start = System.nanoTime();
+                context.compile(file, OutputStream.nullOutputStream());
+                ms[i] = (System.nanoTime() - start) / 1e6;
+                mean += ms[i] / ms.length;
+            }
+            double variance = 0;
+            for (double m : ms) {
+                variance += (m - mean) * (m - mean) / (ms.length - 1);
+            }
+            double stddev = Math.sqrt(variance);
+
+            PhaseTimer report = context.getTimeReport();
+            long bytes = report.getAllocatedBytes();
+            double growth = Math.log(pseudos / (double) last);
+            double time_exponent = last == 0 ? 0 : Math.log(mean / last_ms) / growth;
+            double alloc_exponent = last == 0 ? 0 : Math.log(bytes / (double) last_bytes) / growth;
+            System.out.printf("%10d %8d %10d %12.3f %10.3f %12.1f %9s %9s%s%n", pseudos,
+                              report.getCounter("blocks"), report.getCounter("insns parsed"),
+                              mean, stddev, bytes / (1024.0 * 1024.0),
+                              last == 0 ? "" : String.format("%.2f", time_exponent),
+                              last == 0 ? "" : String.format("%.2f", alloc_exponent),
+                              time_exponent > 1.5 || alloc_exponent > 1.5 ? " *" : "");
+            results.add(json("scaling-" + context.getRegalloc(), "synthetic:" + pseudos,
+                             ms.length, mean, stddev, file.length()));
+            last = pseudos;
+            last_ms = mean;
+            last_bytes = bytes;
+        }
+
+        if (json != null) {
+            try (FileWriter writer = new FileWriter(json)) {
+                writer.write("[\n" + String.join(",\n", results) + "\n]\n");
+            }
+            System.out.println("Wrote " + json);
+        }
+    }
+
+   /**
+    * Prints each phase and input of two --json files side by side with the
+    * change from the old time to the new one.
+    *
+    * @param File old_json
+    * @param File new_json
+    **/
+    static void compare(File old_json, File new_json) throws Exception {
+        HashMap<String, Double> before = readResults(old_json);
+        HashMap<String, Double> after = readResults(new_json);
+
+        System.out.printf("%-39s %12s %12s %8s%n", "phase input", "old ms/op", "new ms/op", "change");
+        for (String key : after.keySet()) {
+            Double old_ms = before.get(key);
+            double new_ms = after.get(key);
+            if (old_ms == null) {
+                System.out.printf("%-39s %12s %12.3f %8s%n", key, "-", new_ms, "new");
+            } else {
+                System.out.printf("%-39s %12.3f %12.3f %+7.1f%%%n", key, old_ms, new_ms,
+                                  100.0 * (new_ms - old_ms) / old_ms);
+            }
+        }
+    }
+
+/**************************
+ * Helper Methods
+ **************************/
+    private static void generateScaling(RTLGenerator generator, int pseudos,
+                                        File file) throws Exception {
+        generator.setNumPseudos(pseudos);
+        generator.setNumBlocks(Math.max(2, pseudos / generator.getInsnsPerBlock()));
+        generator.write(file);
+    }
+
+   /**
+    * Method to time one phase on one input, printing it and adding it to
+    * results as a line of JSON.
+    **/
+    private static void phase(ArrayList<String> results, String phase, String input,
+                              long bytes, int iterations, Benchmark.Body body) throws Exception {
+        for (int i = 0; i < Benchmark.WARMUP; i++) {
+            body.run();
+        }
+
+        double[] ms = new double[iterations];
+        double mean = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            body.run();
+            ms[i] = (System.nanoTime() - start) / 1e6;
+            mean += ms[i] / iterations;
+        }
+        double variance = 0;
+        for (double m : ms) {
+            variance += (m - mean) * (m - mean) / Math.max(1, iterations - 1);
+        }
+        double stddev = Math.sqrt(variance);
+
+        System.out.printf("%-10s %-28s %12.4f %10.4f %10.2f%n", phase, input, mean, stddev,
+                          (bytes / (1024.0 * 1024.0)) / (mean / 1e3));
+        results.add(json(phase, input, iterations, mean, stddev, bytes));
+    }
+
+   /**
+    * @return String one result as a line of JSON, the form compare reads
+    **/
+    private static String json(String phase, String input, int iterations,
+                               double mean, double stddev, long bytes) {
+        return String.format("  {\"phase\": \"%s\", \"input\": \"%s\", \"iterations\": %d, "
+                             + "\"ms_per_op\": %.6f, \"stddev_ms\": %.6f, \"bytes\": %d}",
+                             phase, input, iterations, mean, stddev, bytes);
+    }
+
+   /**
+    * @param File json written by phases
+    * @return HashMap<String, Double> "phase input" -> ms/op, in file order
+    **/
+    private static HashMap<String, Double> readResults(File json) throws Exception {
+        HashMap<String, Double> results = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(json.toPath())) {
+            Matcher m = RESULT.matcher(line);
+            if (m.find())
+                results.put(m.group(1) + " " + m.group(2), Double.parseDouble(m.group(3)));
+        }
+        return results;
+    }
+}
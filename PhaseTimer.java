@@ -0,0 +1,208 @@
+/**
+ * This is the PhaseTimer class, which records where a compile spends its
+ * time, like gcc's -ftime-report.
+ *
+ * Each FunctionCompiler has one and brackets every phase with begin and
+ * end, which note the wall time and the bytes the thread allocated in
+ * between. Phases are not nested, and a function is compiled on a single
+ * thread, so one pair of marks is enough. Counters hold the size of
+ * things: insns parsed, blocks, pseudos, liveness iterations, spills,
+ * instructions emitted. The CompilationContext adds the timers of all its
+ * functions together into one report, printed as a table or as JSON.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PhaseTimer {
+
+    public static final int SPLIT = 0;
+    public static final int PARSE = 1;
+    public static final int SCCP = 2;
+    public static final int LVN = 3;
+    public static final int DCE = 4;
+    public static final int CFG = 5;
+    public static final int LIVENESS = 6;
+    public static final int INTERFERENCE = 7;
+    public static final int REGALLOC = 8;
+    public static final int LAYOUT = 9;
+    public static final int SELECT = 10;
+    public static final int PEEPHOLE = 11;
+    public static final int WRITE = 12;
+
+    private static final String[] NAMES = {
+        "split", "parse", "sccp", "lvn", "dce", "cfg", "liveness", "interference",
+        "regalloc", "layout", "select", "peephole", "write"
+    };
+
+    /* null if the JVM cannot count the bytes a thread allocates */
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final long[] wall_ns = new long[NAMES.length];
+    private final long[] alloc_bytes = new long[NAMES.length];
+    private final int[] calls = new int[NAMES.length];
+    private final LinkedHashMap<String, Long> counters = new LinkedHashMap<>();
+
+    /* the phase running and where it started */
+    private int phase = -1;
+    private long start_ns;
+    private long start_bytes;
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public long getWallNanos(int phase) { return wall_ns[phase]; }
+    public long getAllocatedBytes(int phase) { return alloc_bytes[phase]; }
+
+   /**
+    * @return long bytes allocated in all the phases together
+    **/
+    public long getAllocatedBytes() {
+        long total = 0;
+        for (long bytes : alloc_bytes)
+            total += bytes;
+        return total;
+    }
+
+   /**
+    * @param String name
+    * @return long value of the counter, 0 if it was never counted
+    **/
+    public long getCounter(String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to start timing a phase, ending the one running if there is
+    * one.
+    *
+    * @param int phase
+    **/
+    public void begin(int phase) {
+        if (this.phase >= 0)
+            end();
+        this.phase = phase;
+        this.start_bytes = allocatedBytes();
+        this.start_ns = System.nanoTime();
+    }
+
+    public void end() {
+        if (phase < 0)
+            return;
+        wall_ns[phase] += System.nanoTime() - start_ns;
+        alloc_bytes[phase] += allocatedBytes() - start_bytes;
+        calls[phase]++;
+        phase = -1;
+    }
+
+   /**
+    * @param String name
+    * @param long amount added to the counter
+    **/
+    public void count(String name, long amount) {
+        counters.merge(name, amount, Long::sum);
+    }
+
+   /**
+    * Method to add the phases and counters of other to this one.
+    *
+    * @param PhaseTimer other
+    **/
+    public void add(PhaseTimer other) {
+        for (int i = 0; i < NAMES.length; i++) {
+            wall_ns[i] += other.wall_ns[i];
+            alloc_bytes[i] += other.alloc_bytes[i];
+            calls[i] += other.calls[i];
+        }
+        for (Map.Entry<String, Long> counter : other.counters.entrySet()) {
+            count(counter.getKey(), counter.getValue());
+        }
+    }
+
+   /**
+    * @param long total_ns wall time of the whole compile, which is less
+    *        than the phases added up when functions ran in parallel
+    * @return String the phases and counters as a table
+    **/
+    public String toTable(long total_ns) {
+        long phase_ns = 0;
+        long phase_bytes = 0;
+        for (int i = 0; i < NAMES.length; i++) {
+            phase_ns += wall_ns[i];
+            phase_bytes += alloc_bytes[i];
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-14s %6s %12s %6s %12s%n",
+                                 "phase", "calls", "wall ms", "%", "alloc KB"));
+        for (int i = 0; i < NAMES.length; i++) {
+            if (calls[i] == 0)
+                continue;
+            out.append(String.format("%-14s %6d %12.3f %6.1f %12d%n", NAMES[i], calls[i],
+                                     wall_ns[i] / 1e6,
+                                     phase_ns == 0 ? 0.0 : 100.0 * wall_ns[i] / phase_ns,
+                                     alloc_bytes[i] / 1024));
+        }
+        out.append(String.format("%-14s %6s %12.3f %6s %12d%n", "phases", "",
+                                 phase_ns / 1e6, "", phase_bytes / 1024));
+        out.append(String.format("%-14s %6s %12.3f%n", "wall", "", total_ns / 1e6));
+        out.append(String.format("%n%-24s %12s%n", "counter", "value"));
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            out.append(String.format("%-24s %12d%n", counter.getKey(), counter.getValue()));
+        }
+        return out.toString();
+    }
+
+   /**
+    * @param long total_ns wall time of the whole compile
+    * @return String the phases and counters as one JSON object
+    **/
+    public String toJson(long total_ns) {
+        StringBuilder out = new StringBuilder("{\"wall_ms\": ");
+        out.append(String.format("%.3f", total_ns / 1e6)).append(", \"phases\": [");
+        boolean first = true;
+        for (int i = 0; i < NAMES.length; i++) {
+            if (calls[i] == 0)
+                continue;
+            out.append(first ? "" : ", ");
+            out.append(String.format("{\"name\": \"%s\", \"calls\": %d, \"wall_ms\": %.3f, "
+                                     + "\"alloc_bytes\": %d}",
+                                     NAMES[i], calls[i], wall_ns[i] / 1e6, alloc_bytes[i]));
+            first = false;
+        }
+        out.append("], \"counters\": {");
+        first = true;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            out.append(first ? "" : ", ");
+            out.append('"').append(counter.getKey()).append("\": ").append(counter.getValue());
+            first = false;
+        }
+        return out.append("}}").toString();
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported())
+            return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
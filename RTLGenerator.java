@@ -0,0 +1,444 @@
+/**
+ * This is the RTLGenerator class, which writes synthetic expand files big
+ * enough to show how the compiler scales, using only the insn shapes real
+ * dumps like fib and addWithPrint have: set of a constant, a register, a
+ * plus or a load, stores to locals, compare, if_then_else and calls to
+ * printint.
+ *
+ * A function is laid out as structured code. Block 2 gives every local a
+ * value, the last block returns a pseudo in r0, and the blocks in between
+ * are straight line blocks of insns_per_block insns with loops nested
+ * loop_depth deep among them. Each loop is shaped like the for loop of
+ * fib: a block that zeroes the counter and jumps to the test, the body, a
+ * block adding one to the counter and the test, branching back while the
+ * counter is at most trips - 1. Loops at the same depth follow each other.
+ *
+ * Insns read pseudos defined before them in the function, most of the
+ * time one of the last 64 but one time in sixteen any of them, so some
+ * values stay live over many blocks. At most num_pseudos distinct pseudos
+ * are used, after that they are defined again from the first. The output
+ * only depends on the options and the seed, and the programs run in the
+ * ARMSimulator, so the allocators can be checked against each other.
+ *
+ * usage: java RTLGenerator [--blocks=N] [--loops=N] [--pseudos=N] [--insns=N]
+ *                          [--functions=N] [--trips=N] [--calls=on|off]
+ *                          [--seed=N] <expand file>
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class RTLGenerator {
+
+    private static final int FIRST_BLOCK = 2;
+    /* locals block 2 sets, the loop counters come after them */
+    private static final int NUM_LOCALS = 8;
+    private static final int RECENT = 64;
+
+    private int num_blocks = 64;
+    private int loop_depth = 2;
+    private int num_pseudos = 1024;
+    private int insns_per_block = 16;
+    private int num_functions = 1;
+    private int trips = 2;
+    private boolean calls = true;
+    private long seed = 42;
+
+    /* of the function being planned */
+    private Random random;
+    private ArrayList<Block> plan;
+    private ArrayList<Integer> defined;
+    private int num_defs;
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int getNumBlocks() { return num_blocks; }
+    public int getLoopDepth() { return loop_depth; }
+    public int getNumPseudos() { return num_pseudos; }
+    public int getInsnsPerBlock() { return insns_per_block; }
+
+   /**
+    * @param int num_blocks blocks of each function, at least 2
+    * @throws IllegalArgumentException if it is less
+    **/
+    public void setNumBlocks(int num_blocks) {
+        this.num_blocks = atLeast("blocks", num_blocks, 2);
+    }
+
+   /**
+    * @param int loop_depth loops nested at most this deep, 0 for none
+    * @throws IllegalArgumentException if it is negative
+    **/
+    public void setLoopDepth(int loop_depth) {
+        this.loop_depth = atLeast("loop depth", loop_depth, 0);
+    }
+
+    public void setNumPseudos(int num_pseudos) {
+        this.num_pseudos = atLeast("pseudos", num_pseudos, 1);
+    }
+
+    public void setInsnsPerBlock(int insns_per_block) {
+        this.insns_per_block = atLeast("insns per block", insns_per_block, 1);
+    }
+
+    public void setNumFunctions(int num_functions) {
+        this.num_functions = atLeast("functions", num_functions, 1);
+    }
+
+   /**
+    * @param int trips times each loop runs, the run time of the innermost
+    *        body grows as trips to the power of loop_depth
+    **/
+    public void setTrips(int trips) {
+        this.trips = atLeast("trips", trips, 1);
+    }
+
+    public void setCalls(boolean calls) { this.calls = calls; }
+    public void setSeed(long seed) { this.seed = seed; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+    public static void main(String[] args) throws IOException {
+        RTLGenerator generator = new RTLGenerator();
+        String output = null;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--blocks=")) {
+                    generator.setNumBlocks(Integer.parseInt(value(arg)));
+                } else if (arg.startsWith("--loops=")) {
+                    generator.setLoopDepth(Integer.parseInt(value(arg)));
+                } else if (arg.startsWith("--pseudos=")) {
+                    generator.setNumPseudos(Integer.parseInt(value(arg)));
+                } else if (arg.startsWith("--insns=")) {
+                    generator.setInsnsPerBlock(Integer.parseInt(value(arg)));
+                } else if (arg.startsWith("--functions=")) {
+                    generator.setNumFunctions(Integer.parseInt(value(arg)));
+                } else if (arg.startsWith("--trips=")) {
+                    generator.setTrips(Integer.parseInt(value(arg)));
+                } else if (arg.equals("--calls=on") || arg.equals("--calls=off")) {
+                    generator.setCalls(arg.endsWith("on"));
+                } else if (arg.startsWith("--seed=")) {
+                    generator.setSeed(Long.parseLong(value(arg)));
+                } else if (!arg.startsWith("--") && output == null) {
+                    output = arg;
+                } else {
+                    throw new IllegalArgumentException("unknown option " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            output = null;
+        }
+
+        if (output == null) {
+            System.out.print("usage: java RTLGenerator [--blocks=N] [--loops=N] [--pseudos=N] ");
+            System.out.print("[--insns=N] [--functions=N] [--trips=N] [--calls=on|off] ");
+            System.out.println("[--seed=N] <expand file>");
+            return;
+        }
+        generator.write(new File(output));
+    }
+
+   /**
+    * Method to write the functions to file.
+    *
+    * @param File file
+    **/
+    public void write(File file) throws IOException {
+        try (Writer out = new FileWriter(file)) {
+            write(out);
+        }
+    }
+
+   /**
+    * Method to write the functions to out. With more than one function the
+    * last is main and the others are f0, f1 and so on.
+    *
+    * @param Appendable out
+    **/
+    public void write(Appendable out) throws IOException {
+        random = new Random(seed);
+        for (int f = 0; f < num_functions; f++) {
+            String name = f == num_functions - 1 ? "main" : "f" + f;
+            planFunction();
+            writeFunction(out, name, f);
+        }
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to plan the blocks of one function and the insns in them.
+    **/
+    private void planFunction() {
+        plan = new ArrayList<>();
+        defined = new ArrayList<>();
+        num_defs = 0;
+
+        Block entry = newBlock();
+        for (int i = 0; i < NUM_LOCALS; i++) {
+            int reg = fresh();
+            entry.insns.add(insn(reg(reg), constant(random.nextInt(256))));
+            entry.insns.add(insn(local(i), reg(reg)));
+            defined.add(reg);
+        }
+
+        region(0, num_blocks - 2);
+
+        Block exit = newBlock();
+        exit.insns.add(insn("(reg/i:SI 0 r0)", reg(pick())));
+        exit.insns.add("(insn %1$d %2$d %3$d %4$d (use (reg/i:SI 0 r0)) \"synthetic.c\":1 -1\n"
+                       + "     (nil))\n");
+    }
+
+   /**
+    * Method to plan n blocks at loop depth level: straight line blocks
+    * once no deeper loop fits, otherwise a loop over half of them with
+    * straight blocks before it and the rest after it.
+    *
+    * @param int level
+    * @param int n
+    **/
+    private void region(int level, int n) {
+        while (n > 0) {
+            if (level == loop_depth || n < 4) {
+                for (int i = 0; i < n; i++) {
+                    straight();
+                }
+                return;
+            }
+            int size = Math.max(4, n / 2);
+            int before = (n - size) / 2;
+            for (int i = 0; i < before; i++) {
+                straight();
+            }
+            loop(level + 1, size);
+            n -= before + size;
+        }
+    }
+
+   /**
+    * Method to plan a loop of n blocks, three of them the counter and test
+    * around a body of n - 3 blocks. Pseudos first defined in the body are
+    * not read after the loop.
+    *
+    * @param int level depth of the loop, 1 for the outermost
+    * @param int n at least 4
+    **/
+    private void loop(int level, int n) {
+        int counter = NUM_LOCALS + level - 1;
+
+        Block preheader = newBlock();
+        int zero = fresh();
+        preheader.insns.add(insn(reg(zero), constant(0)));
+        preheader.insns.add(insn(local(counter), reg(zero)));
+
+        int body = plan.size() + FIRST_BLOCK;
+        int mark = defined.size();
+        region(level, n - 3);
+        while (defined.size() > mark)
+            defined.remove(defined.size() - 1);
+
+        Block latch = newBlock();
+        int old = fresh();
+        int next = fresh();
+        latch.insns.add(insn(reg(old), local(counter)));
+        latch.insns.add(insn(reg(next), "(plus:SI " + reg(old) + "\n            "
+                             + constant(1) + ")"));
+        latch.insns.add(insn(local(counter), reg(next)));
+
+        Block test = newBlock();
+        int value = fresh();
+        test.insns.add(insn(reg(value), local(counter)));
+        test.insns.add(insn("(reg:CC 100 cc)", "(compare:CC " + reg(value) + "\n            "
+                            + constant(trips - 1) + ")"));
+        test.target = body;
+        test.conditional = true;
+
+        preheader.target = test.num;
+    }
+
+    private void straight() {
+        Block block = newBlock();
+        for (int i = 0; i < insns_per_block; i++) {
+            int kind = random.nextInt(16);
+            if (kind < 2) {
+                define(block, constant(random.nextInt(256)));
+            } else if (kind < 4) {
+                block.insns.add(insn(local(random.nextInt(NUM_LOCALS)), reg(pick())));
+            } else if (kind < 7) {
+                define(block, local(random.nextInt(NUM_LOCALS)));
+            } else if (kind < 11) {
+                define(block, "(plus:SI " + reg(pick()) + "\n            " + reg(pick()) + ")");
+            } else if (kind < 14) {
+                define(block, "(plus:SI " + reg(pick()) + "\n            "
+                              + constant(random.nextInt(256)) + ")");
+            } else if (kind == 14 || !calls) {
+                define(block, reg(pick()));
+            } else {
+                block.insns.add(insn("(reg:SI 0 r0)", reg(pick())));
+                block.insns.add(CALL);
+            }
+        }
+    }
+
+   /**
+    * Method to add a set of a pseudo to src, picking the pseudo after the
+    * registers src reads.
+    **/
+    private void define(Block block, String src) {
+        int reg = fresh();
+        block.insns.add(insn(reg(reg), src));
+        defined.add(reg);
+    }
+
+    private int fresh() {
+        return Instruction.FIRST_PSEUDO + num_defs++ % num_pseudos;
+    }
+
+    private int pick() {
+        int n = defined.size();
+        if (n <= RECENT || random.nextInt(16) == 0)
+            return defined.get(random.nextInt(n));
+        return defined.get(n - 1 - random.nextInt(RECENT));
+    }
+
+    private Block newBlock() {
+        Block block = new Block(plan.size() + FIRST_BLOCK);
+        plan.add(block);
+        return block;
+    }
+
+   /**
+    * Method to write the planned function, numbering the insns in order.
+    * Every block but the first starts with a code_label, so any of them
+    * can be jumped to.
+    *
+    * @param Appendable out
+    * @param String name
+    * @param int number funcdef_no of the function
+    **/
+    private void writeFunction(Appendable out, String name, int number) throws IOException {
+        int[] labels = new int[plan.size() + FIRST_BLOCK];
+        int id = 1;
+        for (Block block : plan) {
+            if (block.num > FIRST_BLOCK)
+                labels[block.num] = id++;
+            id += 1 + block.insns.size();
+            if (block.target >= 0)
+                id += block.conditional ? 1 : 2;
+        }
+        int last = id - 1;
+
+        out.append(String.format(";; Function %s (%s, funcdef_no=%d, decl_uid=%d, "
+                                 + "cgraph_uid=%d, symbol_order=%d)%n%n", name, name,
+                                 number, number, number, number));
+        out.append(";;\n;; Full RTL generated for this function:\n;;\n");
+
+        id = 1;
+        for (Block block : plan) {
+            int bb = block.num;
+            if (bb > FIRST_BLOCK) {
+                out.append(String.format("(code_label %d %d %d %d %d (nil) [1 uses])%n",
+                                         id, id - 1, id + 1, bb, bb));
+                id++;
+            }
+            out.append(String.format("(note %d %d %d %d [bb %d] NOTE_INSN_BASIC_BLOCK)%n",
+                                     id, id - 1, id + 1, bb, bb));
+            id++;
+
+            for (String insn : block.insns) {
+                out.append(String.format(insn, id, id - 1, id == last ? 0 : id + 1, bb));
+                id++;
+            }
+
+            if (block.target < 0)
+                continue;
+            int label = labels[block.target];
+            String src = block.conditional
+                         ? "(if_then_else (le (reg:CC 100 cc)\n                (const_int 0 [0]))\n"
+                           + "            (label_ref " + label + ")\n            (pc))"
+                         : "(label_ref " + label + ")";
+            out.append(String.format("(jump_insn %d %d %d %d (set (pc)%n        %s) "
+                                     + "\"synthetic.c\":1 -1%n     (nil)%n -> %d)%n",
+                                     id, id - 1, id + 1, bb, src, label));
+            id++;
+            if (!block.conditional) {
+                out.append(String.format("(barrier %d %d %d)%n", id, id - 1, id + 1));
+                id++;
+            }
+        }
+        out.append("\n");
+    }
+
+    private static final String CALL =
+        "(call_insn %1$d %2$d %3$d %4$d (parallel [\n"
+        + "            (call (mem:SI (symbol_ref:SI (\"printint\") [flags 0x41]  "
+        + "<function_decl 0x768ba180 printint>) [0 printint S4 A32])\n"
+        + "                (const_int 0 [0]))\n"
+        + "            (use (const_int 0 [0]))\n"
+        + "            (clobber (reg:SI 14 lr))\n"
+        + "        ]) \"synthetic.c\":1 -1\n"
+        + "     (nil)\n"
+        + "    (expr_list (clobber (reg:SI 12 ip))\n"
+        + "        (expr_list:SI (use (reg:SI 0 r0))\n"
+        + "            (nil))))\n";
+
+   /**
+    * @return String format of a set insn, its id, prev, next and block
+    *         are arguments 1 to 4
+    **/
+    private static String insn(String dst, String src) {
+        return "(insn %1$d %2$d %3$d %4$d (set " + dst + "\n        " + src
+               + ") \"synthetic.c\":1 -1\n     (nil))\n";
+    }
+
+    private static String reg(int reg) {
+        return "(reg:SI " + reg + ")";
+    }
+
+    private static String constant(int value) {
+        return "(const_int " + value + " [0x" + Integer.toHexString(value) + "])";
+    }
+
+    private static String local(int i) {
+        int offset = -4 * (i + 1);
+        return "(mem/c:SI (plus:SI (reg/f:SI 105 virtual-stack-vars)\n                (const_int "
+               + offset + " [0x" + Long.toHexString(offset) + "])) [1 v" + i + "+0 S4 A32])";
+    }
+
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    private static int atLeast(String what, int value, int min) {
+        if (value < min)
+            throw new IllegalArgumentException(what + " must be at least " + min + ", not " + value);
+        return value;
+    }
+
+   /**
+    * A block of the plan: its insns as formats for insn, and the block it
+    * jumps to at the end, -1 if it falls through.
+    **/
+    private static final class Block {
+        final int num;
+        final ArrayList<String> insns = new ArrayList<>();
+        int target = -1;
+        boolean conditional;
+
+        Block(int num) {
+            this.num = num;
+        }
+    }
+}
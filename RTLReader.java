@@ -0,0 +1,242 @@
+/**
+ * This is the RTLReader class that scans an RTL expand file and hands back
+ * each top level S Expression (insn, note, code_label...) one at a time.
+ *
+ * The file is memory mapped through a FileChannel and scanned with a plain
+ * paren depth counter. Each S Expression is returned as a Slice that points
+ * into the mapped buffer, so nothing is copied until the caller asks for it.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+
+public class RTLReader {
+
+    private static final String FUNCTION_HEADER = ";; Function ";
+
+    private MappedByteBuffer buffer;
+    private int position;
+    private int limit;
+    private String function_name;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+    public RTLReader(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        this.position = 0;
+        this.limit = buffer.limit();
+        this.function_name = "main";
+    }
+
+    private RTLReader(MappedByteBuffer buffer, int start, int end, String function_name) {
+        this.buffer = buffer;
+        this.position = start;
+        this.limit = end;
+        this.function_name = function_name;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int getPosition() { return position; }
+    public int getLength() { return limit; }
+
+   /**
+    * @return String the function this reader is over, main if the file has
+    *         no ";; Function" header
+    **/
+    public String getFunctionName() { return function_name; }
+
+/****************************
+ * READER LOGIC METHODS
+ ***************************/
+   /**
+    * Method to get the next top level S Expression of the file. Anything
+    * outside of a balanced pair of parens (comments, partition info, ...) is
+    * skipped, and a stray closing paren at the top level is ignored.
+    *
+    * @return CharSequence slice of the S Expression, null at end of file
+    **/
+    public CharSequence next() {
+        int depth = 0;
+        int start = -1;
+
+        for (int i = position; i < limit; i++) {
+            byte b = buffer.get(i);
+
+            if (b == '(') {
+                if (depth == 0) {
+                    start = i;
+                }
+                depth++;
+            }
+            else if (b == ')' && depth > 0) {
+                depth--;
+                if (depth == 0) {
+                    position = i + 1;
+                    return new Slice(buffer, start, i + 1);
+                }
+            }
+        }
+
+        /* Unbalanced trailing S Expressions are dropped */
+        position = limit;
+        return null;
+    }
+
+   /**
+    * Method to feed the S Expressions left in the file to digest, with each
+    * run of white space as one space and everything outside of them, like
+    * the ";; Function" header and comments, left out. The reader does not
+    * move.
+    *
+    * @param MessageDigest digest
+    **/
+    public void digest(MessageDigest digest) {
+        byte[] chunk = new byte[8192];
+        int count = 0;
+        int depth = 0;
+        boolean space = false;
+
+        for (int i = position; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (depth == 0 && b == ';') {
+                /* a comment, the header's "(main, funcdef_no=0, ...)" too */
+                while (i + 1 < limit && buffer.get(i + 1) != '\n')
+                    i++;
+                continue;
+            } else if (b == '(') {
+                depth++;
+            } else if (depth == 0) {
+                continue;
+            } else if (b == ')') {
+                depth--;
+            } else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                space = true;
+                continue;
+            }
+
+            if (count + 2 > chunk.length) {
+                digest.update(chunk, 0, count);
+                count = 0;
+            }
+            if (space) {
+                chunk[count++] = ' ';
+                space = false;
+            }
+            chunk[count++] = b;
+        }
+        digest.update(chunk, 0, count);
+    }
+
+   /**
+    * Method to split the rest of the file into its functions, in the order
+    * they are in the file. A file without a ";; Function" header is one
+    * function, main.
+    *
+    * @return ArrayList<RTLReader> a reader over each function
+    **/
+    public ArrayList<RTLReader> splitFunctions() {
+        ArrayList<Integer> starts = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        int depth = 0;
+        boolean line_start = true;
+
+        for (int i = position; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (line_start && depth == 0 && b == ';' && startsWith(i, FUNCTION_HEADER)) {
+                starts.add(i);
+                names.add(functionName(i + FUNCTION_HEADER.length()));
+            }
+            if (b == '(')
+                depth++;
+            else if (b == ')' && depth > 0)
+                depth--;
+            line_start = b == '\n';
+        }
+
+        ArrayList<RTLReader> functions = new ArrayList<>();
+        if (starts.isEmpty()) {
+            functions.add(new RTLReader(buffer, position, limit, function_name));
+        }
+        for (int f = 0; f < starts.size(); f++) {
+            int end = f + 1 < starts.size() ? starts.get(f + 1) : limit;
+            functions.add(new RTLReader(buffer, starts.get(f), end, names.get(f)));
+        }
+        position = limit;
+        return functions;
+    }
+
+    private boolean startsWith(int at, String text) {
+        if (at + text.length() > limit)
+            return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.get(at + i) != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+   /**
+    * @param int at just past ";; Function "
+    * @return String the assembler name of the function, the first name in
+    *         "main (main, funcdef_no=0, ...)"
+    **/
+    private String functionName(int at) {
+        int open = at;
+        while (open < limit && buffer.get(open) != '(' && buffer.get(open) != '\n')
+            open++;
+        int start = open < limit && buffer.get(open) == '(' ? open + 1 : at;
+        int end = start;
+        while (end < limit && " ,)\n".indexOf(buffer.get(end)) < 0)
+            end++;
+        return new Slice(buffer, start, end).toString();
+    }
+
+   /**
+    * Read only view over a region of the mapped file. The RTL dumps are
+    * plain ASCII so every byte maps straight onto a char.
+    **/
+    static final class Slice implements CharSequence {
+
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final int end;
+
+        Slice(MappedByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int length() { return end - start; }
+
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xff);
+        }
+
+        public CharSequence subSequence(int from, int to) {
+            return new Slice(buffer, start + from, start + to);
+        }
+
+        public String toString() {
+            char[] chars = new char[end - start];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) (buffer.get(start + i) & 0xff);
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * This is the RegisterAllocator class, the part of register allocation
+ * every allocator shares: deciding which registers are candidates, their
+ * spill costs, handing out stack slots and building the frame.
+ *
+ * An allocator extends this class and colours the candidates in assign,
+ * see ColoringAllocator and LinearScanAllocator. A candidate left without
+ * a colour is spilled to a stack slot.
+ *
+ * The colours are r4 - r10, which survive calls, and r0, r1 and r12 for
+ * values that are never live across a call. r2 and r3 are never handed
+ * out; InstructionSelector loads spilled values into them, so a spill only
+ * needs a stack slot and nothing has to be redone. Hard registers that
+ * show up in the RTL, (reg:SI 0 r0), are precoloured.
+ *
+ * Memory homes of locals, mem[105, #-4], are coloured like pseudos as long
+ * as no insn takes the address of a local.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public abstract class RegisterAllocator {
+
+    protected static final int[] CALLEE_SAVED = { 4, 5, 6, 7, 8, 9, 10 };
+    protected static final int[] ANY_REGISTER = { 0, 1, 12, 4, 5, 6, 7, 8, 9, 10 };
+
+    /* pushed with the callee saved registers to keep sp 8 byte aligned */
+    private static final int PAD_REGISTER = 3;
+
+    protected static final int HARD = 0;
+    protected static final int PSEUDO = 1;
+    protected static final int HOME = 2;
+
+    protected final Liveness liveness;
+
+    /* indexed by the register ids of liveness */
+    protected int[] kind;
+    protected boolean[] candidate;
+    protected double[] spill_cost;
+    protected int[] color;
+
+    protected int num_candidates;
+    protected int num_colored;
+    protected int num_spilled;
+
+    private ArrayList<Integer> saved;
+    private int num_slots;
+    private long alloc_time;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param Liveness liveness, already solved
+    **/
+    protected RegisterAllocator(Liveness liveness) {
+        this.liveness = liveness;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public int getNumCandidates() { return num_candidates; }
+    public int getNumColored() { return num_colored; }
+    public int getNumSpilled() { return num_spilled; }
+
+   /**
+    * @return long nanoseconds allocate took
+    **/
+    public long getTime() { return alloc_time; }
+
+   /**
+    * @return int bytes below the saved registers used for stack slots, which
+    * is any multiple of 8, so writePrologue does not assume one sub holds it
+    **/
+    public int getFrameSize() { return (num_slots * 4 + 7) & ~7; }
+
+   /**
+    * Method to write the function entry, which saves the callee saved
+    * registers that were handed out and makes room for the stack slots.
+    *
+    * @param AssemblyEmitter out
+    **/
+    public void writePrologue(AssemblyEmitter out) {
+        out.op("push", "{" + savedList() + "fp, lr}");
+        if (saved.isEmpty()) {
+            out.op("mov", "fp", "sp");
+        } else {
+            out.op("add", "fp", "sp", saved.size() * 4);
+        }
+        if (getFrameSize() > 0) {
+            InstructionSelector.operateImmediate(out, "sub", "sp", "sp", getFrameSize());
+        }
+    }
+
+   /**
+    * Method to write what undoes writePrologue and returns.
+    *
+    * @param AssemblyEmitter out
+    **/
+    public void writeEpilogue(AssemblyEmitter out) {
+        if (saved.isEmpty()) {
+            out.op("mov", "sp", "fp");
+        } else {
+            out.op("sub", "sp", "fp", saved.size() * 4);
+        }
+        out.op("pop", "{" + savedList() + "fp, pc}");
+    }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to colour the candidates, setting color of each of them to a
+    * hard register or leaving it -1 to spill. Hard registers are already
+    * coloured. num_colored and num_spilled are kept by the allocator.
+    **/
+    protected abstract void assign();
+
+   /**
+    * Method to allocate and record where every register and memory home
+    * lives in reg_map, "r4" or "[fp, #-N]". Stack slots are numbered with
+    * slots, which is left at the next free slot so registers found later
+    * can be given one too.
+    *
+    * @param HashMap<String, String> reg_map
+    * @param Counter slots
+    **/
+    public void allocate(HashMap<String, String> reg_map, Counter slots) {
+        long start = System.nanoTime();
+        int num_nodes = liveness.getNumRegisters();
+
+        classify();
+        computeSpillCosts();
+
+        color = new int[num_nodes];
+        Arrays.fill(color, -1);
+        for (int node = 0; node < num_nodes; node++) {
+            if (kind[node] == HARD)
+                color[node] = Integer.parseInt(liveness.getRegister(node));
+        }
+
+        assign();
+
+        /* Callee saved registers that were used have to be pushed */
+        saved = new ArrayList<>();
+        boolean[] used = new boolean[16];
+        for (int node = 0; node < num_nodes; node++) {
+            if (candidate[node] && color[node] >= 0)
+                used[color[node]] = true;
+        }
+        for (int reg : CALLEE_SAVED) {
+            if (used[reg])
+                saved.add(reg);
+        }
+        if (saved.size() % 2 == 1) {
+            saved.add(0, PAD_REGISTER);
+        }
+
+        /* Slots sit below the saved registers */
+        slots.setCount(saved.size() + 1);
+        for (int node = 0; node < num_nodes; node++) {
+            String name = liveness.getRegister(node);
+            if (kind[node] == HARD)
+                continue;
+
+            if (candidate[node] && color[node] >= 0) {
+                reg_map.put(name, "r" + color[node]);
+            } else {
+                addSlot(reg_map, slots, name);
+            }
+        }
+
+        alloc_time = System.nanoTime() - start;
+    }
+
+   /**
+    * Method to give a slot to a register liveness never saw, such as a
+    * pseudo that is neither defined nor used by a SET.
+    *
+    * @param HashMap<String, String> reg_map
+    * @param Counter slots
+    * @param String name
+    **/
+    public void addSlot(HashMap<String, String> reg_map, Counter slots, String name) {
+        if (reg_map.containsKey(name))
+            return;
+        reg_map.put(name, "[fp, #-" + slots.getCount() * 4 + "]");
+        slots.increment();
+        num_slots++;
+    }
+
+/**************************
+ * Additional Helper Methods
+ **************************/
+   /**
+    * Method to sort the registers into hard registers, pseudos and memory
+    * homes and decide which of them get a colour.
+    **/
+    private void classify() {
+        int num_nodes = liveness.getNumRegisters();
+        kind = new int[num_nodes];
+        candidate = new boolean[num_nodes];
+
+        boolean homes = !Instruction.takesFrameAddress(liveness.getControlFlowGraph().getGraph());
+        for (int node = 0; node < num_nodes; node++) {
+            String name = liveness.getRegister(node);
+            if (name.startsWith("mem[")) {
+                kind[node] = HOME;
+                candidate[node] = homes;
+            } else if (Instruction.isHardRegister(Integer.parseInt(name))) {
+                kind[node] = HARD;
+            } else {
+                kind[node] = PSEUDO;
+                candidate[node] = true;
+            }
+            if (candidate[node])
+                num_candidates++;
+        }
+    }
+
+   /**
+    * Spill cost is the number of defs and uses, each weighted 10 ^ loop
+    * depth.
+    **/
+    private void computeSpillCosts() {
+        ControlFlowGraph cfg = liveness.getControlFlowGraph();
+        spill_cost = new double[liveness.getNumRegisters()];
+
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+            double weight = Math.pow(10, Math.min(cfg.getLoopDepth(bb_num), 8));
+            Instruction[] insns = liveness.getInsns(bb_num);
+
+            for (int i = 0; i < insns.length; i++) {
+                for (int def : liveness.getDefs(bb_num, i))
+                    spill_cost[def] += weight;
+                for (int use : liveness.getUses(bb_num, i))
+                    spill_cost[use] += weight;
+            }
+        }
+    }
+
+    private String savedList() {
+        StringBuilder out = new StringBuilder();
+        for (int reg : saved) {
+            out.append("r" + reg + ", ");
+        }
+        return out.toString();
+    }
+}
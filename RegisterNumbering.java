@@ -0,0 +1,102 @@
+/**
+ * This is the RegisterNumbering class, which gives the pseudos and the
+ * memory homes of a function dense ids, 0, 1, 2 ... in the order they are
+ * first seen, so a pass can keep what it knows about them in arrays.
+ *
+ * Pseudos are looked up by register number - FIRST_PSEUDO in an array
+ * that grows as larger numbers turn up, homes by frame offset. Homes are
+ * only numbered when the function never takes the address of its frame,
+ * since a store through a pointer could change any of them unseen.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+public class RegisterNumbering {
+
+    private int[] pseudo_ids = new int[256];
+    private final HashMap<Integer, Integer> home_ids = new HashMap<>();
+    private final boolean homes;
+    private int size;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+   /**
+    * @param ArrayList<LinkedList<Instruction>> graph the insns of the
+    *        function, which decide whether homes are numbered
+    **/
+    public RegisterNumbering(ArrayList<LinkedList<Instruction>> graph) {
+        this.homes = !Instruction.takesFrameAddress(graph);
+        Arrays.fill(pseudo_ids, -1);
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+   /**
+    * @return int ids handed out so far, every id is below it
+    **/
+    public int size() { return size; }
+
+   /**
+    * @return boolean true if memory homes are numbered
+    **/
+    public boolean followsHomes() { return homes; }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+   /**
+    * Method to find the id of a pseudo or followed memory home, giving it
+    * the next one if it has none yet.
+    *
+    * @param RtlNode node
+    * @return int id, -1 if node is neither
+    **/
+    public int number(RtlNode node) {
+        if (Instruction.isPseudo(node)) {
+            int index = node.getValue() - Instruction.FIRST_PSEUDO;
+            if (index >= pseudo_ids.length) {
+                int old = pseudo_ids.length;
+                pseudo_ids = Arrays.copyOf(pseudo_ids, Math.max(index + 1, old * 2));
+                Arrays.fill(pseudo_ids, old, pseudo_ids.length, -1);
+            }
+            if (pseudo_ids[index] < 0)
+                pseudo_ids[index] = size++;
+            return pseudo_ids[index];
+        }
+        if (homes && Instruction.isHome(node)) {
+            int offset = node.getChild(0).getChild(1).getValue();
+            Integer id = home_ids.get(offset);
+            if (id == null) {
+                id = size++;
+                home_ids.put(offset, id);
+            }
+            return id;
+        }
+        return -1;
+    }
+
+   /**
+    * @param RtlNode node
+    * @return int id of the pseudo or followed memory home, -1 if node is
+    *         neither or has not been numbered
+    **/
+    public int idOf(RtlNode node) {
+        if (Instruction.isPseudo(node)) {
+            int index = node.getValue() - Instruction.FIRST_PSEUDO;
+            return index < pseudo_ids.length ? pseudo_ids[index] : -1;
+        }
+        if (homes && Instruction.isHome(node)) {
+            Integer id = home_ids.get(node.getChild(0).getChild(1).getValue());
+            return id == null ? -1 : id;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * This is the RtlNode class, the typed form of an RTL sub expression such as
+ * (plus:SI (reg:SI 117) (const_int 1 [0x1])).
+ *
+ * A node only keeps what the backend looks at: the interned id of its head
+ * token (see OpcodeTable), the integer operand (register number, const_int
+ * value or label_ref id), a name for string literals and its nested S
+ * Expressions. Nodes are built once by Instruction and never change
+ * afterwards.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+public class RtlNode {
+
+    static final RtlNode[] NO_CHILDREN = new RtlNode[0];
+
+    private static final int WORD_MODE = OpcodeTable.findMode("SI");
+
+    private final int head;
+    private final int value;
+    private final String name;
+    private final RtlNode[] children;
+
+/****************************
+ * CONSTRUCTOR
+ ***************************/
+    RtlNode(int head, int value, String name, RtlNode[] children) {
+        this.head = head;
+        this.value = value;
+        this.name = name;
+        this.children = children;
+    }
+
+/****************************
+ * ACESSOR METHODS
+ ***************************/
+    public InstructionType getType() { return OpcodeTable.getType(head); }
+    public int getHead() { return head; }
+    public int getCode() { return OpcodeTable.getCode(head); }
+    public int getMode() { return OpcodeTable.getMode(head); }
+    public boolean hasFlag(char flag) { return OpcodeTable.hasFlag(head, flag); }
+    public int getValue() { return value; }
+
+   /**
+    * @return boolean true if the node is in SI mode, the 32 bit word the
+    *         passes compute in; narrower or wider values are left alone
+    **/
+    public boolean isWord() { return getMode() == WORD_MODE; }
+    public String getName() { return name; }
+    public int getNumChildren() { return children.length; }
+    public RtlNode getChild(int i) { return children[i]; }
+
+   /**
+    * Method to find the name of the first symbol_ref under this node, in
+    * source order.
+    *
+    * @return String symbol name, null if there is none
+    **/
+    public String findSymbol() {
+        if (getType() == InstructionType.SYMBOL_REF && children.length > 0) {
+            return children[0].getName();
+        }
+        for (RtlNode child : children) {
+            String symbol = child.findSymbol();
+            if (symbol != null) {
+                return symbol;
+            }
+        }
+        return null;
+    }
+
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append("(").append(name != null ? "\"" + name + "\"" : OpcodeTable.getHead(head));
+        if (value != 0 || getType() == InstructionType.CONST_INT) {
+            out.append(" ").append(value);
+        }
+        for (RtlNode child : children) {
+            out.append(" ").append(child.toString());
+        }
+        return out.append(")").toString();
+    }
+}
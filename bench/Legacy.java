@@ -0,0 +1,281 @@
+/**
+ * This is the Legacy class, which keeps the versions of the reader, the
+ * parser, liveness, selection and emission that the compiler used before
+ * they were rewritten. Nothing in the compiler calls them, they are only
+ * here so LegacyBenchmark can time the new code against the old and check
+ * that both give the same answer.
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Stack;
+
+public class Legacy {
+
+    /* Returned by signature when no signature matched */
+    static final int UNKNOWN = -1;
+
+    private Legacy() { }
+
+/**************************
+ * Main Logic Methods
+ **************************/
+    static long scan(File file) throws Exception {
+        long count = 0;
+        StringBuilder object = new StringBuilder();
+        Stack<Character> stack = new Stack<Character>();
+
+        try (FileInputStream fis = new FileInputStream(file)) {
+            while (fis.available() > 0) {
+                char c = (char) fis.read();
+
+                if (c == '(')
+                    stack.push(c);
+                if (c == ')')
+                    stack.pop();
+
+                object.append(c);
+
+                if (stack.empty() && !object.toString().equals("\n")) {
+                    String result = object.toString().trim();
+                    if (result.length() > 1 && result.charAt(0) == '(') {
+                        count += result.length();
+                    }
+                    object = new StringBuilder();
+                }
+            }
+        }
+        return count;
+    }
+
+   /**
+    * The calculateLiveInSet algorithm as it was before Liveness, kept here
+    * so the two can be compared. Fills live_in and live_out per block.
+    *
+    * @return int number of rounds over the blocks
+    **/
+    static int liveness(ControlFlowGraph cfg,
+                        ArrayList<HashSet<String>> live_in,
+                        ArrayList<HashSet<String>> live_out) {
+        ArrayList<HashSet<String>> prev_live_in = new ArrayList<>();
+        for (int i = 0; i < cfg.size(); i++) {
+            live_in.add(new HashSet<>());
+            live_out.add(new HashSet<>());
+            prev_live_in.add(null);
+        }
+
+        int rounds = 0;
+        boolean changed = true;
+        while (changed) {
+            rounds++;
+
+            for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+                BasicBlock block = cfg.getBlock(bb_num);
+                if (block == null) continue;
+
+                HashSet<String> new_live_out = new HashSet<>();
+                for (int succ : block.getSuccessors()) {
+                    if (succ != ControlFlowGraph.EXIT) {
+                        new_live_out.addAll(live_in.get(succ));
+                    }
+                }
+                live_out.set(bb_num, new_live_out);
+                prev_live_in.set(bb_num, live_in.get(bb_num));
+                live_in.set(bb_num, BasicBlockGraph.adjustLiveSet(block, new HashSet<>(new_live_out)));
+            }
+
+            changed = false;
+            for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+                if (cfg.getBlock(bb_num) != null
+                        && !live_in.get(bb_num).equals(prev_live_in.get(bb_num))) {
+                    changed = true;
+                }
+            }
+        }
+        return rounds;
+    }
+
+   /**
+    * What armify did per insn before the AssemblyEmitter: a debug
+    * StringBuilder built and printed for every insn, the type of its
+    * pattern printed, and each fragment written to the FileWriter on its
+    * own.
+    **/
+    static void emit(ArrayList<Instruction> insns, InstructionSelector selector,
+                     FileWriter writer, PrintStream trace) throws Exception {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        HashSet<String> labelled = new HashSet<>();
+        int bb_num = -1;
+
+        for (Instruction insn : insns) {
+            if (insn.getBasicBlock() != bb_num) {
+                bb_num = insn.getBasicBlock();
+                trace.println("BB: " + bb_num);
+            }
+            String block = Integer.toString(insn.getBasicBlock());
+            if (!labelled.contains(block)) {
+                writer.write("BB_" + block + ":\n");
+                labelled.add(block);
+            }
+
+            StringBuilder out = new StringBuilder();
+            out.append(insn.getCurrID()).append(" ").append(insn.getType()).append("\n");
+            if (Benchmark.isSelected(insn)) {
+                trace.println("TYPE OF S_EXP: " + insn.getSExp().getType());
+                AssemblyEmitter arm = new AssemblyEmitter(text);
+                selector.select(insn, arm);
+                arm.flush();
+                String fragment = text.toString();
+                text.reset();
+                out.append(fragment);
+                writer.write(fragment);
+            }
+            trace.println(out);
+        }
+    }
+
+   /**
+    * The signature matching of ARMInstruction as it was before
+    * InstructionSelector: the SET is rendered to strings bottom up and
+    * the strings are matched against regular expressions, compiling each
+    * one every time.
+    *
+    * @return int which signature matched, UNKNOWN if none did
+    **/
+    static int signature(RtlNode set, HashMap<String, String> reg_map) {
+        String dst = render(set.getChild(0), reg_map);
+        String src = render(set.getChild(1), reg_map);
+        return classify(InstructionType.SET, dst, src);
+    }
+
+    static String render(RtlNode node, HashMap<String, String> reg_map) {
+        switch (node.getType()) {
+            case REG:
+            case REG_I:
+                if (Instruction.isHardRegister(node.getValue()))
+                    return "r" + node.getValue();
+                return reg_map.getOrDefault(Integer.toString(node.getValue()), "1001");
+            case REG_F:
+                return Integer.toString(node.getValue());
+            case REG_CC:
+                return "CC " + node.getValue();
+            case MEM_C:
+                return "mem[" + render(node.getChild(0), reg_map) + "]";
+            case CONST_INT:
+                return "#" + node.getValue();
+            case COMPARE_CC:
+                return "COMPARE " + render(node.getChild(0), reg_map) + ", "
+                        + render(node.getChild(1), reg_map);
+            case PLUS:
+                String dst = render(node.getChild(0), reg_map);
+                String src = render(node.getChild(1), reg_map);
+                classify(InstructionType.PLUS, dst, src);
+                return "add " + dst + ", " + src;
+            case PC:
+                return "PC";
+            case LABEL_REF:
+                return Integer.toString(node.getValue());
+            case IF_THEN_ELSE:
+                return "b" + render(node.getChild(0), reg_map) + " BB_"
+                        + node.getChild(1).getValue() + "\n\tb BB_";
+            case COMPARISON:
+                return OpcodeTable.getCodeName(node.getCode());
+            default:
+                return "ARMInsn rtl2arm(): OPERATION NOT SUPPORTED\n";
+        }
+    }
+
+    static int classify(InstructionType type, String dst, String src) {
+        String regex_register = "r[0-9]+|\\[fp, #-[0-9]+\\]";
+        String regex_register_f = "[0-9]+";
+        String regex_mem = "mem\\[.*\\]";
+        String regex_const_int = "#-?[0-9]+";
+        String regex_plus = "add (" + regex_register + "), (" + regex_register + "|#-?[0-9]+)";
+        String regex_cond_compare = "COMPARE (" + regex_register + "), (#-?[0-9]+)";
+        String regex_cc = "CC [0-9]+";
+        String regex_pc = "PC";
+        String regex_label_rf = "[0-9]+";
+        String regex_if_then_else = "ble BB_[0-9]+\n\tb BB_";
+
+        if (type == InstructionType.SET) {
+            if (dst.matches(regex_register) && src.matches(regex_const_int)) return 0;
+            if (dst.matches(regex_mem) && src.matches(regex_register)) return 1;
+            if (dst.matches(regex_register) && src.matches(regex_mem)) return 2;
+            if (dst.matches(regex_register) && src.matches(regex_plus)) return 3;
+            if (dst.matches(regex_cc) && src.matches(regex_cond_compare)) return 4;
+            if (dst.matches(regex_pc) && src.matches(regex_label_rf)) return 5;
+            if (dst.matches(regex_pc) && src.matches(regex_if_then_else)) return 6;
+            if (dst.matches(regex_register) && src.matches(regex_register)) return 7;
+        } else if (type == InstructionType.PLUS) {
+            if (dst.matches(regex_register) && src.matches(regex_const_int)) return 8;
+            if (dst.matches(regex_register_f) && src.matches(regex_const_int)) return 9;
+            if (dst.matches(regex_register) && src.matches(regex_register)) return 10;
+        }
+        return UNKNOWN;
+    }
+
+   /**
+    * The parseSExpressions algorithm as it was before the single pass
+    * parser, kept here so the two can be compared.
+    **/
+    static ArrayList<Object> parse(String insn) {
+        ArrayList<Object> attributes = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 1; i < insn.length(); i++) {
+            char ch = insn.charAt(i);
+
+            if (ch == '\"' || ch == '>' || ch == '<') {
+                word.append("\\");
+            }
+
+            if (Character.isWhitespace(ch)) {
+                if (word.length() > 0) {
+                    attributes.add(word.toString());
+                    word.setLength(0);
+                }
+            }
+            else if (ch == '(') {
+                int end_index = closingParen(i, insn);
+                attributes.add(parse(insn.substring(i, end_index + 1)));
+                i = end_index + 1;
+            }
+            else if (ch == ')') {
+                attributes.add(word.toString());
+                word.setLength(0);
+            }
+            else {
+                word.append(ch);
+            }
+        }
+        return attributes;
+    }
+
+    static int closingParen(int num, String str) {
+        Stack<Character> stack = new Stack<Character>();
+        stack.push(str.charAt(num));
+
+        for (int i = num + 1; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            if (ch == '(') {
+                stack.push(ch);
+            }
+            else if (ch == ')') {
+                stack.pop();
+                if (stack.empty()) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+}
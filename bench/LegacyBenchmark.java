@@ -0,0 +1,397 @@
+/**
+ * This is the LegacyBenchmark class, the Benchmark suites that time the
+ * compiler against the code it replaced, kept in Legacy. Each one checks
+ * that the old and the new code agree before timing them. It is built
+ * against the compiler classes, see make bench-legacy.
+ *
+ * usage: java -cp .:bench LegacyBenchmark reader <expand file> [iterations]
+ *        java -cp .:bench LegacyBenchmark parse <expand file> [iterations] [nesting depth]
+ *        java -cp .:bench LegacyBenchmark liveset <expand file | synthetic:pseudos> [iterations]
+ *        java -cp .:bench LegacyBenchmark select <expand file | synthetic:pseudos> [iterations]
+ *        java -cp .:bench LegacyBenchmark emit <expand file | synthetic:pseudos> [iterations]
+ *        java -cp .:bench LegacyBenchmark heap <expand file> [copies]
+ *
+ * @author Justin Herrera
+ * @author James Kwan
+ **/
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+public class LegacyBenchmark {
+
+    private static final int DEFAULT_DEPTH = 500;
+
+    private LegacyBenchmark() { }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.out.println("usage: java LegacyBenchmark <reader|parse|liveset|select|emit|heap> <expand file> [iterations]");
+            return;
+        }
+
+        File file = Benchmark.inputFile(args[1]);
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : Benchmark.DEFAULT_ITERATIONS;
+
+        switch (args[0]) {
+            case "reader":
+                reader(file, iterations);
+                break;
+            case "parse":
+                int depth = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_DEPTH;
+                parse(file, iterations, depth);
+                break;
+            case "liveset":
+                liveset(file, iterations);
+                break;
+            case "select":
+                select(file, iterations);
+                break;
+            case "emit":
+                emit(file, iterations);
+                break;
+            case "heap":
+                heap(file, iterations);
+                break;
+            default:
+                System.out.println("Unknown suite " + args[0]);
+        }
+    }
+
+/**************************
+ * Suites
+ **************************/
+   /**
+    * Compares the byte at a time FileInputStream scan GenerateAssembly used
+    * to do against RTLReader. Both report how many bytes of S Expressions they
+    * found so the results can be checked against each other.
+    *
+    * @param File file
+    * @param int iterations
+    **/
+    private static void reader(File file, int iterations) throws Exception {
+        long bytes = file.length();
+
+        long legacy = Legacy.scan(file);
+        long mapped = Benchmark.mappedScan(file);
+        if (legacy != mapped) {
+            System.out.println("Reader mismatch: legacy " + legacy + " mapped " + mapped);
+            return;
+        }
+        System.out.println(file.getName() + ": " + bytes + " bytes, " + mapped + " bytes inside S Expressions");
+
+        double legacy_ns = Benchmark.measure(iterations, () -> Benchmark.sink += Legacy.scan(file));
+        double mapped_ns = Benchmark.measure(iterations, () -> Benchmark.sink += Benchmark.mappedScan(file));
+
+        Benchmark.report("legacy FileInputStream", bytes, legacy_ns);
+        Benchmark.report("RTLReader", bytes, mapped_ns);
+        System.out.printf("speedup: %.1fx%n", legacy_ns / mapped_ns);
+    }
+
+   /**
+    * Compares the old recursive parseSExpressions, which rescanned for the
+    * closing paren and re-parsed a substring for every nested S Expression,
+    * against the current single pass parser. Runs once over every insn of
+    * the file and once over a synthetic insn nested depth levels deep.
+    *
+    * @param File file
+    * @param int iterations
+    * @param int depth
+    **/
+    private static void parse(File file, int iterations, int depth) throws Exception {
+        ArrayList<String> insns = new ArrayList<>();
+        RTLReader reader = new RTLReader(file);
+        CharSequence sexp;
+        long bytes = 0;
+
+        while ((sexp = reader.next()) != null) {
+            insns.add(sexp.toString());
+            bytes += sexp.length();
+        }
+
+        System.out.println(file.getName() + ": " + insns.size() + " S Expressions");
+        double legacy_ns = Benchmark.measure(iterations, () -> {
+            for (String insn : insns) Benchmark.sink += Legacy.parse(insn).size();
+        });
+        double linear_ns = Benchmark.measure(iterations, () -> {
+            for (String insn : insns) Benchmark.sink += Benchmark.linearParse(insn);
+        });
+        Benchmark.report("legacy recursive", bytes, legacy_ns);
+        Benchmark.report("single pass", bytes, linear_ns);
+        System.out.printf("speedup: %.1fx%n", legacy_ns / linear_ns);
+
+        /* Same comparison on a synthetic insn at a few nesting depths */
+        for (int d = Math.max(1, depth / 4); d <= depth; d *= 2) {
+            String nested = nestedInsn(d);
+            int n = d;
+            System.out.println("nesting depth " + n + ": " + nested.length() + " chars");
+            legacy_ns = Benchmark.measure(iterations, () -> Benchmark.sink += Legacy.parse(nested).size());
+            linear_ns = Benchmark.measure(iterations, () -> Benchmark.sink += Benchmark.linearParse(nested));
+            Benchmark.report("legacy recursive", nested.length(), legacy_ns);
+            Benchmark.report("single pass", nested.length(), linear_ns);
+            System.out.printf("speedup: %.1fx%n", legacy_ns / linear_ns);
+        }
+    }
+
+   /**
+    * Compares the old HashSet<String> liveness, which rebuilt the set of
+    * every block on every round, against the bit vector worklist solver in
+    * Liveness. The iteration and block visit counts of both are printed
+    * first. The Liveness time includes numbering the registers and building
+    * GEN and KILL. Both
+    * must arrive at the same live in and live out sets.
+    *
+    * @param File file
+    * @param int iterations
+    **/
+    private static void liveset(File file, int iterations) throws Exception {
+        HashMap<Integer, Integer> bb_map = new HashMap<>();
+        ArrayList<LinkedList<Instruction>> graph = Benchmark.loadGraph(file, bb_map);
+        ControlFlowGraph[] built = new ControlFlowGraph[1];
+
+        /* BasicBlock prints the last insn of every block */
+        Benchmark.quietly(() -> built[0] = new ControlFlowGraph(graph, bb_map));
+        ControlFlowGraph cfg = built[0];
+
+        ArrayList<HashSet<String>> legacy_in = new ArrayList<>();
+        ArrayList<HashSet<String>> legacy_out = new ArrayList<>();
+        int rounds = Legacy.liveness(cfg, legacy_in, legacy_out);
+
+        Liveness liveness = new Liveness(cfg);
+        liveness.solve();
+
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+            if (!legacy_in.get(bb_num).equals(liveness.toSet(liveness.getLiveIn(bb_num)))
+                    || !legacy_out.get(bb_num).equals(liveness.toSet(liveness.getLiveOut(bb_num)))) {
+                System.out.println("Liveness mismatch at block " + bb_num);
+                return;
+            }
+        }
+
+        long bytes = file.length();
+        int num_blocks = 0;
+        for (int bb_num = 0; bb_num < cfg.size(); bb_num++) {
+            if (cfg.getBlock(bb_num) != null) num_blocks++;
+        }
+        System.out.println(file.getName() + ": " + num_blocks + " blocks, "
+                + liveness.getNumRegisters() + " registers");
+        System.out.printf("%-24s %10d iterations %10d block visits%n",
+                "round robin", rounds, rounds * num_blocks);
+        System.out.printf("%-24s %10d iterations %10d block visits%n",
+                "worklist", liveness.getIterations(), liveness.getVisits());
+
+        double legacy_ns = Benchmark.measure(iterations, () ->
+                Benchmark.sink += Legacy.liveness(cfg, new ArrayList<>(), new ArrayList<>()));
+        double bits_ns = Benchmark.measure(iterations, () -> {
+            Liveness solver = new Liveness(cfg);
+            solver.solve();
+            Benchmark.sink += solver.getIterations();
+        });
+        Benchmark.report("HashSet<String>", bytes, legacy_ns);
+        Benchmark.report("Liveness bit vectors", bytes, bits_ns);
+        System.out.printf("speedup: %.1fx%n", legacy_ns / bits_ns);
+    }
+
+   /**
+    * Compares how long it takes to pick the instructions for each SET. The
+    * old ARMInstruction rendered the operands to strings and matched them
+    * against a chain of regular expressions; InstructionSelector labels
+    * the tree against its rule table. Labelling alone is the part that
+    * replaced the regular expressions, labelling and reducing includes
+    * emitting the ARM text. Every register lives on the stack, as with
+    * --regalloc=none.
+    *
+    * @param File file
+    * @param int iterations
+    **/
+    private static void select(File file, int iterations) throws Exception {
+        HashMap<Integer, Integer> bb_map = new HashMap<>();
+        ArrayList<LinkedList<Instruction>> graph = Benchmark.loadGraph(file, bb_map);
+        HashMap<String, String> reg_map = new HashMap<>();
+        ArrayList<Instruction> sets = new ArrayList<>();
+
+        Benchmark.quietly(() -> {
+            for (LinkedList<Instruction> block : graph) {
+                for (Instruction insn : block) {
+                    insn.findRegisters(reg_map, new Counter());
+                    if (insn.getSExp() != null && insn.getSExp().getType() == InstructionType.SET)
+                        sets.add(insn);
+                }
+            }
+        });
+
+        InstructionSelector selector = new InstructionSelector(reg_map, bb_map);
+        int unknown = 0;
+        for (Instruction insn : sets) {
+            if (Legacy.signature(insn.getSExp(), reg_map) == Legacy.UNKNOWN) unknown++;
+        }
+        System.out.println(file.getName() + ": " + sets.size() + " SETs, "
+                + unknown + " the regular expressions did not recognise");
+
+        double legacy_ns = Benchmark.measure(iterations, () -> {
+            for (Instruction insn : sets) Benchmark.sink += Legacy.signature(insn.getSExp(), reg_map);
+        });
+        double label_ns = Benchmark.measure(iterations, () -> {
+            for (Instruction insn : sets) Benchmark.sink += selector.label(insn.getSExp()).cost[0];
+        });
+        AssemblyEmitter discard = new AssemblyEmitter(OutputStream.nullOutputStream());
+        double select_ns = Benchmark.measure(iterations, () -> {
+            for (Instruction insn : sets) selector.select(insn, discard);
+        });
+        Benchmark.sink += discard.getBytesWritten();
+
+        int n = Math.max(1, sets.size());
+        System.out.printf("%-28s %10.1f ns/insn%n", "regex signature", legacy_ns / n);
+        System.out.printf("%-28s %10.1f ns/insn%n", "BURS label", label_ns / n);
+        System.out.printf("%-28s %10.1f ns/insn%n", "BURS label + reduce + emit", select_ns / n);
+        System.out.printf("speedup: %.1fx%n", legacy_ns / label_ns);
+    }
+
+   /**
+    * Compares writing the ASM file the way armify used to, a FileWriter
+    * write per fragment and a debug line printed for every insn and block,
+    * against the AssemblyEmitter with tracing off. Both select with the
+    * InstructionSelector, so the difference is the output and the tracing.
+    * The printed lines go to a file through an autoflushing PrintStream,
+    * which is kinder than a terminal.
+    *
+    * @param File file
+    * @param int iterations
+    **/
+    private static void emit(File file, int iterations) throws Exception {
+        HashMap<Integer, Integer> bb_map = new HashMap<>();
+        ArrayList<LinkedList<Instruction>> graph = Benchmark.loadGraph(file, bb_map);
+        HashMap<String, String> reg_map = new HashMap<>();
+        ArrayList<Instruction> insns = new ArrayList<>();
+
+        Benchmark.quietly(() -> {
+            for (LinkedList<Instruction> block : graph) {
+                for (Instruction insn : block) {
+                    insn.findRegisters(reg_map, new Counter());
+                    insns.add(insn);
+                }
+            }
+        });
+
+        InstructionSelector selector = new InstructionSelector(reg_map, bb_map);
+        File asm = File.createTempFile("bench", ".s");
+        File console = File.createTempFile("bench", ".log");
+        asm.deleteOnExit();
+        console.deleteOnExit();
+
+        double legacy_ns = Benchmark.measure(iterations, () -> {
+            try (FileWriter writer = new FileWriter(asm);
+                 PrintStream trace = new PrintStream(new FileOutputStream(console), true)) {
+                Legacy.emit(insns, selector, writer, trace);
+            }
+        });
+
+        int level = Log.getLevel();
+        Log.setLevel(Log.WARN);
+        double emitter_ns = Benchmark.measure(iterations, () -> {
+            try (AssemblyEmitter out = new AssemblyEmitter(asm)) {
+                int bb_num = -1;
+                for (Instruction insn : insns) {
+                    if (insn.getBasicBlock() != bb_num) {
+                        bb_num = insn.getBasicBlock();
+                        out.label("BB_", bb_num);
+                    }
+                    if (Log.on(Log.TRACE))
+                        Log.trace(insn.getCurrID() + " " + insn.getType());
+                    if (Benchmark.isSelected(insn))
+                        selector.select(insn, out);
+                }
+                Benchmark.sink += out.getBytesWritten();
+            }
+        });
+        Log.setLevel(level);
+
+        System.out.println(file.getName() + ": " + insns.size() + " insns, "
+                           + asm.length() + " bytes of assembly");
+        Benchmark.report("FileWriter + tracing", file.length(), legacy_ns);
+        Benchmark.report("AssemblyEmitter", file.length(), emitter_ns);
+        System.out.printf("speedup: %.1fx%n", legacy_ns / emitter_ns);
+    }
+
+   /**
+    * Reports the retained heap per insn of the parsed Instructions. The file
+    * is parsed copies times and everything is kept alive, so the numbers
+    * are not swamped by GC noise on small inputs. For comparison the same
+    * insns are also kept as the old ArrayList<Object> attribute trees; the
+    * old Instruction also copied its source text into every node, so that
+    * figure is a lower bound of what the old representation retained.
+    *
+    * @param File file
+    * @param int copies
+    **/
+    private static void heap(File file, int copies) throws Exception {
+        ArrayList<String> insns = new ArrayList<>();
+        RTLReader reader = new RTLReader(file);
+        CharSequence sexp;
+
+        while ((sexp = reader.next()) != null) {
+            insns.add(sexp.toString());
+        }
+
+        long count = (long) insns.size() * copies;
+        ArrayList<Object> retained = new ArrayList<>();
+
+        long base = usedHeap();
+        for (int c = 0; c < copies; c++) {
+            for (String insn : insns) retained.add(Legacy.parse(insn));
+        }
+        long legacy = usedHeap() - base;
+        retained.clear();
+
+        base = usedHeap();
+        for (int c = 0; c < copies; c++) {
+            for (String insn : insns) retained.add(new Instruction(insn));
+        }
+        long typed = usedHeap() - base;
+        Benchmark.sink += retained.size();
+
+        System.out.println(file.getName() + ": " + count + " insns retained");
+        System.out.printf("%-24s %10d bytes/insn%n", "attribute trees", legacy / count);
+        System.out.printf("%-24s %10d bytes/insn%n", "Instruction + RtlNode", typed / count);
+        System.out.printf("reduction: %.1fx%n", legacy / (double) typed);
+    }
+
+/**************************
+ * Helper Methods
+ **************************/
+   /**
+    * Method to build an insn whose source is a chain of depth nested plus
+    * expressions, (plus:SI (plus:SI ... (reg:SI 110) ...) (const_int 1)).
+    *
+    * @param int depth
+    * @return String insn
+    **/
+    private static String nestedInsn(int depth) {
+        StringBuilder out = new StringBuilder("(insn 5 2 6 2 (set (reg:SI 111) ");
+        for (int i = 0; i < depth; i++) {
+            out.append("(plus:SI ");
+        }
+        out.append("(reg:SI 110)");
+        for (int i = 0; i < depth; i++) {
+            out.append(" (const_int 1 [0x1]))");
+        }
+        out.append(") \"synthetic.c\":1 -1 (nil))");
+        return out.toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}